@@ -18,6 +18,10 @@ public abstract class AbstractBufferPool implements BufferPool {
 	protected long pooledSize;
 	protected long curSize;
 	
+	// metrics
+	protected long peakSize;
+	protected long poolHits, vmAllocations, releases, allocationFailures;
+	
 	private boolean closed;
 	
 	protected AbstractBufferPool(long poolSize) {
@@ -43,16 +47,27 @@ public abstract class AbstractBufferPool implements BufferPool {
 		checkNotClosed();
 		
 		if(curSize + bufferSize > poolSize) {
+			++allocationFailures;
 			throw new BufferAllocateException("Exceeds pool size limit");
 		}
 		final ByteBuffer buf = doAllocate();
 		final Buffer buffer = new Buffer(this, buf);
 		buffer.onAlloc();
 		curSize += bufferSize;
+		onAllocated(false);
 		log.debug("{}: Allocate a buffer from VM - {}", this, buffer);
 		return buffer;
 	}
 
+	@Override
+	public Buffer allocate(final int minCapacity) throws BufferAllocateException {
+		if(minCapacity > bufferSize) {
+			throw new BufferAllocateException("minCapacity bigger than bufferSize " + bufferSize 
+					+ ": " + minCapacity);
+		}
+		return allocate();
+	}
+
 	@Override
 	public void release(Buffer buffer) {
 		checkNotClosed();
@@ -61,6 +76,7 @@ public abstract class AbstractBufferPool implements BufferPool {
 			buffer.onRelease();
 			doRelease(buffer);
 			curSize -= bufferSize;
+			++releases;
 			return;
 		}
 		log.warn("{}: buffer not allocated from this pool - {}", this, buffer);
@@ -68,6 +84,22 @@ public abstract class AbstractBufferPool implements BufferPool {
 	
 	protected abstract ByteBuffer doAllocate();
 	
+	/**
+	 * Update the metrics after a buffer allocated.
+	 * 
+	 * @param pooled the buffer is allocated from the cached buffers
+	 */
+	protected final void onAllocated(final boolean pooled) {
+		if(pooled) {
+			++poolHits;
+		}else {
+			++vmAllocations;
+		}
+		if(curSize > peakSize) {
+			peakSize = curSize;
+		}
+	}
+	
 	protected void doRelease(Buffer buffer) {
 		log.debug("{}: Release a buffer into VM - {}", this, buffer);
 	}
@@ -88,11 +120,22 @@ public abstract class AbstractBufferPool implements BufferPool {
 		return (poolSize - curSize);
 	}
 	
+	@Override
+	public BufferPoolMetrics metrics() {
+		return new BufferPoolMetrics(poolSize, curSize, peakSize, pooledSize, 
+				poolHits, vmAllocations, releases, allocationFailures);
+	}
+	
 	@Override
 	public int bufferSize() {
 		return bufferSize;
 	}
 	
+	@Override
+	public int maxCapacity() {
+		return bufferSize;
+	}
+	
 	@Override
 	public int bufferSizeShift() {
 		return bufferSizeShift;
@@ -6,18 +6,64 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.simple.util.ArrayQueue;
+import io.simple.util.MathUtil;
 
+/**
+ * <p>
+ * A direct buffer pool that caches released buffers in an array queue.
+ * </p>
+ * 
+ * <p>
+ * In slab mode, the pool allocates large direct slabs and hands out slices of them 
+ *as buffers, instead of allocating each buffer from VM, for predictable allocation 
+ *latency and less native memory fragmentation. The pool can also pre-touch all its 
+ *buffers at startup.
+ * </p>
+ * 
+ * @author little-pan
+ * @since 2018-06-30
+ *
+ */
 public class ArrayBufferPool extends AbstractBufferPool {
 	final static Logger log = LoggerFactory.getLogger(ArrayBufferPool.class);
 	
+	public final static int DEFAULT_SLAB_SIZE = 1 << 22;
+	final static int PAGE_SIZE = 1 << 12;
+	
 	final ArrayQueue<Buffer> pool;
 	
+	// slab mode
+	protected final int slabSize;
+	private ByteBuffer slab;
+	private long slabbedSize;
+	
 	public ArrayBufferPool(long poolSize) {
 		this(poolSize, DEFAULT_BUFFER_SIZE);
 	}
 	
 	public ArrayBufferPool(long poolSize, int bufferSize) {
+		this(poolSize, bufferSize, 0, false);
+	}
+	
+	/**
+	 * Create an array buffer pool.
+	 * 
+	 * @param poolSize the pool size limit
+	 * @param bufferSize the buffer size
+	 * @param slabSize the slab size, or 0 that allocates each buffer from VM
+	 * @param preTouch allocate all buffers and touch their pages at startup
+	 * 
+	 * @since 2018-07-16 little-pan
+	 */
+	public ArrayBufferPool(long poolSize, int bufferSize, int slabSize, boolean preTouch) {
 		super(poolSize, bufferSize);
+		if(slabSize != 0) {
+			if(slabSize < bufferSize) {
+				throw new IllegalArgumentException("slabSize can't less than bufferSize: " + slabSize);
+			}
+			MathUtil.bitShift(slabSize);
+		}
+		this.slabSize = slabSize;
 		long maxBuffers = poolSize / bufferSize;
 		final long rem  = poolSize & (bufferSize-1);
 		if(rem != 0L) {
@@ -29,8 +75,28 @@ public class ArrayBufferPool extends AbstractBufferPool {
 					max, poolSize);
 			throw new IllegalArgumentException(error);
 		}
-		log.info("maxBuffers = {}", maxBuffers);
+		log.info("maxBuffers = {}, slabSize = {}, preTouch = {}", maxBuffers, slabSize, preTouch);
 		this.pool = new ArrayQueue<Buffer>((int)(maxBuffers));
+		if(preTouch) {
+			preTouch();
+		}
+	}
+	
+	/**
+	 * Allocate all buffers of this pool, touch their pages, and cache them.
+	 */
+	protected void preTouch() {
+		final long ts = System.currentTimeMillis();
+		final int n = (int)(poolSize / bufferSize);
+		for(int i = 0; i < n; ++i) {
+			final ByteBuffer buf = doAllocate();
+			for(int j = 0; j < bufferSize; j += PAGE_SIZE) {
+				buf.put(j, (byte)0);
+			}
+			pool.offer(new Buffer(this, buf));
+			pooledSize += bufferSize;
+		}
+		log.info("{}: pre-touch {} buffers in {}ms", this, n, System.currentTimeMillis() - ts);
 	}
 
 	@Override
@@ -44,6 +110,8 @@ public class ArrayBufferPool extends AbstractBufferPool {
 			}
 			buffer.onAlloc();
 			pooledSize -= bufferSize;
+			curSize    += bufferSize;
+			onAllocated(true);
 			return buffer;
 		}
 		return super.allocate();
@@ -65,13 +133,31 @@ public class ArrayBufferPool extends AbstractBufferPool {
 
 	@Override
 	protected ByteBuffer doAllocate() {
-		return ByteBuffer.allocateDirect(bufferSize);
+		if(slabSize == 0) {
+			return ByteBuffer.allocateDirect(bufferSize);
+		}
+		
+		ByteBuffer s = slab;
+		if(s == null || !s.hasRemaining()) {
+			// The last slab fits the pool size
+			final long rem = ((poolSize - slabbedSize + bufferSize - 1) >> bufferSizeShift) << bufferSizeShift;
+			final int size = (int)Math.max(Math.min(slabSize, rem), bufferSize);
+			s = slab = ByteBuffer.allocateDirect(size);
+			slabbedSize += size;
+			log.debug("{}: Allocate a slab from VM - {}", this, s);
+		}
+		final int pos = s.position();
+		s.limit(pos + bufferSize);
+		final ByteBuffer buf = s.slice();
+		s.limit(s.capacity()).position(pos + bufferSize);
+		return buf;
 	}
 	
 	@Override
 	public void close(){
 		pool.clear();
 		pooledSize = 0L;
+		slab = null;
 		super.close();
 	}
 
@@ -1,30 +1,63 @@
 package io.simple.nio;
 
 import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
-public class Buffer {
+/**
+ * <p>
+ * A reference counted byte buffer that allocated from a {@link BufferPool}, and 
+ *returned into the pool when the reference count reaches 0.
+ * </p>
+ * 
+ * <p>
+ * A slice of the buffer is a read-only view that shares the reference count of this 
+ *buffer, so that a frame decoded from the input stream can be passed to the application 
+ *handler without copying, and the buffer is released after all frames released.
+ * </p>
+ * 
+ * <p>
+ * A buffer allocated by a session from an unsynchronized per event loop pool is owned 
+ *by the event loop: when its last reference released outside the event loop, e.g. by 
+ *a worker thread, it is handed back to the event loop and returned into the pool there.
+ * </p>
+ * 
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+public class Buffer implements ReferenceCounted {
+	
+	private static final AtomicIntegerFieldUpdater<Buffer> refCntUpdater = 
+			AtomicIntegerFieldUpdater.newUpdater(Buffer.class, "refCnt");
 	
 	final BufferPool pool;
 	final ByteBuffer backed;
 	
-	private boolean released;
+	// 0 means released
+	private volatile int refCnt;
+	// the leak tracker if sampled
+	private BufferLeakDetector.Leak leak;
+	// the event loop that owns the pool, or null if the pool thread-safe
+	EventLoop owner;
 	
 	public Buffer(final BufferPool pool, ByteBuffer backed) {
 		this.pool   = pool;
 		this.backed = backed;
-		released    = true;
 	}
 	
 	public Buffer onAlloc() {
-		if(!released) {
+		if(refCnt != 0) {
 			throw new IllegalStateException("Buffer not released");
 		}
-		released = false;
+		refCnt = 1;
+		if(BufferLeakDetector.enabled) {
+			leak = BufferLeakDetector.track(this);
+		}
 		return this;
 	}
 	
 	public ByteBuffer byteBuffer() {
-		if(released) {
+		if(refCnt == 0) {
 			throw new IllegalStateException("Buffer released");
 		}
 		return backed;
@@ -39,12 +72,116 @@ public class Buffer {
 		return this;
 	}
 	
+	@Override
+	public int refCnt() {
+		return refCnt;
+	}
+	
+	@Override
+	public Buffer retain() {
+		for(;;) {
+			final int cnt = refCnt;
+			if(cnt == 0) {
+				throw new IllegalStateException("Buffer released");
+			}
+			if(cnt == Integer.MAX_VALUE) {
+				throw new IllegalStateException("Buffer reference count overflow");
+			}
+			if(refCntUpdater.compareAndSet(this, cnt, cnt + 1)) {
+				touch("retain");
+				return this;
+			}
+		}
+	}
+	
+	@Override
 	public void release() {
+		for(;;) {
+			final int cnt = refCnt;
+			if(cnt == 0) {
+				throw new IllegalStateException("Buffer released");
+			}
+			if(refCntUpdater.compareAndSet(this, cnt, cnt - 1)) {
+				touch("release");
+				if(cnt == 1) {
+					deallocate();
+				}
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Deallocate this buffer when the reference count reaches 0.
+	 */
+	protected void deallocate() {
+		final EventLoop loop = owner;
+		if(loop != null && !loop.inEventLoop()) {
+			loop.executeLater(new Runnable() {
+				@Override
+				public void run() {
+					pool.release(Buffer.this);
+				}
+			});
+			return;
+		}
 		pool.release(this);
 	}
 	
 	public void onRelease() {
-		released = true;
+		refCnt = 0;
+		final BufferLeakDetector.Leak l = leak;
+		if(l != null) {
+			leak = null;
+			l.close();
+		}
+	}
+	
+	/**
+	 * Record the current site in the leak tracker if this buffer tracked, which is 
+	 *logged when this buffer leaked.
+	 * 
+	 * @param hint the hint of the site, can be null
+	 * @return this buffer
+	 */
+	public Buffer touch(final Object hint) {
+		final BufferLeakDetector.Leak l = leak;
+		if(l != null) {
+			l.record(hint);
+		}
+		return this;
+	}
+	
+	/**
+	 * Create a read-only view of this buffer's bytes from index to index + length, 
+	 *the view shares the reference count of this buffer, and its position and limit 
+	 *are independent of this buffer.
+	 * 
+	 * @param index the absolute index of the bytes in this buffer
+	 * @param length the byte number of the view
+	 * @return the view that not retained
+	 */
+	public Buffer slice(final int index, final int length) {
+		final ByteBuffer buf = byteBuffer().duplicate();
+		if(index < 0 || length < 0 || index + length > buf.capacity()) {
+			throw new IndexOutOfBoundsException("index = " + index + ", length = " + length 
+					+ ", capacity = " + buf.capacity());
+		}
+		buf.limit(index + length).position(index);
+		return new SlicedBuffer(this, buf.slice().asReadOnlyBuffer());
+	}
+	
+	/**
+	 * Create a read-only view as {@link #slice(int, int)}, and retain this buffer.
+	 * 
+	 * @param index the absolute index of the bytes in this buffer
+	 * @param length the byte number of the view
+	 * @return the retained view, which should be released after used
+	 */
+	public Buffer retainedSlice(final int index, final int length) {
+		final Buffer slice = slice(index, length);
+		retain();
+		return slice;
 	}
 	
 	@Override
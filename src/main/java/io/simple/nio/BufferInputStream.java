@@ -1,5 +1,6 @@
 package io.simple.nio;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
@@ -36,6 +37,13 @@ public class BufferInputStream extends InputStream {
 	private int available, maxBuffers;
 	private boolean eof;
 	
+	// scattering read buffers
+	private ByteBuffer readBuffers[];
+	private Buffer stageBuffers[];
+	private int stages = 1;
+	// adaptive capacity of the read buffers, 0 means the buffer size of the pool
+	private int readSize;
+	
 	// mark support
 	private int markPos = -1, readLimit;
 	
@@ -71,38 +79,26 @@ public class BufferInputStream extends InputStream {
 	 */
 	@Override
 	public int read() throws IOException {
-		final SocketChannel chan= session.channel();
-		final ByteBuffer buffer = headBuffer();
-		if(!buffer.hasRemaining()) {
-			final ByteBuffer b;
-			localPool.poll().release();
-			// next buffer
-			final int n = available();
-			b = headBuffer();
-			markPos = -1;
-			if(n == 0) {
-				// no byte readable or EOF
-				b.clear();
-				final int i = chan.read(b);
-				b.flip();
-				if(i == -1) {
-					this.eof = true;
+		ByteBuffer buffer = headBuffer();
+		if(buffer == null) {
+			// No byte in buffers: read from channel
+			if(available() == 0) {
+				if(eof) {
 					return -1;
 				}
-				if(i == 0) {
-					// no byte readable!
-					throw new PendingIOException();
-				}
-				available += i;
+				// no byte readable!
+				throw new PendingIOException();
 			}
-			--available;
-			return (0xFF & b.get());
-		}
-		if(markPos >= 0 && --readLimit <= 0) {
+			buffer = headBuffer();
+		}else if(markPos >= 0 && --readLimit <= 0) {
 			markPos = -1;
 		}
 		--available;
-		return (0xFF & buffer.get());
+		final int c = (0xFF & buffer.get());
+		if(markPos < 0 && !buffer.hasRemaining()) {
+			releaseReadBuffers();
+		}
+		return c;
 	}
 	
 	@Override
@@ -128,19 +124,15 @@ public class BufferInputStream extends InputStream {
         
         final int size = Math.min(len, available + 1/*prev byte*/);
         int i = 1;
-        ByteBuffer buf = headBuffer();
         for (int n = 0; i < size ; i += n) {
-        	int rem = buf.remaining();
-        	if(rem == 0) {
-        		localPool.poll().release();
-        		buf = headBuffer();
-        		rem = buf.remaining();
-        		markPos = -1;
-        	}
-        	n = Math.min(rem, size-i);
+        	final ByteBuffer buf = headBuffer();
+        	n = Math.min(buf.remaining(), size-i);
         	buf.get(b, off + i, n);
         	available -= n;
         }
+        if(markPos < 0) {
+        	releaseReadBuffers();
+        }
         return i;
     }
 
@@ -151,147 +143,233 @@ public class BufferInputStream extends InputStream {
             return 0L;
         }
 
-        ByteBuffer buf = headBuffer();
         for (int i = 0, j = 0; i < size; i += j) {
-        	int rem = buf.remaining();
-        	if(rem == 0) {
-        		localPool.poll().release();
-        		buf = headBuffer();
-        		rem = buf.remaining();
-        		markPos = -1;
-        	}
-        	j = Math.min(rem, size-i);
+        	final ByteBuffer buf = headBuffer();
+        	j = Math.min(buf.remaining(), size-i);
         	buf.position(buf.position() + j);
         	available -= j;
         }
+        if(markPos < 0) {
+        	releaseReadBuffers();
+        }
 
-        return n - size;
+        return size;
     }
 	
+	/**
+	 * <p>
+	 * Read the next length bytes as a frame without copying: the frame consists of 
+	 *the read-only slices of the read buffers, which retain the buffers until the 
+	 *frame released, so it can be passed to the application handler.
+	 * </p>
+	 * 
+	 * @param length the byte number of the frame
+	 * @return the retained frame, which should be released after used
+	 * 
+	 * @throws io.simple.nio.PendingIOException 
+	 *  if not enough bytes readable
+	 * @throws EOFException if the stream has reached the end-of-stream
+	 * 
+	 * @since 2018-07-16 little-pan
+	 */
+	public CompositeBuffer readRetained(final int length) throws IOException {
+		if(length < 0) {
+			throw new IllegalArgumentException("length must not less than 0: " + length);
+		}
+		if(length > available && available() < length) {
+			if(eof) {
+				throw new EOFException();
+			}
+			throw new PendingIOException();
+		}
+		
+		final CompositeBuffer frame = new CompositeBuffer(Math.max(localPool.size(), 1));
+		boolean failed = true;
+		try {
+			for(int i = 0; i < length;) {
+				final ByteBuffer buf = headBuffer();
+				final int pos = buf.position();
+				final int n = Math.min(buf.remaining(), length - i);
+				frame.addComponent(localPool.peek().retainedSlice(pos, n));
+				buf.position(pos + n);
+				available -= n;
+				i += n;
+			}
+			if(markPos < 0) {
+				releaseReadBuffers();
+			}
+			failed = false;
+			return frame;
+		} finally {
+			if(failed) {
+				frame.release();
+			}
+		}
+	}
+	
 	@Override
 	public int available() throws IOException {
+		final ArrayQueue<Buffer> pool = localPool;
+		if(markPos < 0) {
+			releaseReadBuffers();
+		}
+		
 		// limit read rate since 2018-06-24 little-pan
-		int buffers = calcBuffers();
-		if(buffers >= maxBuffers && available > 0) {
-			final ByteBuffer b = localPool.peekLast().byteBuffer();
-			if(b.limit() == b.capacity()) {
-				log.debug("Don't read from channel - reach maxBuffers = {}, buffers = {}, available = {}",
-						maxBuffers, buffers, available);
-				return available;
+		final int slots = maxBuffers - pool.size();
+		// the read HWM in bytes, as the read size may grow beyond the buffer size
+		final long free = (long)maxBuffers * session.bufferPool().bufferSize() - available;
+		final Buffer tail = pool.peekLast();
+		ByteBuffer tailBuf = null;
+		if(tail != null) {
+			final ByteBuffer b = tail.byteBuffer();
+			if(b.limit() < b.capacity()) {
+				tailBuf = b;
 			}
 		}
+		if((slots <= 0 || free <= 0L) && tailBuf == null) {
+			log.debug("Don't read from channel - reach maxBuffers = {}, buffers = {}, available = {}",
+					maxBuffers, pool.size(), available);
+			return available;
+		}
 		
-		final SocketChannel chan = session.channel();
-		final int oldAvailable   = available;
-		// prepare for channel read
-		final ByteBuffer buffer  = tailBuffer();
-		final int cap = buffer.capacity();
-		final int pos = buffer.position();
-		final int lim = buffer.limit();
-		if(pos < lim) {
-			buffer.position(lim).limit(cap);
-		}else {
-			buffer.clear();
+		// Scattering read into the tail buffer and the staged buffers
+		// @since 2018-07-15 little-pan
+		ByteBuffer bufs[] = readBuffers;
+		if(bufs == null || bufs.length < maxBuffers + 1) {
+			bufs = readBuffers  = new ByteBuffer[maxBuffers + 1];
+			stageBuffers = new Buffer[maxBuffers];
 		}
-		ByteBuffer b = buffer;
-		for(;;) {
-			final int i = chan.read(b);
-			// no byte readable or buffer full
-			if(i <= 0 || !b.hasRemaining()) {
-				// buffer changed to read state
-				if(b == buffer && pos < lim) {
-					// old data remaining
-					final int newlim = buffer.position();
-					buffer.position(pos).limit(newlim);
+		final Buffer staged[] = stageBuffers;
+		int stageCount = (free <= 0L? 0: Math.min(slots, stages));
+		int size = readSize();
+		if(stageCount > 0 && (long)stageCount * size > free) {
+			if(size > free) {
+				size = Math.max(Integer.highestOneBit((int)free), BufferPool.MIN_BUFFER_SIZE);
+			}
+			stageCount = (int)Math.max(free / size, 1L);
+		}
+		final SocketChannel chan = session.channel();
+		int len = 0, tailPos = -1, n = 0;
+		long i = 0L;
+		try {
+			if(tailBuf != null) {
+				tailPos = tailBuf.position();
+				tailBuf.position(tailBuf.limit()).limit(tailBuf.capacity());
+				bufs[len++] = tailBuf;
+			}
+			for(; n < stageCount; ++n) {
+				staged[n] = session.alloc(size);
+				bufs[len++] = staged[n].byteBuffer();
+			}
+			i = chan.read(bufs, 0, len);
+		} finally {
+			// buffers changed to read state
+			if(tailBuf != null) {
+				final int lim = tailBuf.position();
+				tailBuf.limit(lim).position(tailPos);
+			}
+			int used = 0;
+			for(int j = 0; j < n; ++j) {
+				final Buffer buf = staged[j];
+				final ByteBuffer b = buf.byteBuffer();
+				b.flip();
+				if(b.hasRemaining()) {
+					pool.offer(buf);
+					++used;
 				}else {
-					b.flip();
+					buf.release();
 				}
-				
-				if(i <= 0 || buffers >= maxBuffers) {
-					this.eof = (i == -1);
-					if(oldAvailable != available) {
-						try {
-							session.fireReadComplete();
-						}catch(final Exception e) {
-							if(e instanceof RuntimeException) {
-								throw (RuntimeException)e;
-							}
-							throw new RuntimeException(e);
-						}
-					}
-					return available;
+				staged[j] = null;
+			}
+			for(int j = 0; j < len; ++j) {
+				bufs[j] = null;
+			}
+			// Adapt the stage count and read size
+			if(n > 0 && used == n) {
+				stages = Math.min(stages << 1, maxBuffers);
+				readSize = Math.min(size << 1, session.bufferPool().maxCapacity());
+			}else {
+				stages = Math.max(used, 1);
+				if(i <= (size >> 2)) {
+					readSize = Math.max(size >> 1, BufferPool.MIN_BUFFER_SIZE);
 				}
-				
-				b = allocate();
-				b.clear();
-				++buffers;
 			}
+		}
+		
+		this.eof = (i == -1L);
+		if(i > 0L) {
 			available += i;
+			try {
+				session.fireReadComplete();
+			}catch(final Exception e) {
+				if(e instanceof RuntimeException) {
+					throw (RuntimeException)e;
+				}
+				throw new RuntimeException(e);
+			}
 		}
+		return available;
     }
 	
-	protected int calcBuffers() {
-		final BufferPool bufferPool = session.bufferPool();
-		final int shift = bufferPool.bufferSizeShift();
-		int buffers = available >> shift;
-		if((available & (bufferPool.bufferSize()-1)) != 0){
-			++buffers;
-		}
-		return buffers;
-	}
-	
 	/**
-	 * Get a byte buffer for user read.
+	 * The capacity of a new read buffer, halved if a read only fills a quarter of it, 
+	 *and doubled if the read fills all staged buffers, at most the max capacity of the 
+	 *pool, so that a big message is not chained by many small buffers. A fixed size 
+	 *buffer pool always allocates the buffer size. The staged buffers of a read are
+	 *still bounded by the max buffers times the buffer size in bytes.
+	 * 
+	 * @return the min capacity of a new read buffer
 	 * 
-	 * @return byte buffer
+	 * @since 2018-07-16 little-pan
 	 */
-	protected ByteBuffer headBuffer() {
-		final Buffer buf = localPool.peek();
-		if(buf == null) {
-			return allocate();
+	protected int readSize() {
+		final BufferPool bufferPool = session.bufferPool();
+		if(readSize == 0 || readSize > bufferPool.maxCapacity()) {
+			readSize = bufferPool.bufferSize();
 		}
-		return buf.byteBuffer();
+		return readSize;
 	}
 	
 	/**
-	 * Get a byte buffer for read channel.
-	 * 
-	 * @return byte buffer
+	 * Release the buffers that have been read out immediately, so that an idle 
+	 *session holds no buffer: a read buffer is only allocated when reading 
+	 *from the channel.
 	 */
-	protected ByteBuffer tailBuffer() {
-		final Buffer buf = localPool.peekLast();
-		if(buf == null) {
-			return allocate();
-		}
-		final ByteBuffer b = buf.byteBuffer();
-		if(b.hasRemaining()) {
-			if(b.limit() < b.capacity()) {
-				return b;
+	protected void releaseReadBuffers() {
+		final ArrayQueue<Buffer> pool = localPool;
+		for(;;) {
+			final Buffer buf = pool.peek();
+			if(buf == null) {
+				break;
+			}
+			if(buf.byteBuffer().hasRemaining()) {
+				break;
 			}
-			return allocate();
+			pool.poll();
+			buf.release();
 		}
-		return b;
 	}
 	
 	/**
-	 * Allocate a byte buffer for channel read.
+	 * Get the head byte buffer that has remaining for user read, the buffers
+	 *read out before it are released and the mark invalidated.
 	 * 
-	 * @return a byte buffer
+	 * @return the head byte buffer, or null if no byte in buffers
 	 */
-	protected ByteBuffer allocate() {
-		final Buffer newBuf = session.alloc();
-		boolean failed = true;
-		try {
-			localPool.offer(newBuf);
-			final ByteBuffer b = newBuf.byteBuffer();
-			// keep user read state
-			b.flip();
-			failed = false;
-			return b;
-		}finally {
-			if(failed) {
-				newBuf.release();
+	protected ByteBuffer headBuffer() {
+		final ArrayQueue<Buffer> pool = localPool;
+		for(;;) {
+			final Buffer buf = pool.peek();
+			if(buf == null) {
+				return null;
 			}
+			final ByteBuffer b = buf.byteBuffer();
+			if(b.hasRemaining()) {
+				return b;
+			}
+			pool.poll();
+			buf.release();
+			markPos = -1;
 		}
 	}
 	
@@ -318,8 +396,9 @@ public class BufferInputStream extends InputStream {
 	
 	@Override
 	public void mark(int readlimit) {
+		final Buffer head = localPool.peek();
 		this.readLimit = readlimit;
-		this.markPos   = headBuffer().position();
+		this.markPos   = (head == null? 0: head.byteBuffer().position());
 	}
 	
 	@Override
@@ -327,7 +406,12 @@ public class BufferInputStream extends InputStream {
 		if(markPos < 0) {
 			throw new IOException("Resetting to invalid mark");
 		}
-		final ByteBuffer buf = headBuffer();
+		final Buffer head = localPool.peek();
+		if(head == null) {
+			// marked in empty stream, and nothing read
+			return;
+		}
+		final ByteBuffer buf = head.byteBuffer();
 		available += (buf.position() - markPos);
 		buf.position(markPos);
     }
@@ -0,0 +1,236 @@
+package io.simple.nio;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * A buffer leak detector that tracks the sampled buffers by weak references, and 
+ *logs the buffers that garbage collected without released, with the allocation stack 
+ *trace and the last touch sites, e.g. retain() and release().
+ * </p>
+ * 
+ * <p>
+ * The level is set by the system property "io.simple.nio.leakDetection.level"
+ *(disabled, sample or paranoid, default disabled) or {@link #setLevel(Level)}, and 
+ *the sampling interval of the sample level by "io.simple.nio.leakDetection.samplingInterval"
+ *(default 100, i.e. 1% allocations tracked). When disabled, the allocation only costs 
+ *one branch.
+ * </p>
+ * 
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+public final class BufferLeakDetector {
+	final static Logger log = LoggerFactory.getLogger(BufferLeakDetector.class);
+	
+	public enum Level {
+		/** No buffer tracked. */
+		DISABLED,
+		/** One of the sampling interval allocations tracked. */
+		SAMPLE,
+		/** All allocations tracked. */
+		PARANOID
+	}
+	
+	public static final int DEFAULT_SAMPLING_INTERVAL = 100;
+	public static final int MAX_RECORDS = 4;
+	
+	// the only state read in allocation when disabled
+	static volatile boolean enabled;
+	private static volatile Level level;
+	private static volatile int samplingInterval;
+	
+	private static final ReferenceQueue<Buffer> refQueue = new ReferenceQueue<Buffer>();
+	private static final Set<Leak> allLeaks = Collections.newSetFromMap(
+			new ConcurrentHashMap<Leak, Boolean>());
+	private static final AtomicLong leakCount = new AtomicLong();
+	
+	static {
+		Level lvl = Level.DISABLED;
+		final String prop = System.getProperty("io.simple.nio.leakDetection.level");
+		if(prop != null) {
+			try {
+				lvl = Level.valueOf(prop.trim().toUpperCase());
+			} catch(final IllegalArgumentException e) {
+				log.warn("Unknown leak detection level: {}", prop);
+			}
+		}
+		setSamplingInterval(Integer.getInteger("io.simple.nio.leakDetection.samplingInterval", 
+				DEFAULT_SAMPLING_INTERVAL));
+		setLevel(lvl);
+	}
+	
+	private BufferLeakDetector() {
+		
+	}
+	
+	public static Level getLevel() {
+		return level;
+	}
+	
+	public static void setLevel(final Level level) {
+		if(level == null) {
+			throw new NullPointerException("level");
+		}
+		BufferLeakDetector.level = level;
+		enabled = (level != Level.DISABLED);
+	}
+	
+	public static int getSamplingInterval() {
+		return samplingInterval;
+	}
+	
+	public static void setSamplingInterval(final int samplingInterval) {
+		if(samplingInterval < 1) {
+			throw new IllegalArgumentException("samplingInterval must bigger than 0: " + samplingInterval);
+		}
+		BufferLeakDetector.samplingInterval = samplingInterval;
+	}
+	
+	/**
+	 * @return the number of the buffers that tracked and not released
+	 */
+	public static int trackedCount() {
+		return allLeaks.size();
+	}
+	
+	/**
+	 * @return the number of the leaked buffers reported
+	 */
+	public static long leakCount() {
+		return leakCount.get();
+	}
+	
+	/**
+	 * Track the allocated buffer if sampled, and report the leaked buffers that 
+	 *have been garbage collected.
+	 * 
+	 * @param buffer the allocated buffer
+	 * @return the leak tracker, or null if not sampled
+	 */
+	static Leak track(final Buffer buffer) {
+		final Level lvl = level;
+		if(lvl == Level.DISABLED) {
+			return null;
+		}
+		reportLeaks();
+		if(lvl == Level.SAMPLE && ThreadLocalRandom.current().nextInt(samplingInterval) != 0) {
+			return null;
+		}
+		final Leak leak = new Leak(buffer);
+		allLeaks.add(leak);
+		return leak;
+	}
+	
+	/**
+	 * Report the leaked buffers that have been garbage collected.
+	 */
+	public static void reportLeaks() {
+		for(;;) {
+			final Leak leak = (Leak)refQueue.poll();
+			if(leak == null) {
+				break;
+			}
+			if(!allLeaks.remove(leak)) {
+				// released
+				continue;
+			}
+			leakCount.incrementAndGet();
+			log.error("LEAK: Buffer.release() was not called before it's garbage collected - {}{}", 
+					leak.desc, leak.records());
+		}
+	}
+	
+	/**
+	 * The leak tracker of a buffer, which records the allocation and last touch sites.
+	 */
+	static final class Leak extends WeakReference<Buffer> {
+		
+		final String desc;
+		private final Record allocation;
+		private final Record touches[] = new Record[MAX_RECORDS];
+		private long touchCount;
+		
+		Leak(final Buffer buffer) {
+			super(buffer, refQueue);
+			this.desc = buffer.bufferPool() + " capacity = " + buffer.backed.capacity();
+			this.allocation = new Record("Allocated at:");
+		}
+		
+		void record(final Object hint) {
+			final Record r = new Record("Touched" + (hint == null? "": " (" + hint + ")") + " at:");
+			synchronized(this) {
+				touches[(int)(touchCount++ % MAX_RECORDS)] = r;
+			}
+		}
+		
+		void close() {
+			allLeaks.remove(this);
+			clear();
+		}
+		
+		synchronized String records() {
+			final StringBuilder sb = new StringBuilder();
+			final int n = (int)Math.min(touchCount, MAX_RECORDS);
+			if(touchCount > n) {
+				sb.append("\n").append(touchCount - n).append(" touches discarded");
+			}
+			// the latest first
+			for(int i = 1; i <= n; ++i) {
+				sb.append("\n").append(touches[(int)((touchCount - i) % MAX_RECORDS)]);
+			}
+			return sb.append("\n").append(allocation).toString();
+		}
+		
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(this);
+		}
+		
+		@Override
+		public boolean equals(final Object o) {
+			return (o == this);
+		}
+		
+	}
+	
+	static final class Record extends Throwable {
+		private static final long serialVersionUID = 1L;
+		
+		Record(final String message) {
+			super(message);
+		}
+		
+		@Override
+		public String toString() {
+			final StringBuilder sb = new StringBuilder(getMessage());
+			final StackTraceElement trace[] = getStackTrace();
+			// skip the frames of the detector and buffer
+			int i = 0;
+			for(; i < trace.length; ++i) {
+				final String cls = trace[i].getClassName();
+				if(!cls.startsWith(BufferLeakDetector.class.getName()) 
+						&& !cls.equals(Buffer.class.getName()) 
+						&& !cls.equals(SlicedBuffer.class.getName())) {
+					break;
+				}
+			}
+			for(; i < trace.length; ++i) {
+				sb.append("\n\t").append(trace[i]);
+			}
+			return sb.toString();
+		}
+		
+	}
+
+}
@@ -4,9 +4,11 @@ import io.simple.nio.store.FileRegion;
 import io.simple.nio.store.FileStore;
 import io.simple.util.ArrayQueue;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SocketChannel;
 import java.util.LinkedList;
 
@@ -28,18 +30,39 @@ public class BufferOutputStream extends OutputStream {
 	
 	// buffer pool
 	protected ArrayQueue<Buffer> localPool;
-	private int remaining, maxBuffers, buffers;
+	private int maxBuffers, buffers;
+	private long remaining;
+	// capacity of the pool buffers in the local pool, bounded by the write HWM
+	private long localBytes;
 	
 	// file backed buffer
 	protected LinkedList<FileRegion> regionPool;
 	private Buffer regionBuffer;
+	// filled region buffers in the spill writer, in write order after the region pool
+	private final LinkedList<SpillWriter.Job> spills;
+	// spill jobs waiting for the full spill queue
+	private int overflows;
+	// spilled bytes not flushed, and the session spill state
+	private long spilled;
+	private boolean spillHigh, spillHighFired;
+	private Runnable spillStateTask;
+	// write watermarks, and the writability state
+	private final long writeHighWatermark, writeLowWatermark;
+	private boolean writeHigh, writableFired = true;
+	private Runnable writabilityTask;
+	
+	// gathering write buffers
+	private ByteBuffer writeBuffers[];
 	
 	public BufferOutputStream(final Session session) {
 		this.session   = session;
 		this.regionPool= new LinkedList<FileRegion>();
+		this.spills    = new LinkedList<SpillWriter.Job>();
 		
 		final Configuration config = session.config();
 		setMaxBuffers(config.getMaxWriteBuffers());
+		this.writeHighWatermark = config.getWriteHighWatermark();
+		this.writeLowWatermark  = config.getWriteLowWatermark();
 	}
 	
 	public int getMaxBuffers() {
@@ -62,20 +85,27 @@ public class BufferOutputStream extends OutputStream {
 		this.maxBuffers = maxBuffers;
 	}
 	
-	protected ByteBuffer tailBuffer() throws IOException {
+	/**
+	 * Get the tail buffer for write.
+	 * 
+	 * @param hint the byte number to write
+	 * @return the tail byte buffer that has remaining
+	 * @throws IOException if spilling into the buffer store failed
+	 */
+	protected ByteBuffer tailBuffer(final int hint) throws IOException {
 		if(regionBuffer != null){
 			return flushRegion();
 		}
 		
 		final Buffer buf = localPool.peekLast();
-		if(buf == null || !buf.byteBuffer().hasRemaining()) {
-			if(buffers == maxBuffers-1){
+		if(buf == null || buf instanceof RetainedBuffer || !buf.byteBuffer().hasRemaining()) {
+			if(buffers >= maxBuffers-1 || localBytes >= maxLocalBytes()){
 				// Write HWM - switch to buffer store
 				regionBuffer = session.alloc();
 				++buffers;
 				return regionBuffer.byteBuffer();
 			}
-			return allocBuffer().byteBuffer();
+			return allocBuffer(hint).byteBuffer();
 		}
 		return buf.byteBuffer();
 	}
@@ -85,12 +115,30 @@ public class BufferOutputStream extends OutputStream {
 		if(b.hasRemaining()){
 			return b;
 		}
+		return spillRegion();
+	}
+	
+	/**
+	 * Spill the bytes of the region buffer into the buffer store.
+	 * 
+	 * @return the region buffer for write
+	 * @throws IOException if spilling into the buffer store failed
+	 * 
+	 * @since 2018-07-16 little-pan
+	 */
+	protected ByteBuffer spillRegion() throws IOException {
+		final ByteBuffer b = regionBuffer.byteBuffer();
+		final SpillWriter writer = session.eventLoop().spillWriter();
+		if(writer != null) {
+			return spill(writer);
+		}
 		
 		FileRegion tailRegion = regionPool.peekLast();
 		if(tailRegion == null || tailRegion.writeRemaining()==0){
 			tailRegion = allocRegion();
 		}
 		b.flip();
+		final int spillBytes = b.remaining();
 		int regRem = tailRegion.writeRemaining();
 		for(int n = 0; b.hasRemaining();){
 			final int i = tailRegion.write(b);
@@ -102,15 +150,322 @@ public class BufferOutputStream extends OutputStream {
 			}
 		}
 		b.clear();
+		updateSpilled(spillBytes);
 		return b;
 	}
 	
-	protected Buffer allocBuffer(){
-		final Buffer newBuf = session.alloc();
+	/**
+	 * Hand the filled region buffer over to the spill writer with the regions allocated 
+	 *for it, and switch to a new region buffer. If the spill queue is full, the job waits
+	 *in the spill writer and this stream is not writable until the job resubmitted, so 
+	 *that the event loop never blocks on disk.
+	 * 
+	 * @param writer the spill writer of the event loop
+	 * @return the new region buffer
+	 * @throws IOException if allocating regions failed
+	 * 
+	 * @since 2018-07-16 little-pan
+	 */
+	protected ByteBuffer spill(final SpillWriter writer) throws IOException {
+		final FileStore store = session.bufferStore();
+		final Buffer buf = regionBuffer;
+		final ByteBuffer b = buf.byteBuffer();
+		b.flip();
+		final int count = (b.remaining() + store.regionSize - 1) / store.regionSize;
+		FileRegion regions[] = null;
+		Buffer next = null;
+		boolean failed = true;
+		try {
+			regions = store.allocate(count);
+			session.eventLoop().checkStoreWatermarks();
+			next = session.alloc();
+			failed = false;
+		} finally {
+			if(failed) {
+				// restore for write
+				b.position(b.limit()).limit(b.capacity());
+				if(regions != null) {
+					for(final FileRegion region : regions) {
+						region.release();
+					}
+				}
+			}
+		}
+		
+		final SpillWriter.Job job = new SpillWriter.Job(this, store, buf, regions);
+		spills.offer(job);
+		regionBuffer = next;
+		updateSpilled(b.remaining());
+		if(!writer.submit(job) && overflows++ == 0) {
+			onWritabilityChanged();
+		}
+		return next.byteBuffer();
+	}
+	
+	/**
+	 * Handle the overflow job of this stream submitted into the spill queue, called by 
+	 *the event loop.
+	 * 
+	 * @since 2018-07-16 little-pan
+	 */
+	void onResubmitted() {
+		if(--overflows == 0) {
+			onWritabilityChanged();
+		}
+	}
+	
+	/**
+	 * Handle the job written by the spill writer, called by the event loop.
+	 * 
+	 * @param job the spill job of this stream
+	 */
+	void onSpilled(final SpillWriter.Job job) {
+		if(job.cancelled) {
+			// this stream closed
+			job.release();
+			session.eventLoop().checkStoreWatermarks();
+			return;
+		}
+		job.written = true;
+		final IOException cause = commitSpills();
+		if(cause != null) {
+			session.fireCause(cause);
+			session.close();
+			session.eventLoop().checkStoreWatermarks();
+			return;
+		}
+		session.onSpilled();
+	}
+	
+	/**
+	 * Commit the leading written spill jobs into the region pool in write order.
+	 * 
+	 * @return the write error of a spill job, or null
+	 */
+	protected IOException commitSpills() {
+		for(;;) {
+			final SpillWriter.Job job = spills.peek();
+			if(job == null || !job.written) {
+				return null;
+			}
+			spills.poll();
+			if(job.cause != null) {
+				job.release();
+				return job.cause;
+			}
+			job.commit();
+			for(final FileRegion region : job.regions) {
+				regionPool.offer(region);
+			}
+			if(job.segments != null) {
+				regionPool.addAll(job.segments);
+			}
+			job.release(false);
+		}
+	}
+	
+	/**
+	 * @return true if the bytes to flush next are being written by the spill writer
+	 * 
+	 * @since 2018-07-16 little-pan
+	 */
+	public boolean isSpillPending() {
+		return (localPool.isEmpty() && regionPool.isEmpty() && !spills.isEmpty());
+	}
+	
+	/**
+	 * <p>
+	 * Check the session spill limit before writing n bytes, so that a write is either 
+	 *accepted whole or rejected before any byte written, and never fails in the middle.
+	 * </p>
+	 * 
+	 * <p>
+	 * The bytes to spill are estimated by the free local buffer slots if not spilling yet,
+	 *and a write of small local buffers may spill a little more than the limit.
+	 * </p>
+	 * 
+	 * @param n the byte number to write
+	 * @throws SpillLimitException if the session spill limit exceeded
+	 * 
+	 * @since 2018-07-16 little-pan
+	 */
+	protected void checkSpillLimit(final long n) throws SpillLimitException {
+		final long limit = session.config().getSpillLimit();
+		if(limit == 0L) {
+			return;
+		}
+		final long spills;
+		if(regionBuffer == null) {
+			final long local = (buffers < maxBuffers - 1? maxLocalBytes() - localBytes: 0L);
+			spills = n - Math.max(local, 0L);
+		}else {
+			spills = regionBuffer.byteBuffer().position() + n;
+		}
+		if(spills > 0L && spilled + spills > limit) {
+			throw new SpillLimitException("Session spill limit exceeded: " + limit);
+		}
+	}
+	
+	/**
+	 * @return the spilled bytes of this stream not flushed
+	 * 
+	 * @since 2018-07-16 little-pan
+	 */
+	public long spilled() {
+		return spilled;
+	}
+	
+	/**
+	 * @return true if the spilled bytes reach the spill high watermark and 
+	 * not drop to the low yet
+	 * 
+	 * @since 2018-07-16 little-pan
+	 */
+	public boolean isSpillHigh() {
+		return spillHigh;
+	}
+	
+	/**
+	 * Update the spilled bytes, and fire the changed session spill state into 
+	 *the handlers later in the event loop, not reentering the writing handler.
+	 * 
+	 * @param n the spilled bytes, or negative flushed bytes
+	 */
+	protected void updateSpilled(final long n) {
+		spilled += n;
+		final Configuration config = session.config();
+		final long high = config.getSpillHighWatermark();
+		if(high == 0L) {
+			return;
+		}
+		if(spillHigh) {
+			if(spilled > config.getSpillLowWatermark()) {
+				return;
+			}
+			spillHigh = false;
+		}else {
+			if(spilled < high) {
+				return;
+			}
+			spillHigh = true;
+		}
+		if(spillStateTask == null) {
+			spillStateTask = new Runnable() {
+				@Override
+				public void run() {
+					if(spillHighFired == spillHigh || !session.isOpen()) {
+						return;
+					}
+					spillHighFired = spillHigh;
+					session.fireUserEvent(spillHigh? SpillState.SESSION_HIGH: SpillState.SESSION_LOW);
+				}
+			};
+		}
+		session.eventLoop().executeLater(spillStateTask);
+		onWritabilityChanged();
+	}
+	
+	/**
+	 * @return true if the unflushed bytes below the write high watermark, the 
+	 * session and buffer store not spill high, and no spill job waiting for the queue
+	 * 
+	 * @since 2018-07-16 little-pan
+	 */
+	public boolean isWritable() {
+		return (!writeHigh && !spillHigh && overflows == 0 && !session.eventLoop().isStoreHigh());
+	}
+	
+	/**
+	 * Check the write watermarks after the unflushed bytes changed.
+	 * 
+	 * @since 2018-07-16 little-pan
+	 */
+	protected void checkWriteWatermarks() {
+		final long high = writeHighWatermark;
+		if(high == 0L) {
+			return;
+		}
+		if(writeHigh) {
+			if(remaining > writeLowWatermark) {
+				return;
+			}
+			writeHigh = false;
+		}else {
+			if(remaining < high) {
+				return;
+			}
+			writeHigh = true;
+		}
+		onWritabilityChanged();
+	}
+	
+	/**
+	 * Fire the writability changed event into the handlers later in the event loop, 
+	 *not reentering the writing handler, and only if the writability differs from the
+	 *last fired.
+	 * 
+	 * @since 2018-07-16 little-pan
+	 */
+	void onWritabilityChanged() {
+		if(writabilityTask == null) {
+			writabilityTask = new Runnable() {
+				@Override
+				public void run() {
+					final boolean writable = isWritable();
+					if(writableFired == writable || !session.isOpen()) {
+						return;
+					}
+					writableFired = writable;
+					session.fireWritabilityChanged();
+				}
+			};
+		}
+		session.eventLoop().executeLater(writabilityTask);
+	}
+	
+	/**
+	 * The capacity of a new local buffer: fit the bytes to write, and grow by 
+	 *the buffer number for not chaining a big message by many small buffers,
+	 *at most the max capacity of the pool, and the free bytes below the write HWM.
+	 * 
+	 * @param hint the byte number to write
+	 * @return the min capacity of a new local buffer
+	 * 
+	 * @since 2018-07-16 little-pan
+	 */
+	protected int allocSize(final int hint) {
+		final int maxCapacity = session.bufferPool().maxCapacity();
+		final int shift = BufferPool.MIN_BUFFER_SHIFT + buffers;
+		final int grow  = (shift < 31? 1 << shift: maxCapacity);
+		final int size  = Math.min(maxCapacity, Math.max(hint, grow));
+		final long free = maxLocalBytes() - localBytes;
+		if(size <= free) {
+			return size;
+		}
+		// a size-classed pool rounds up into the power of two
+		return Math.max(Integer.highestOneBit((int)free), BufferPool.MIN_BUFFER_SIZE);
+	}
+	
+	/**
+	 * The write HWM in bytes: the local buffers may be bigger than the buffer size 
+	 *in a size-classed pool, so that the max buffers can't bound the queued bytes
+	 *by the number alone.
+	 * 
+	 * @return the max capacity of the pool buffers in the local pool
+	 * 
+	 * @since 2018-07-16 little-pan
+	 */
+	protected long maxLocalBytes() {
+		return (long)(maxBuffers - 1) * session.bufferPool().bufferSize();
+	}
+	
+	protected Buffer allocBuffer(final int hint){
+		final Buffer newBuf = session.alloc(allocSize(hint));
 		boolean failed = true;
 		try {
 			localPool.offer(newBuf);
 			++buffers;
+			localBytes += newBuf.byteBuffer().capacity();
 			failed = false;
 			return newBuf;
 		}finally {
@@ -126,6 +481,7 @@ public class BufferOutputStream extends OutputStream {
 		boolean failed = true;
 		try{
 			regionPool.offer(region);
+			session.eventLoop().checkStoreWatermarks();
 			failed = false;
 			return region;
 		}finally{
@@ -137,8 +493,10 @@ public class BufferOutputStream extends OutputStream {
 	
 	@Override
 	public void write(int b) throws IOException {
-		tailBuffer().put((byte)b);
+		checkSpillLimit(1);
+		tailBuffer(1).put((byte)b);
 		++remaining;
+		checkWriteWatermarks();
 	}
 	
 	@Override
@@ -156,77 +514,381 @@ public class BufferOutputStream extends OutputStream {
         } else if (len == 0) {
             return;
         }
+        checkSpillLimit(len);
         
-        ByteBuffer buf = tailBuffer();
+        ByteBuffer buf = tailBuffer(len);
         for (int i = 0, n = 0; i < len; i += n) {
         	final int rem = buf.remaining();
         	if(rem == 0) {
-        		buf = tailBuffer();
+        		buf = tailBuffer(len - i);
         	}
         	n = Math.min(rem, len-i);
         	buf.put(b, off + i, n);
         	remaining += n;
         }
+        checkWriteWatermarks();
     }
 	
+	/**
+	 * Write the remaining bytes of the byte buffer into this stream by bulk copy.
+	 * 
+	 * @param src the source byte buffer, its position advanced to the limit
+	 * @throws IOException if spilling into the buffer store failed
+	 * 
+	 * @since 2018-07-15 little-pan
+	 */
+	public void write(final ByteBuffer src) throws IOException {
+		checkSpillLimit(src.remaining());
+		for(; src.hasRemaining();) {
+			final int rem = src.remaining();
+			final ByteBuffer buf = tailBuffer(rem);
+			final int n = Math.min(buf.remaining(), rem);
+			if(n == rem) {
+				buf.put(src);
+			}else {
+				final int lim = src.limit();
+				src.limit(src.position() + n);
+				buf.put(src);
+				src.limit(lim);
+			}
+			remaining += n;
+		}
+		checkWriteWatermarks();
+	}
+	
+	/**
+	 * <p>
+	 * Queue the remaining bytes of the caller's byte buffer without copying. The buffer
+	 *must not be modified until the complete handler invoked, which is invoked when the 
+	 *bytes have been flushed or this stream closed.
+	 * </p>
+	 * 
+	 * <p>
+	 * If the stream has been spilling into the buffer store, or no local buffer slot 
+	 *below the write HWM, the bytes are copied and the handler invoked at once.
+	 * </p>
+	 * 
+	 * @param buf the byte buffer, its position not changed
+	 * @param onComplete the complete handler, or null
+	 * @throws IOException if spilling into the buffer store failed
+	 * 
+	 * @since 2018-07-16 little-pan
+	 */
+	public void writeRetained(final ByteBuffer buf, final Runnable onComplete) 
+			throws IOException {
+		final int n = buf.remaining();
+		if(n == 0) {
+			RetainedBuffer.complete(onComplete);
+			return;
+		}
+		if(!isQueueable()) {
+			write(buf.duplicate());
+			RetainedBuffer.complete(onComplete);
+			return;
+		}
+		localPool.offer(new RetainedBuffer(buf.slice(), onComplete));
+		++buffers;
+		remaining += n;
+		checkWriteWatermarks();
+	}
+	
+	/**
+	 * <p>
+	 * Queue a file segment that transfered into the channel by zero-copy 
+	 *{@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+	 *when flushing, in order with other writes. The file channel is owned by the caller,
+	 *and the complete handler is invoked when the segment has been flushed or this 
+	 *stream closed.
+	 * </p>
+	 * 
+	 * <p>
+	 * If the stream has been spilling into the buffer store, or no local buffer slot 
+	 *below the write HWM, the segment is queued behind the spilled bytes without 
+	 *copying, and the following bytes are spilled after it.
+	 * </p>
+	 * 
+	 * @param chan the file channel
+	 * @param position the start position in the file
+	 * @param count the byte number
+	 * @param onComplete the complete handler, or null
+	 * @throws IOException if spilling into the buffer store failed
+	 * 
+	 * @since 2018-07-16 little-pan
+	 */
+	public void sendFile(final FileChannel chan, final long position, final long count,
+			final Runnable onComplete) throws IOException {
+		if(position < 0L || count < 0L) {
+			throw new IllegalArgumentException("position or count negative");
+		}
+		if(count == 0L) {
+			RetainedBuffer.complete(onComplete);
+			return;
+		}
+		if(!isQueueable()) {
+			queueBehindSpill(new FileSegment(chan, position, count, onComplete));
+			remaining += count;
+			checkWriteWatermarks();
+			return;
+		}
+		localPool.offer(new FileSegment(chan, position, count, onComplete));
+		++buffers;
+		remaining += count;
+		checkWriteWatermarks();
+	}
+	
+	/**
+	 * Queue the file segment behind the spilled bytes: after the regions of the 
+	 *last spill job if any, otherwise at the tail of the region pool.
+	 * 
+	 * @param seg the file segment
+	 * @throws IOException if spilling the region buffer failed
+	 * 
+	 * @since 2018-07-16 little-pan
+	 */
+	protected void queueBehindSpill(final FileSegment seg) throws IOException {
+		boolean failed = true;
+		try {
+			if(regionBuffer == null) {
+				// Write HWM - switch to buffer store
+				regionBuffer = session.alloc();
+				++buffers;
+			}else if(regionBuffer.byteBuffer().position() > 0) {
+				spillRegion();
+			}
+			final SegmentRegion region = new SegmentRegion(session.bufferStore(), seg);
+			final SpillWriter.Job job = spills.peekLast();
+			if(job == null) {
+				regionPool.offer(region);
+			}else {
+				job.addSegment(region);
+			}
+			failed = false;
+		} finally {
+			if(failed) {
+				seg.release();
+			}
+		}
+	}
+	
+	/**
+	 * @return true if a retained buffer or file segment can be queued in order
+	 */
+	protected boolean isQueueable() {
+		return (regionBuffer == null && buffers < maxBuffers - 1);
+	}
+	
 	@Override
 	public void flush() throws IOException {
+		try {
+			doFlush();
+		} finally {
+			checkWriteWatermarks();
+		}
+	}
+	
+	protected void doFlush() throws IOException {
 		final Configuration config = session.config();
 		final int spinCount = config.getWriteSpinCount();
 		final SocketChannel chan = session.channel();
-		for(int spins = 0; spins < spinCount;) {
-			// Step-1. flush local buffers
-			final Buffer buf = localPool.peek();
-			if(buf == null) {
-				if(regionBuffer != null){
-					// Step-2. flush store buffers
-					for(; spins < spinCount; ){
-						final FileRegion region = regionPool.peek();
-						if(region == null){
-							// Step-3. flush region buffer
-							final ByteBuffer buffer = regionBuffer.byteBuffer();
-							buffer.flip();
-							spins = flushBuffer(chan, buffer, spins, spinCount);
-							if(buffer.remaining() != 0){
-								buffer.compact();
-								break;
-							}
-							// Write LWM - switch to local buffers
-							regionBuffer.release();
-							regionBuffer = null;
-							--buffers;
-							break;
-						}
-						int rem = region.readRemaining();
-						for(;rem != 0 && spins < spinCount;){
-							final int i = region.transferTo(rem, chan);
-							if(i == 0){
-								break;
-							}
-							++spins;
-							remaining -= i;
-							rem = region.readRemaining();
-						}
-						if(rem != 0){
-							break;
-						}
-						regionPool.poll();
-						region.release();
-					}
+		int spins = 0;
+		
+		// Step-1. flush local buffers in gathering write, and file segments
+		// in zero-copy transfer, in write order
+		for(;;) {
+			final Buffer head = localPool.peek();
+			if(head == null) {
+				break;
+			}
+			if(spins >= spinCount) {
+				return;
+			}
+			if(head instanceof FileSegment) {
+				final FileSegment seg = (FileSegment)head;
+				spins = flushSegment(chan, seg, spins, spinCount);
+				if(seg.hasRemaining()) {
+					return;
 				}
+				localPool.poll();
+				seg.release();
+				--buffers;
+				continue;
+			}
+			spins = flushBuffers(chan, spins, spinCount);
+			final Buffer next = localPool.peek();
+			if(next != null && !(next instanceof FileSegment)) {
+				return;
+			}
+		}
+		if(regionBuffer == null) {
+			return;
+		}
+		
+		// Step-2. flush store buffers
+		for(; spins < spinCount; ){
+			final FileRegion region = regionPool.peek();
+			if(region == null){
+				if(!spills.isEmpty()) {
+					// wait for the spill writer
+					break;
+				}
+				// Step-3. flush region buffer
+				final ByteBuffer buffer = regionBuffer.byteBuffer();
+				buffer.flip();
+				spins = flushBuffer(chan, buffer, spins, spinCount);
+				if(buffer.remaining() != 0){
+					buffer.compact();
+					break;
+				}
+				// Write LWM - switch to local buffers
+				regionBuffer.release();
+				regionBuffer = null;
+				--buffers;
 				break;
 			}
-			final ByteBuffer buffer = buf.byteBuffer();
-			buffer.flip();
-			spins = flushBuffer(chan, buffer, spins, spinCount);
-			if(buffer.remaining() != 0) {
-				buffer.compact();
+			int rem = region.readRemaining();
+			for(;rem != 0 && spins < spinCount;){
+				final int i = region.transferTo(rem, chan);
+				if(i == 0){
+					break;
+				}
+				++spins;
+				remaining -= i;
+				if(!(region instanceof SegmentRegion)) {
+					updateSpilled(-i);
+				}
+				rem = region.readRemaining();
+			}
+			if(rem != 0){
 				break;
 			}
-			localPool.poll();
-			buf.release();
-			--buffers;
+			regionPool.poll();
+			region.release();
+			session.eventLoop().checkStoreWatermarks();
+		}
+	}
+	
+	/**
+	 * Flush the local buffers before the first file segment, and the region buffer
+	 *if no file segment and store buffer, into the channel by gathering write in
+	 *write spin count limit.
+	 * 
+	 * @param chan
+	 * @param spins
+	 * @param spinCount
+	 * 
+	 * @return the new spin number
+	 * 
+	 * @throws IOException
+	 * 
+	 * @since 2018-07-15 little-pan
+	 */
+	protected int flushBuffers(final SocketChannel chan, int spins, final int spinCount) 
+			throws IOException {
+		final ArrayQueue<Buffer> pool = localPool;
+		final int size = pool.size();
+		int n = 0;
+		for(; n < size && !(pool.get(n) instanceof FileSegment); ++n);
+		final boolean withRegion = (n == size && regionBuffer != null && regionPool.isEmpty() 
+				&& spills.isEmpty());
+		final int len = (withRegion? n + 1: n);
+		ByteBuffer bufs[] = writeBuffers;
+		if(bufs == null || bufs.length < len) {
+			bufs = writeBuffers = new ByteBuffer[Math.max(len, pool.capacity() + 1)];
+		}
+		for(int i = 0; i < n; ++i) {
+			final Buffer buf = pool.get(i);
+			bufs[i] = buf.byteBuffer();
+			if(!(buf instanceof RetainedBuffer)) {
+				bufs[i].flip();
+			}
+		}
+		if(withRegion) {
+			bufs[n] = regionBuffer.byteBuffer();
+			bufs[n].flip();
+		}
+		
+		int off = skipFlushed(bufs, 0, len);
+		try {
+			for(; off < len && spins < spinCount;) {
+				final long i = chan.write(bufs, off, len - off);
+				if(i == 0L) {
+					break;
+				}
+				++spins;
+				remaining -= i;
+				off = skipFlushed(bufs, off, len);
+			}
+		} finally {
+			// release flushed buffers, and restore others for write
+			for(int i = 0; i < off; ++i) {
+				if(i < n) {
+					final Buffer buf = pool.poll();
+					if(!(buf instanceof RetainedBuffer)) {
+						localBytes -= buf.byteBuffer().capacity();
+					}
+					buf.release();
+				}else {
+					// Write LWM - switch to local buffers
+					regionBuffer.release();
+					regionBuffer = null;
+				}
+				--buffers;
+			}
+			for(int i = off; i < len; ++i) {
+				if(i < n && pool.get(i - off) instanceof RetainedBuffer) {
+					// always in read state
+					continue;
+				}
+				final ByteBuffer b = bufs[i];
+				if(i == off) {
+					b.compact();
+				}else {
+					b.position(b.limit()).limit(b.capacity());
+				}
+			}
+			for(int i = 0; i < len; ++i) {
+				bufs[i] = null;
+			}
+		}
+		return spins;
+	}
+	
+	/**
+	 * Flush the file segment into the channel by zero-copy transfer in 
+	 *write spin count limit.
+	 * 
+	 * @param chan
+	 * @param seg
+	 * @param spins
+	 * @param spinCount
+	 * 
+	 * @return the new spin number
+	 * 
+	 * @throws IOException
+	 * 
+	 * @since 2018-07-16 little-pan
+	 */
+	protected int flushSegment(final SocketChannel chan, final FileSegment seg, 
+			int spins, final int spinCount) throws IOException {
+		for(; seg.count > 0L && spins < spinCount;) {
+			final long i = seg.chan.transferTo(seg.position, seg.count, chan);
+			if(i <= 0L) {
+				if(seg.position >= seg.chan.size()) {
+					throw new EOFException("File truncated: position " + seg.position);
+				}
+				break;
+			}
+			++spins;
+			seg.position += i;
+			seg.count    -= i;
+			remaining    -= i;
 		}
+		return spins;
+	}
+	
+	static int skipFlushed(final ByteBuffer bufs[], int off, final int len) {
+		for(; off < len && !bufs[off].hasRemaining(); ++off);
+		return off;
 	}
 	
 	/**
@@ -277,13 +939,31 @@ public class BufferOutputStream extends OutputStream {
 			}
 			reg.release();
 		}
+		for(;;) {
+			final SpillWriter.Job job = spills.poll();
+			if(job == null) {
+				break;
+			}
+			if(job.written) {
+				job.release();
+			}else {
+				// released when handed back
+				job.cancelled = true;
+			}
+		}
 		if(regionBuffer != null){
 			regionBuffer.release();
 			regionBuffer = null;
 		}
+		localBytes = 0L;
+		spilled   = 0L;
+		spillHigh = false;
+		writeHigh = false;
+		overflows = 0;
+		session.eventLoop().checkStoreWatermarks();
 	}
 	
-	public int remaining() {
+	public long remaining() {
 		return remaining;
 	}
 	
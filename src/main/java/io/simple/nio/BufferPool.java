@@ -6,8 +6,24 @@ public interface BufferPool extends Closeable {
 	
 	int DEFAULT_BUFFER_SIZE = 1 << 13;
 	
+	int MIN_BUFFER_SHIFT = 6;
+	int MIN_BUFFER_SIZE  = 1 << MIN_BUFFER_SHIFT;
+	
 	Buffer allocate()throws BufferAllocateException;
 	
+	/**
+	 * Allocate a buffer that its capacity at least the min capacity. The fixed size 
+	 *buffer pools allocate a {@link #bufferSize()} buffer.
+	 * 
+	 * @param minCapacity the min capacity of the buffer
+	 * @return the buffer
+	 * @throws BufferAllocateException if exceeds pool size limit, or the min capacity
+	 *  bigger than the buffer size of a fixed size buffer pool
+	 * 
+	 * @since 2018-07-16 little-pan
+	 */
+	Buffer allocate(int minCapacity)throws BufferAllocateException;
+	
 	void release(Buffer buffer);
 	
 	/**
@@ -22,6 +38,14 @@ public interface BufferPool extends Closeable {
 	
 	int bufferSize();
 	
+	/**
+	 * @return the max capacity that {@link #allocate(int)} serves from this pool, the
+	 *  {@link #bufferSize()} of a fixed size buffer pool
+	 * 
+	 * @since 2018-07-16 little-pan
+	 */
+	int maxCapacity();
+	
 	/**
 	 * @return the buffer size shift number
 	 */
@@ -29,6 +53,13 @@ public interface BufferPool extends Closeable {
 	
 	boolean isOpen();
 	
+	/**
+	 * @return the metrics snapshot of this pool
+	 * 
+	 * @since 2018-07-16 little-pan
+	 */
+	BufferPoolMetrics metrics();
+	
 	@Override
 	void close();
 
@@ -0,0 +1,89 @@
+package io.simple.nio;
+
+/**
+ * <p>
+ * A snapshot of the {@link BufferPool} metrics. The metrics of a not thread-safe pool 
+ *may be stale when the snapshot taken out of the event loop.
+ * </p>
+ * 
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+public class BufferPoolMetrics implements BufferPoolMetricsMXBean {
+	
+	private final long poolSize;
+	private final long usedSize;
+	private final long peakUsedSize;
+	private final long pooledSize;
+	private final long poolHits;
+	private final long vmAllocations;
+	private final long releases;
+	private final long allocationFailures;
+	
+	public BufferPoolMetrics(long poolSize, long usedSize, long peakUsedSize, long pooledSize, 
+			long poolHits, long vmAllocations, long releases, long allocationFailures) {
+		this.poolSize      = poolSize;
+		this.usedSize      = usedSize;
+		this.peakUsedSize  = peakUsedSize;
+		this.pooledSize    = pooledSize;
+		this.poolHits      = poolHits;
+		this.vmAllocations = vmAllocations;
+		this.releases      = releases;
+		this.allocationFailures = allocationFailures;
+	}
+	
+	@Override
+	public long getPoolSize() {
+		return poolSize;
+	}
+	
+	@Override
+	public long getUsedSize() {
+		return usedSize;
+	}
+	
+	@Override
+	public long getPeakUsedSize() {
+		return peakUsedSize;
+	}
+	
+	@Override
+	public long getPooledSize() {
+		return pooledSize;
+	}
+	
+	@Override
+	public long getAllocations() {
+		return (poolHits + vmAllocations);
+	}
+	
+	@Override
+	public long getPoolHits() {
+		return poolHits;
+	}
+	
+	@Override
+	public long getVmAllocations() {
+		return vmAllocations;
+	}
+	
+	@Override
+	public long getReleases() {
+		return releases;
+	}
+	
+	@Override
+	public long getAllocationFailures() {
+		return allocationFailures;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("BufferPoolMetrics(poolSize = %d, usedSize = %d, peakUsedSize = %d, "
+				+ "pooledSize = %d, allocations = %d, poolHits = %d, vmAllocations = %d, "
+				+ "releases = %d, allocationFailures = %d)", poolSize, usedSize, peakUsedSize, 
+				pooledSize, getAllocations(), poolHits, vmAllocations, releases, allocationFailures);
+	}
+
+}
@@ -0,0 +1,60 @@
+package io.simple.nio;
+
+/**
+ * <p>
+ * The metrics of a {@link BufferPool}, which is registered as a JMX MXBean when 
+ *{@link Configuration#isJmxEnabled()}.
+ * </p>
+ * 
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+public interface BufferPoolMetricsMXBean {
+	
+	/**
+	 * @return the pool size limit in bytes
+	 */
+	long getPoolSize();
+	
+	/**
+	 * @return the bytes of the buffers in use
+	 */
+	long getUsedSize();
+	
+	/**
+	 * @return the peak of the used bytes
+	 */
+	long getPeakUsedSize();
+	
+	/**
+	 * @return the bytes of the buffers cached in the pool
+	 */
+	long getPooledSize();
+	
+	/**
+	 * @return the number of the successful allocations
+	 */
+	long getAllocations();
+	
+	/**
+	 * @return the number of the allocations served by the cached buffers
+	 */
+	long getPoolHits();
+	
+	/**
+	 * @return the number of the allocations that created a new buffer
+	 */
+	long getVmAllocations();
+	
+	/**
+	 * @return the number of the buffers released into the pool
+	 */
+	long getReleases();
+	
+	/**
+	 * @return the number of the allocations failed for exceeding the pool size limit
+	 */
+	long getAllocationFailures();
+	
+}
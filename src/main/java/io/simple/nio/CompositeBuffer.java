@@ -0,0 +1,210 @@
+package io.simple.nio;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * <p>
+ * A composite buffer that consists of one or more retained buffers in order without 
+ *copying, e.g. a frame that spans the read buffers of a {@link BufferInputStream}. The 
+ *components are released when the composite buffer deallocated.
+ * </p>
+ * 
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+public class CompositeBuffer implements ReferenceCounted {
+	
+	private static final AtomicIntegerFieldUpdater<CompositeBuffer> refCntUpdater = 
+			AtomicIntegerFieldUpdater.newUpdater(CompositeBuffer.class, "refCnt");
+	
+	private Buffer components[];
+	private int size;
+	// the component index of the next read
+	private int readIndex;
+	
+	private volatile int refCnt = 1;
+	
+	public CompositeBuffer() {
+		this(4);
+	}
+	
+	public CompositeBuffer(final int initComponents) {
+		if(initComponents < 1) {
+			throw new IllegalArgumentException("initComponents must bigger than 0: " + initComponents);
+		}
+		this.components = new Buffer[initComponents];
+	}
+	
+	/**
+	 * Add the buffer as the last component, the reference of it owned by this 
+	 *composite buffer.
+	 * 
+	 * @param buffer the retained buffer
+	 * @return this composite buffer
+	 */
+	public CompositeBuffer addComponent(final Buffer buffer) {
+		ensureNotReleased();
+		if(buffer == null) {
+			throw new NullPointerException("buffer");
+		}
+		if(size == components.length) {
+			final Buffer a[] = new Buffer[size << 1];
+			System.arraycopy(components, 0, a, 0, size);
+			components = a;
+		}
+		components[size++] = buffer;
+		return this;
+	}
+	
+	public int numComponents() {
+		return size;
+	}
+	
+	public Buffer component(final int i) {
+		ensureNotReleased();
+		if(i < 0 || i >= size) {
+			throw new IndexOutOfBoundsException("i = " + i + ", size = " + size);
+		}
+		return components[i];
+	}
+	
+	/**
+	 * @return the byte buffers of the components, e.g. for gathering write
+	 */
+	public ByteBuffer[] byteBuffers() {
+		ensureNotReleased();
+		final ByteBuffer bufs[] = new ByteBuffer[size];
+		for(int i = 0; i < size; ++i) {
+			bufs[i] = components[i].byteBuffer();
+		}
+		return bufs;
+	}
+	
+	public int remaining() {
+		ensureNotReleased();
+		int n = 0;
+		for(int i = readIndex; i < size; ++i) {
+			n += components[i].byteBuffer().remaining();
+		}
+		return n;
+	}
+	
+	public boolean hasRemaining() {
+		return (headBuffer() != null);
+	}
+	
+	/**
+	 * Read the next byte.
+	 * 
+	 * @return the next byte
+	 * @throws BufferUnderflowException if no byte remaining
+	 */
+	public byte get() {
+		final ByteBuffer buf = headBuffer();
+		if(buf == null) {
+			throw new BufferUnderflowException();
+		}
+		return buf.get();
+	}
+	
+	/**
+	 * Read the bytes into the destination array.
+	 * 
+	 * @param dst the destination array
+	 * @param off the offset of the array
+	 * @param len the max byte number
+	 * @return the byte number read, -1 if no byte remaining
+	 */
+	public int get(final byte dst[], final int off, final int len) {
+		if (off < 0 || len < 0 || len > dst.length - off) {
+			throw new IndexOutOfBoundsException();
+		}
+		int i = 0;
+		for(; i < len;) {
+			final ByteBuffer buf = headBuffer();
+			if(buf == null) {
+				break;
+			}
+			final int n = Math.min(buf.remaining(), len - i);
+			buf.get(dst, off + i, n);
+			i += n;
+		}
+		if(i == 0 && len > 0) {
+			return -1;
+		}
+		return i;
+	}
+	
+	private ByteBuffer headBuffer() {
+		ensureNotReleased();
+		for(; readIndex < size; ++readIndex) {
+			final ByteBuffer buf = components[readIndex].byteBuffer();
+			if(buf.hasRemaining()) {
+				return buf;
+			}
+		}
+		return null;
+	}
+	
+	@Override
+	public int refCnt() {
+		return refCnt;
+	}
+	
+	@Override
+	public CompositeBuffer retain() {
+		for(;;) {
+			final int cnt = refCnt;
+			if(cnt == 0) {
+				throw new IllegalStateException("Composite buffer released");
+			}
+			if(cnt == Integer.MAX_VALUE) {
+				throw new IllegalStateException("Composite buffer reference count overflow");
+			}
+			if(refCntUpdater.compareAndSet(this, cnt, cnt + 1)) {
+				return this;
+			}
+		}
+	}
+	
+	@Override
+	public void release() {
+		for(;;) {
+			final int cnt = refCnt;
+			if(cnt == 0) {
+				throw new IllegalStateException("Composite buffer released");
+			}
+			if(refCntUpdater.compareAndSet(this, cnt, cnt - 1)) {
+				if(cnt == 1) {
+					deallocate();
+				}
+				return;
+			}
+		}
+	}
+	
+	protected void deallocate() {
+		final Buffer bufs[] = components;
+		final int n = size;
+		components = null;
+		size = 0;
+		for(int i = 0; i < n; ++i) {
+			bufs[i].release();
+		}
+	}
+	
+	private void ensureNotReleased() {
+		if(refCnt == 0) {
+			throw new IllegalStateException("Composite buffer released");
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("CompositeBuffer(components = %d, refCnt = %d)", size, refCnt);
+	}
+
+}
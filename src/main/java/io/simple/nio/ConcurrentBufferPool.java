@@ -0,0 +1,404 @@
+package io.simple.nio;
+
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.simple.util.MathUtil;
+
+/**
+ * <p>
+ * A thread-safe buffer pool that can be shared by event loops and worker threads.
+ * </p>
+ * 
+ * <p>
+ * Each thread allocates from and releases into its own magazine, a small buffer 
+ *array, without synchronization. The full magazines are exchanged through a lock-free 
+ *depot stack: an empty magazine is reloaded by popping a full one from the depot, and 
+ *a full magazine is pushed into the depot when releasing. A buffer allocated from 
+ *the VM only if the depot is empty.
+ * </p>
+ * 
+ * <p>
+ * Note: buffers cached in the magazine of a thread are not available for other 
+ *threads, at most magazineSize buffers per thread. The magazines are registered in 
+ *the pool: the magazines of the terminated threads are reclaimed into the depot in 
+ *the allocation slow path, and all magazines are drained when the pool closed.
+ * </p>
+ * 
+ * <p>
+ * Each magazine is guarded by its own monitor, because closing drains the magazines 
+ *of the live threads too, so that no buffer left after closed. The monitor is only 
+ *contended by closing or reclaiming, and uncontended in the owner thread otherwise.
+ * </p>
+ * 
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+public class ConcurrentBufferPool implements BufferPool {
+	final static Logger log = LoggerFactory.getLogger(ConcurrentBufferPool.class);
+	
+	public final static int DEFAULT_MAGAZINE_SIZE = 16;
+	
+	protected final long poolSize;
+	protected final int bufferSize;
+	protected final int bufferSizeShift;
+	protected final boolean direct;
+	protected final int magazineSize;
+	
+	// bytes allocated from VM and bytes in use
+	private final AtomicLong createdSize = new AtomicLong();
+	private final LongAdder usedSize = new LongAdder();
+	// metrics: the peak of the created bytes as the peak used size, for not contending 
+	// a shared peak in the allocation fast path
+	private final AtomicLong peakSize = new AtomicLong();
+	private final LongAdder poolHits = new LongAdder(), vmAllocations = new LongAdder();
+	private final LongAdder releases = new LongAdder(), allocationFailures = new LongAdder();
+	
+	private final AtomicReference<Depot> depot = new AtomicReference<Depot>();
+	// all magazines for reclaiming and draining when closed
+	private final ConcurrentLinkedQueue<Magazine> registry = new ConcurrentLinkedQueue<Magazine>();
+	private final ThreadLocal<Magazine> magazines = new ThreadLocal<Magazine>() {
+		@Override
+		protected Magazine initialValue() {
+			final Magazine mag = new Magazine(Thread.currentThread(), magazineSize);
+			registry.offer(mag);
+			return mag;
+		}
+	};
+	
+	private volatile boolean closed;
+	
+	public ConcurrentBufferPool(long poolSize) {
+		this(poolSize, DEFAULT_BUFFER_SIZE, true);
+	}
+	
+	public ConcurrentBufferPool(long poolSize, int bufferSize, boolean direct) {
+		this(poolSize, bufferSize, direct, DEFAULT_MAGAZINE_SIZE);
+	}
+	
+	public ConcurrentBufferPool(long poolSize, int bufferSize, boolean direct, int magazineSize) {
+		if(poolSize   <= 0L) {
+			throw new IllegalArgumentException("poolSize must bigger than 0: " + poolSize);
+		}
+		if(bufferSize <= 0) {
+			throw new IllegalArgumentException("bufferSize must bigger than 0: " + bufferSize);
+		}
+		if(magazineSize <= 0) {
+			throw new IllegalArgumentException("magazineSize must bigger than 0: " + magazineSize);
+		}
+		this.poolSize   = poolSize;
+		this.bufferSize = bufferSize;
+		this.bufferSizeShift = MathUtil.bitShift(bufferSize);
+		this.direct = direct;
+		this.magazineSize = magazineSize;
+		log.info("{}: poolSize = {}, bufferSize = {}, magazineSize = {}, direct = {}", 
+				this, poolSize, bufferSize, magazineSize, direct);
+	}
+
+	@Override
+	public Buffer allocate() throws BufferAllocateException {
+		checkNotClosed();
+		
+		final Magazine mag = magazines.get();
+		Buffer buffer;
+		synchronized(mag) {
+			checkNotClosed();
+			buffer = mag.pop();
+			if(buffer == null) {
+				final Buffer[] full = popDepot();
+				if(full != null) {
+					mag.load(full);
+					buffer = mag.pop();
+				}
+			}
+		}
+		if(buffer == null && reclaimMagazines()) {
+			synchronized(mag) {
+				final Buffer[] full = popDepot();
+				if(full != null) {
+					mag.load(full);
+					buffer = mag.pop();
+				}
+			}
+		}
+		if(buffer == null) {
+			buffer = newBuffer();
+			vmAllocations.increment();
+		}else {
+			poolHits.increment();
+		}
+		buffer.onAlloc();
+		usedSize.add(bufferSize);
+		return buffer;
+	}
+	
+	protected Buffer newBuffer() throws BufferAllocateException {
+		for(;;) {
+			final long created = createdSize.get();
+			if(created + bufferSize > poolSize) {
+				allocationFailures.increment();
+				throw new BufferAllocateException("Exceeds pool size limit");
+			}
+			if(createdSize.compareAndSet(created, created + bufferSize)) {
+				updatePeakSize(created + bufferSize);
+				break;
+			}
+		}
+		final ByteBuffer buf;
+		if(direct) {
+			buf = ByteBuffer.allocateDirect(bufferSize);
+		}else {
+			buf = ByteBuffer.allocate(bufferSize);
+		}
+		log.debug("{}: Allocate a buffer from VM", this);
+		return new Buffer(this, buf);
+	}
+
+	@Override
+	public Buffer allocate(final int minCapacity) throws BufferAllocateException {
+		if(minCapacity > bufferSize) {
+			throw new BufferAllocateException("minCapacity bigger than bufferSize " + bufferSize 
+					+ ": " + minCapacity);
+		}
+		return allocate();
+	}
+
+	@Override
+	public void release(final Buffer buffer) {
+		if(buffer.bufferPool() != this) {
+			log.warn("{}: buffer not allocated from this pool - {}", this, buffer);
+			return;
+		}
+		buffer.clear().onRelease();
+		usedSize.add(-bufferSize);
+		releases.increment();
+		
+		final Magazine mag = magazines.get();
+		synchronized(mag) {
+			if(closed) {
+				// Drop it into VM
+				createdSize.addAndGet(-bufferSize);
+				return;
+			}
+			if(mag.isFull()) {
+				pushDepot(mag.unload());
+			}
+			mag.push(buffer);
+		}
+	}
+	
+	private void updatePeakSize(final long size) {
+		for(;;) {
+			final long peak = peakSize.get();
+			if(size <= peak || peakSize.compareAndSet(peak, size)) {
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Reclaim the buffers cached in the magazines of the terminated threads into the 
+	 *depot, and unregister these magazines.
+	 * 
+	 * @return true if any buffer reclaimed
+	 */
+	protected boolean reclaimMagazines() {
+		boolean reclaimed = false;
+		for(final Iterator<Magazine> i = registry.iterator(); i.hasNext();) {
+			final Magazine mag = i.next();
+			if(mag.isOwnerAlive()) {
+				continue;
+			}
+			synchronized(mag) {
+				if(mag.count > 0) {
+					if(closed) {
+						createdSize.addAndGet(-(long)mag.count * bufferSize);
+						mag.clear();
+					}else {
+						pushDepot(mag.drain());
+						reclaimed = true;
+					}
+				}
+			}
+			i.remove();
+		}
+		return reclaimed;
+	}
+	
+	protected Buffer[] popDepot() {
+		for(;;) {
+			final Depot head = depot.get();
+			if(head == null) {
+				return null;
+			}
+			if(depot.compareAndSet(head, head.next)) {
+				return head.buffers;
+			}
+		}
+	}
+	
+	protected void pushDepot(final Buffer[] full) {
+		// A new node per push for no ABA problem
+		for(;;) {
+			final Depot head = depot.get();
+			if(depot.compareAndSet(head, new Depot(full, head))) {
+				return;
+			}
+		}
+	}
+	
+	protected void checkNotClosed(){
+		if(closed){
+			throw new IllegalStateException(this+" has closed");
+		}
+	}
+	
+	@Override
+	public long available() {
+		return (poolSize - usedSize.sum());
+	}
+
+	@Override
+	public long pooledSize() {
+		return (createdSize.get() - usedSize.sum());
+	}
+
+	@Override
+	public BufferPoolMetrics metrics() {
+		final long used = usedSize.sum();
+		return new BufferPoolMetrics(poolSize, used, Math.max(peakSize.get(), used), 
+				createdSize.get() - used, poolHits.sum(), vmAllocations.sum(), releases.sum(), 
+				allocationFailures.sum());
+	}
+	
+	@Override
+	public int bufferSize() {
+		return bufferSize;
+	}
+
+	@Override
+	public int maxCapacity() {
+		return bufferSize;
+	}
+
+	@Override
+	public int bufferSizeShift() {
+		return bufferSizeShift;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return !closed;
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		// Drain magazines before the depot, a magazine may be pushed into the depot 
+		// by its thread until drained
+		for(final Magazine mag : registry) {
+			synchronized(mag) {
+				createdSize.addAndGet(-(long)mag.count * bufferSize);
+				mag.clear();
+			}
+		}
+		for(;;) {
+			final Buffer[] full = popDepot();
+			if(full == null) {
+				break;
+			}
+			createdSize.addAndGet(-(long)full.length * bufferSize);
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return "ConcurrentPool";
+	}
+	
+	// Buffer cache of a thread.
+	static class Magazine {
+		final WeakReference<Thread> owner;
+		final int size;
+		Buffer buffers[];
+		int count;
+		
+		Magazine(Thread owner, int size) {
+			this.owner = new WeakReference<Thread>(owner);
+			this.size = size;
+			this.buffers = new Buffer[size];
+		}
+		
+		final boolean isOwnerAlive() {
+			final Thread t = owner.get();
+			return (t != null && t.isAlive());
+		}
+		
+		final Buffer pop() {
+			if(count == 0) {
+				return null;
+			}
+			final Buffer buffer = buffers[--count];
+			buffers[count] = null;
+			return buffer;
+		}
+		
+		final void push(Buffer buffer) {
+			buffers[count++] = buffer;
+		}
+		
+		final boolean isFull() {
+			return (count == buffers.length);
+		}
+		
+		final void load(Buffer full[]) {
+			buffers = full;
+			count = full.length;
+		}
+		
+		final void clear() {
+			for(int i = 0; i < count; ++i) {
+				buffers[i] = null;
+			}
+			count = 0;
+		}
+		
+		final Buffer[] unload() {
+			final Buffer full[] = buffers;
+			buffers = new Buffer[size];
+			count = 0;
+			return full;
+		}
+		
+		/**
+		 * @return the cached buffers, maybe less than the magazine size
+		 */
+		final Buffer[] drain() {
+			final Buffer cached[] = Arrays.copyOf(buffers, count);
+			clear();
+			return cached;
+		}
+	}
+	
+	// Full magazine stack node.
+	static class Depot {
+		final Buffer buffers[];
+		final Depot next;
+		
+		Depot(Buffer buffers[], Depot next) {
+			this.buffers = buffers;
+			this.next = next;
+		}
+	}
+
+}
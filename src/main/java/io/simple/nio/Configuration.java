@@ -3,17 +3,22 @@ package io.simple.nio;
 import java.io.IOException;
 
 import io.simple.nio.store.FileStore;
-import io.simple.util.IoUtil;
+import io.simple.nio.store.MappedFileStore;
+import io.simple.util.MathUtil;
 
 public class Configuration {
 	final static long MAX_STORE_SIZE = 1L << 33;
 	
 	private boolean daemon = false;
+	private int eventLoops = Runtime.getRuntime().availableProcessors();
+	private EventLoopChooser eventLoopChooser;
 	
 	private String name  = "Simple-nio";
 	private String host  = "0.0.0.0";
 	private int port     = 9696;
 	private int backlog  = 1024;
+	private int maxAcceptsPerLoop = 16;
+	private boolean reusePort;
 	
 	// resource limit
 	private int maxConns = 10240, maxServerConns, maxClientConns;
@@ -24,16 +29,28 @@ public class Configuration {
 	
 	private boolean autoRead     = true;
 	private boolean bufferDirect = true;
+	private boolean bufferPoolShared;
+	private boolean bufferSizeClassed;
+	private int bufferSlabSize;
+	private boolean bufferPreTouch;
 	private int bufferSize       = BufferPool.DEFAULT_BUFFER_SIZE;
 	private long poolSize, storeSize;
-	private BufferPool bufferPool;
-	private FileStore  bufferStore;
+	private boolean storeMapped;
+	private boolean spillAsync;
+	private int spillQueueSize   = 1024;
+	private long writeHighWatermark, writeLowWatermark;
+	private long spillLimit, spillHighWatermark, spillLowWatermark;
+	private long storeHighWatermark, storeLowWatermark;
+	private boolean jmxEnabled;
 	
 	private SessionInitializer serverInitializer;
 	private SessionInitializer clientInitializer;
 	
 	private EventLoopListener eventLoopListener;
 	
+	// the standalone event loop booted by this configuration
+	volatile EventLoop eventLoop;
+	
 	{
 		final long max = Runtime.getRuntime().maxMemory();
 		poolSize  = max >> 1;
@@ -63,6 +80,26 @@ public class Configuration {
 		return backlog;
 	}
 	
+	/**
+	 * The max channel number accepted in one OP_ACCEPT ready, for draining 
+	 *the accept backlog without a selector round trip per channel.
+	 * 
+	 * @return max accepts per loop
+	 */
+	public int getMaxAcceptsPerLoop() {
+		return maxAcceptsPerLoop;
+	}
+	
+	/**
+	 * Bind a server channel per event loop of the group with SO_REUSEPORT, so that
+	 *the kernel balances the incoming connections among the event loops.
+	 * 
+	 * @return true if SO_REUSEPORT listener sharding enabled
+	 */
+	public boolean isReusePort() {
+		return reusePort;
+	}
+	
 	public boolean isDaemon() {
 		return daemon;
 	}
@@ -91,6 +128,48 @@ public class Configuration {
 		return bufferSize;
 	}
 	
+	/**
+	 * Use a thread-safe {@link ConcurrentBufferPool} shared by the event loops of 
+	 *a group, and by the worker threads that allocate buffers outside event loops.
+	 * Otherwise each event loop has its own unsynchronized buffer pool.
+	 * 
+	 * @return true if the buffer pool shared
+	 */
+	public boolean isBufferPoolShared() {
+		return bufferPoolShared;
+	}
+	
+	/**
+	 * Use a {@link SizeClassBufferPool} per event loop, so that the streams allocate 
+	 *right-sized buffers at most the buffer size. Then a bigger buffer size doesn't 
+	 *pin more memory for small messages.
+	 * 
+	 * @return true if the buffer pool size-classed
+	 */
+	public boolean isBufferSizeClassed() {
+		return bufferSizeClassed;
+	}
+	
+	/**
+	 * The slab size of the direct buffer pool, which allocates slabs from VM and 
+	 *hands out slices as buffers. Default 0 that allocates each buffer from VM.
+	 * 
+	 * @return the slab size
+	 */
+	public int getBufferSlabSize() {
+		return bufferSlabSize;
+	}
+	
+	/**
+	 * Allocate all buffers of the direct buffer pool and touch their pages at startup, 
+	 *for predictable warm-up latency.
+	 * 
+	 * @return true if pre-touch the buffer pool
+	 */
+	public boolean isBufferPreTouch() {
+		return bufferPreTouch;
+	}
+	
 	public long getPoolSize() {
 		return poolSize;
 	}
@@ -99,12 +178,200 @@ public class Configuration {
 		return storeSize;
 	}
 	
+	/**
+	 * @return the buffer pool of the standalone event loop that booted by this 
+	 *  configuration, or null if not booted or booted as a group
+	 * 
+	 * @deprecated the buffer pool is created by each event loop, use 
+	 *  {@link EventLoop#bufferPool()} or {@link Session#bufferPool()}
+	 */
+	@Deprecated
 	public BufferPool getBufferPool() {
-		return bufferPool;
+		final EventLoop loop = eventLoop;
+		return (loop == null? null: loop.bufferPool());
 	}
 	
+	/**
+	 * @return the buffer store of the standalone event loop that booted by this 
+	 *  configuration, or null if not booted or booted as a group
+	 * 
+	 * @deprecated the buffer store is opened by each event loop, use 
+	 *  {@link EventLoop#bufferStore()} or {@link Session#bufferStore()}
+	 */
+	@Deprecated
 	public FileStore getBufferStore() {
-		return bufferStore;
+		final EventLoop loop = eventLoop;
+		return (loop == null? null: loop.bufferStore());
+	}
+	
+	/**
+	 * Spill into a memory mapped buffer store, so that spilling is a memory copy 
+	 *instead of file channel writes.
+	 * 
+	 * @return true if the buffer store is a {@link MappedFileStore}
+	 */
+	public boolean isStoreMapped() {
+		return storeMapped;
+	}
+	
+	/**
+	 * Write the spilled buffers into the buffer store by a background I/O thread of 
+	 *each event loop, so that the selector thread doesn't block on disk.
+	 * 
+	 * @return true if spill asynchronously
+	 */
+	public boolean isSpillAsync() {
+		return spillAsync;
+	}
+	
+	/**
+	 * @return the max number of spilled buffers waiting for the spill writer, and the 
+	 * buffer waits in the event loop when the queue full, the session not writable 
+	 * until the buffer queued
+	 */
+	public int getSpillQueueSize() {
+		return spillQueueSize;
+	}
+	
+	/**
+	 * A session becomes not writable when its unflushed bytes reach this watermark, 
+	 *see {@link Session#isWritable()}. Default 0 that disables it.
+	 * 
+	 * @return the write high watermark in bytes
+	 */
+	public long getWriteHighWatermark() {
+		return writeHighWatermark;
+	}
+	
+	/**
+	 * A session becomes writable again when its unflushed bytes drop to this watermark.
+	 * 
+	 * @return the write low watermark in bytes
+	 */
+	public long getWriteLowWatermark() {
+		return writeLowWatermark;
+	}
+	
+	/**
+	 * The max spilled bytes of a session in the buffer store, so that one slow peer 
+	 *can't consume the whole store. A write that would spill beyond it is rejected by
+	 *a {@link SpillLimitException} before any byte written. Default 0 that means no limit.
+	 * If the limit is set without the spill watermarks, the high watermark defaults to 3/4
+	 *of the limit and the low to 1/2, so that the session reaches the high watermark and
+	 *becomes not writable before the writes rejected.
+	 * 
+	 * @return the session spill limit
+	 */
+	public long getSpillLimit() {
+		return spillLimit;
+	}
+	
+	/**
+	 * A {@link SpillState#SESSION_HIGH} user event is fired when the spilled bytes 
+	 *of a session reach this watermark. Default 0 that disables the session events.
+	 * 
+	 * @return the session spill high watermark
+	 */
+	public long getSpillHighWatermark() {
+		return spillHighWatermark;
+	}
+	
+	/**
+	 * A {@link SpillState#SESSION_LOW} user event is fired when the spilled bytes 
+	 *of a session drop to this watermark after the high.
+	 * 
+	 * @return the session spill low watermark
+	 */
+	public long getSpillLowWatermark() {
+		return spillLowWatermark;
+	}
+	
+	/**
+	 * A {@link SpillState#STORE_HIGH} user event is fired into all sessions of an 
+	 *event loop when the used bytes of its buffer store reach this watermark, which
+	 *is shared by the event loops as the store size. Default 0 that disables the 
+	 *store events.
+	 * 
+	 * @return the store high watermark
+	 */
+	public long getStoreHighWatermark() {
+		return storeHighWatermark;
+	}
+	
+	/**
+	 * A {@link SpillState#STORE_LOW} user event is fired into all sessions of an
+	 *event loop when the used bytes of its buffer store drop to this watermark after 
+	 *the high.
+	 * 
+	 * @return the store low watermark
+	 */
+	public long getStoreLowWatermark() {
+		return storeLowWatermark;
+	}
+	
+	/**
+	 * Register the metrics of the buffer pools and buffer stores as JMX MXBeans, 
+	 *named "io.simple.nio:type=BufferPool|BufferStore,name=&lt;event loop name&gt;".
+	 * 
+	 * @return true if register the metrics MXBeans
+	 */
+	public boolean isJmxEnabled() {
+		return jmxEnabled;
+	}
+	
+	/**
+	 * The event loop number of an {@link EventLoopGroup}, default the available
+	 *processors.
+	 * 
+	 * @return event loop number
+	 */
+	public int getEventLoops() {
+		return eventLoops;
+	}
+	
+	public EventLoopChooser getEventLoopChooser() {
+		return eventLoopChooser;
+	}
+	
+	/**
+	 * Create a buffer pool for one of the event loops that share the pool size.
+	 * 
+	 * @param shares the event loop number
+	 * @return a new buffer pool
+	 * 
+	 * @since 2018-07-14 little-pan
+	 */
+	BufferPool newBufferPool(final int shares) {
+		if(isBufferPoolShared()) {
+			return new ConcurrentBufferPool(poolSize, bufferSize, bufferDirect);
+		}
+		final long size = poolSize / shares;
+		if(isBufferSizeClassed()) {
+			return new SizeClassBufferPool(size, bufferSize, bufferDirect);
+		}
+		if(isBufferDirect()) {
+			return new ArrayBufferPool(size, bufferSize, bufferSlabSize, bufferPreTouch);
+		}
+		return new SimpleBufferPool(size, bufferSize);
+	}
+	
+	/**
+	 * Open a buffer store for one of the event loops that share the store size.
+	 * 
+	 * @param shares the event loop number
+	 * @return a new buffer store
+	 * 
+	 * @since 2018-07-14 little-pan
+	 */
+	FileStore openBufferStore(final int shares) {
+		try {
+			if(storeMapped) {
+				return MappedFileStore.open("BufferStore", storeSize / shares, bufferSize);
+			}
+			return FileStore.open("BufferStore", storeSize / shares, bufferSize);
+		} catch (final IOException e) {
+			throw new RuntimeException(e);
+		}
 	}
 	
 	public SessionInitializer getServerInitializer() {
@@ -191,6 +458,16 @@ public class Configuration {
 			return this;
 		}
 		
+		public Builder setEventLoops(int eventLoops) {
+			config.eventLoops = eventLoops;
+			return this;
+		}
+		
+		public Builder setEventLoopChooser(EventLoopChooser eventLoopChooser) {
+			config.eventLoopChooser = eventLoopChooser;
+			return this;
+		}
+		
 		public Builder setHost(String host) {
 			config.host = host;
 			return this;
@@ -206,6 +483,16 @@ public class Configuration {
 			return this;
 		}
 		
+		public Builder setMaxAcceptsPerLoop(int maxAcceptsPerLoop) {
+			config.maxAcceptsPerLoop = maxAcceptsPerLoop;
+			return this;
+		}
+		
+		public Builder setReusePort(boolean reusePort) {
+			config.reusePort = reusePort;
+			return this;
+		}
+		
 		/**
 		 * @param maxConns
 		 * @return the default max connections for server or client
@@ -235,6 +522,86 @@ public class Configuration {
 			return this;
 		}
 		
+		public Builder setBufferPoolShared(boolean bufferPoolShared) {
+			config.bufferPoolShared = bufferPoolShared;
+			return this;
+		}
+		
+		public Builder setBufferSizeClassed(boolean bufferSizeClassed) {
+			config.bufferSizeClassed = bufferSizeClassed;
+			return this;
+		}
+		
+		/**
+		 * @param bufferSlabSize the slab size, e.g. {@link ArrayBufferPool#DEFAULT_SLAB_SIZE},
+		 *  or 0 that disables slab mode
+		 * @return this builder
+		 */
+		public Builder setBufferSlabSize(int bufferSlabSize) {
+			config.bufferSlabSize = bufferSlabSize;
+			return this;
+		}
+		
+		public Builder setBufferPreTouch(boolean bufferPreTouch) {
+			config.bufferPreTouch = bufferPreTouch;
+			return this;
+		}
+		
+		public Builder setStoreMapped(boolean storeMapped) {
+			config.storeMapped = storeMapped;
+			return this;
+		}
+		
+		public Builder setSpillAsync(boolean spillAsync) {
+			config.spillAsync = spillAsync;
+			return this;
+		}
+		
+		public Builder setSpillQueueSize(int spillQueueSize) {
+			config.spillQueueSize = spillQueueSize;
+			return this;
+		}
+		
+		public Builder setWriteHighWatermark(long writeHighWatermark) {
+			config.writeHighWatermark = writeHighWatermark;
+			return this;
+		}
+		
+		public Builder setWriteLowWatermark(long writeLowWatermark) {
+			config.writeLowWatermark = writeLowWatermark;
+			return this;
+		}
+		
+		public Builder setSpillLimit(long spillLimit) {
+			config.spillLimit = spillLimit;
+			return this;
+		}
+		
+		public Builder setSpillHighWatermark(long spillHighWatermark) {
+			config.spillHighWatermark = spillHighWatermark;
+			return this;
+		}
+		
+		public Builder setSpillLowWatermark(long spillLowWatermark) {
+			config.spillLowWatermark = spillLowWatermark;
+			return this;
+		}
+		
+		public Builder setStoreHighWatermark(long storeHighWatermark) {
+			config.storeHighWatermark = storeHighWatermark;
+			return this;
+		}
+		
+		public Builder setStoreLowWatermark(long storeLowWatermark) {
+			config.storeLowWatermark = storeLowWatermark;
+			return this;
+		}
+		
+		public Builder setJmxEnabled(boolean jmxEnabled) {
+			config.jmxEnabled = jmxEnabled;
+			return this;
+		}
+		
 		public Builder setBufferSize(int bufferSize) {
 			config.bufferSize = bufferSize;
 			return this;
@@ -322,6 +689,17 @@ public class Configuration {
 			if(config.writeSpinCount  < 1) {
 				throw new IllegalArgumentException("writeSpinCount must bigger than 0: "+config.writeSpinCount);
 			}
+			if(config.maxAcceptsPerLoop < 1) {
+				throw new IllegalArgumentException("maxAcceptsPerLoop must bigger than 0: "+config.maxAcceptsPerLoop);
+			}
+			if(config.spillQueueSize < 1) {
+				throw new IllegalArgumentException("spillQueueSize must bigger than 0: "+config.spillQueueSize);
+			}
+			
+			final int eventLoops = config.eventLoops;
+			if(eventLoops < 1) {
+				throw new IllegalArgumentException("eventLoops must bigger than 0: "+eventLoops);
+			}
 			
 			final int bufferSize = config.bufferSize;
 			final long poolSize  = config.poolSize;
@@ -329,45 +707,93 @@ public class Configuration {
 			if(storeSize > MAX_STORE_SIZE) {
 				throw new IllegalArgumentException("storeSize can't bigger than "+MAX_STORE_SIZE+": "+storeSize);
 			}
-			boolean failed = true;
-			try {
-				try {
-					config.bufferStore   = FileStore.open("BufferStore", storeSize, bufferSize);
-				} catch (final IOException e) {
-					throw new RuntimeException(e);
-				}
-				if(config.isBufferDirect()) {
-					config.bufferPool = new ArrayBufferPool(poolSize, bufferSize);
-				}else {
-					config.bufferPool = new SimpleBufferPool(poolSize, bufferSize);
+			if(bufferSize < 1) {
+				throw new IllegalArgumentException("bufferSize must bigger than 0: "+bufferSize);
+			}
+			final long spillLimit = config.spillLimit;
+			if(spillLimit < 0L) {
+				throw new IllegalArgumentException("spillLimit can't less than 0: "+spillLimit);
+			}
+			if(spillLimit > 0L && config.spillHighWatermark == 0L) {
+				config.spillHighWatermark = spillLimit - (spillLimit >> 2);
+				config.spillLowWatermark  = spillLimit >> 1;
+			}
+			if(spillLimit > 0L && config.spillHighWatermark >= spillLimit) {
+				throw new IllegalArgumentException("spillHighWatermark must less than spillLimit: "+config.spillHighWatermark);
+			}
+			checkWatermarks("write", config.writeHighWatermark, config.writeLowWatermark);
+			checkWatermarks("spill", config.spillHighWatermark, config.spillLowWatermark);
+			checkWatermarks("store", config.storeHighWatermark, config.storeLowWatermark);
+			if(config.storeHighWatermark > storeSize) {
+				throw new IllegalArgumentException("storeHighWatermark can't bigger than storeSize: "+config.storeHighWatermark);
+			}
+			MathUtil.bitShift(bufferSize);
+			final int slabSize = config.bufferSlabSize;
+			if(slabSize != 0) {
+				if(slabSize < bufferSize) {
+					throw new IllegalArgumentException("bufferSlabSize can't less than bufferSize: "+slabSize);
 				}
-				
-				if(config.eventLoopListener == null){
-					config.eventLoopListener = EventLoopListener.NOOP;
+				MathUtil.bitShift(slabSize);
+			}
+			if(config.bufferSizeClassed) {
+				if(config.bufferPoolShared) {
+					throw new IllegalArgumentException("bufferSizeClassed not supported by the shared buffer pool");
 				}
-				
-				// Create a new config for the building safe
-				this.config = new Configuration();
-				setServerInitializer(config.serverInitializer);
-				setClientInitializer(config.clientInitializer);
-				setEventLoopListener(config.eventLoopListener);
-				
-				failed = false;
-				return config;
-			}finally {
-				if(failed) {
-					IoUtil.close(config.bufferStore);
-					config.bufferStore = null;
-					IoUtil.close(config.bufferPool);
-					config.bufferPool  = null;
+				if(bufferSize < BufferPool.MIN_BUFFER_SIZE) {
+					throw new IllegalArgumentException("bufferSize can't less than "+BufferPool.MIN_BUFFER_SIZE+": "+bufferSize);
 				}
 			}
+			if(poolSize < bufferSize) {
+				throw new IllegalArgumentException("poolSize can't less than bufferSize: "+poolSize);
+			}
+			
+			if(config.eventLoopListener == null){
+				config.eventLoopListener = EventLoopListener.NOOP;
+			}
+			if(config.eventLoopChooser == null){
+				config.eventLoopChooser = EventLoopChooser.ROUND_ROBIN;
+			}
+			
+			// Create a new config for the building safe
+			this.config = new Configuration();
+			setServerInitializer(config.serverInitializer);
+			setClientInitializer(config.clientInitializer);
+			setEventLoopListener(config.eventLoopListener);
+			
+			return config;
 		}
 		
 		public EventLoop boot() {
 			return new EventLoop(build());
 		}
 		
+		/**
+		 * Boot an event loop group that runs {@link Configuration#getEventLoops()} 
+		 *event loops.
+		 * 
+		 * @return the event loop group
+		 * 
+		 * @since 2018-07-14 little-pan
+		 */
+		public EventLoopGroup bootGroup() {
+			final Configuration config = build();
+			final int eventLoops = config.eventLoops;
+			final long poolSize  = config.poolSize;
+			if(!config.bufferPoolShared && poolSize / eventLoops < config.bufferSize) {
+				throw new IllegalArgumentException("poolSize too small for "+eventLoops+" event loops: "+poolSize);
+			}
+			return new EventLoopGroup(config);
+		}
+		
+		static void checkWatermarks(final String prefix, final long high, final long low) {
+			if(high < 0L) {
+				throw new IllegalArgumentException(prefix+"HighWatermark can't less than 0: "+high);
+			}
+			if(low < 0L || (high > 0L && low >= high)) {
+				throw new IllegalArgumentException(prefix+"LowWatermark must less than "+high+": "+low);
+			}
+		}
+		
 	}
 
 }
@@ -23,6 +23,25 @@ public interface EventHandler {
 	void onFlushed(HandlerContext ctx)throws Exception;
 	
 	void onUserEvent(HandlerContext ctx, Object ev)throws Exception;
+	
+	/**
+	 * <p>
+	 * Invoked when the writability of the session changed, see 
+	 *{@link HandlerContext#isWritable()}. Only fired if the writability differs from 
+	 *the last fired, not for each watermark or spill state crossed.
+	 * </p>
+	 * 
+	 * <p>
+	 * The default implementation passes the event to the next handler, so that the 
+	 *existing handlers that implement this interface directly still work.
+	 * </p>
+	 * 
+	 * @param ctx handler context
+	 * @since 2018-07-16
+	 */
+	default void onWritabilityChanged(HandlerContext ctx)throws Exception {
+		ctx.fireWritabilityChanged();
+	}
 
 	void onCause(HandlerContext ctx, Throwable cause);
 
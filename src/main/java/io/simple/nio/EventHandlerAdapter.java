@@ -34,6 +34,11 @@ public class EventHandlerAdapter implements EventHandler {
 		ctx.fireUserEvent(ev);
 	}
 
+	@Override
+	public void onWritabilityChanged(HandlerContext ctx) throws Exception {
+		ctx.fireWritabilityChanged();
+	}
+
 	@Override
 	public void onCause(HandlerContext ctx, Throwable cause) {
 		ctx.fireCause(cause);
@@ -6,6 +6,8 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketAddress;
 import java.net.SocketException;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
@@ -13,41 +15,127 @@ import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.Iterator;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.ObjectName;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.simple.nio.store.FileStore;
+import io.simple.nio.store.FileStoreMetrics;
+import io.simple.nio.store.FileStoreMetricsMXBean;
+import io.simple.util.ArrayQueue;
+import io.simple.util.IndexPool;
 import io.simple.util.IoUtil;
+import io.simple.util.JmxUtil;
+import io.simple.util.MpscQueue;
 
 public class EventLoop {
 	final static Logger log = LoggerFactory.getLogger(EventLoop.class);
 	
+	// SO_REUSEPORT option since JDK 9, or null if not available
+	// @since 2018-07-15 little-pan
+	final static SocketOption<Boolean> SO_REUSEPORT = lookupReusePort();
+	
 	protected final Configuration config;
 	
+	// group management
+	// @since 2018-07-14 little-pan
+	protected final EventLoopGroup group;
+	private final boolean boss;
+	private final int shares;
+	
 	// state management
 	private volatile boolean shutdown;
 	private volatile boolean terminated;
 	private final SelectorLoop selLoop;
 	private final Thread selThread;
 	
+	// buffer resources of this event loop
+	private final BufferPool bufferPool;
+	private final FileStore  bufferStore;
+	// background writer of the spilled buffers, null if spill synchronously
+	private final SpillWriter spillWriter;
+	// store watermarks of this event loop, and the store spill state
+	private final long storeHighWatermark, storeLowWatermark;
+	private boolean storeHigh, storeHighFired;
+	// metrics MXBeans of the buffer resources, null if not registered
+	private ObjectName poolMXBean, storeMXBean;
+	
 	// conn req queue
-	private final Queue<ConnRequest> connReqQueue = new ConcurrentLinkedQueue<ConnRequest>();
-	// time task queue
-	private final Queue<TimeTask> timeTaskQueue = new ConcurrentLinkedQueue<TimeTask>();
+	private final MpscQueue<ConnRequest> connReqQueue = new MpscQueue<ConnRequest>();
+	// accepted channel queue from the group boss
+	private final MpscQueue<SocketChannel> acceptQueue = new MpscQueue<SocketChannel>();
+	private final AtomicInteger pendingAccepts = new AtomicInteger();
+	// time task queue: submitted from other threads, and the heap owned by the loop
+	private final MpscQueue<TimeTask> timeTaskSubmits = new MpscQueue<TimeTask>();
+	private final TimeTaskQueue timeTaskQueue = new TimeTaskQueue(this, 16);
 	// exec task queue
-	private final Queue<Runnable> execTaskQueue = new ConcurrentLinkedQueue<Runnable>();
+	private final MpscQueue<Runnable> execTaskQueue = new MpscQueue<Runnable>();
+	// wakeup coalescing: only the first submission after the loop parks wakes it up
+	private final AtomicBoolean wakenUp = new AtomicBoolean();
 	
 	public EventLoop(final Configuration config) {
+		this(config, null, config.getName(), true, false, 1);
+		config.eventLoop = this;
+	}
+	
+	/**
+	 * Create an event loop.
+	 * 
+	 * @param config the configuration
+	 * @param group the event loop group, or null if standalone
+	 * @param name the selector thread name
+	 * @param listen bind server channel if server initializer given
+	 * @param boss dispatch accepted channels into the group, and no session in it
+	 * @param shares the number of event loops that share the configured resources
+	 * 
+	 * @since 2018-07-14 little-pan
+	 */
+	EventLoop(final Configuration config, final EventLoopGroup group, final String name,
+			final boolean listen, final boolean boss, final int shares) {
 		ServerSocketChannel ssChan = null;
 		Selector selector = null;
+		BufferPool pool   = null;
+		FileStore  store  = null;
+		SpillWriter writer= null;
 		boolean failed = true;
 		this.config = config;
+		this.group  = group;
+		this.boss   = boss;
+		this.shares = shares;
 		try {
-			ssChan   = openServerChan(config);
+			if(!boss) {
+				if(group != null && group.bufferPool() != null) {
+					pool = group.bufferPool();
+				}else {
+					pool = config.newBufferPool(shares);
+				}
+				store = config.openBufferStore(shares);
+			}
+			this.bufferPool  = pool;
+			this.bufferStore = store;
+			if(!boss && config.isSpillAsync()) {
+				writer = new SpillWriter(this, name + "-spill", config.getSpillQueueSize());
+				writer.start();
+			}
+			this.spillWriter = writer;
+			this.storeHighWatermark = config.getStoreHighWatermark() / shares;
+			this.storeLowWatermark  = config.getStoreLowWatermark()  / shares;
+			if(!boss && config.isJmxEnabled()) {
+				registerMXBeans(name);
+			}
+			if(listen) {
+				ssChan = openServerChan(config);
+			}
 			selector = openSelector(config);
-			final String name = config.getName();
 			this.selLoop = new SelectorLoop(this, selector, ssChan);
 			this.selThread = new Thread(selLoop, name);
 			selThread.setDaemon(config.isDaemon());
@@ -57,14 +145,164 @@ public class EventLoop {
 			if(failed) {
 				IoUtil.close(selector);
 				IoUtil.close(ssChan);
+				if(writer != null) {
+					writer.shutdown();
+				}
+				IoUtil.close(store);
+				closeBufferPool(pool);
+				unregisterMXBeans();
 			}
 		}
 	}
 	
+	private void registerMXBeans(final String name) {
+		final BufferPool pool  = bufferPool;
+		final FileStore  store = bufferStore;
+		if(group == null || group.bufferPool() == null) {
+			// the shared pool registered by the group
+			poolMXBean = JmxUtil.register("BufferPool", name, BufferPoolMetricsMXBean.class, 
+				new MetricsSnapshot<BufferPoolMetrics>(this, new Callable<BufferPoolMetrics>() {
+					@Override
+					public BufferPoolMetrics call() {
+						return pool.metrics();
+					}
+				}));
+		}
+		if(store != null) {
+			storeMXBean = JmxUtil.register("BufferStore", name, FileStoreMetricsMXBean.class, 
+				new MetricsSnapshot<FileStoreMetrics>(this, new Callable<FileStoreMetrics>() {
+					@Override
+					public FileStoreMetrics call() {
+						return store.metrics();
+					}
+				}));
+		}
+	}
+	
+	private void unregisterMXBeans() {
+		JmxUtil.unregister(poolMXBean);
+		JmxUtil.unregister(storeMXBean);
+		poolMXBean = storeMXBean = null;
+	}
+	
+	final void closeBufferPool(final BufferPool pool) {
+		if(boss) {
+			return;
+		}
+		if(group != null && group.bufferPool() != null) {
+			group.releaseBufferPool();
+			return;
+		}
+		IoUtil.close(pool);
+	}
+	
 	public Configuration getConfig() {
 		return config;
 	}
 	
+	/**
+	 * @return the group of this event loop, or null if standalone
+	 */
+	public EventLoopGroup group() {
+		return group;
+	}
+	
+	public BufferPool bufferPool() {
+		return bufferPool;
+	}
+	
+	public FileStore bufferStore() {
+		return bufferStore;
+	}
+	
+	/**
+	 * @return the spill writer, or null if spill in the event loop
+	 * 
+	 * @since 2018-07-16 little-pan
+	 */
+	final SpillWriter spillWriter() {
+		return spillWriter;
+	}
+	
+	/**
+	 * @return true if the used bytes of the buffer store reach the store high watermark
+	 *  and not drop to the low yet
+	 * 
+	 * @since 2018-07-16 little-pan
+	 */
+	public final boolean isStoreHigh() {
+		return storeHigh;
+	}
+	
+	/**
+	 * Check the store watermarks after file regions allocated or released, and fire the 
+	 *changed store spill state into the sessions later in this event loop.
+	 * 
+	 * @since 2018-07-16 little-pan
+	 */
+	final void checkStoreWatermarks() {
+		if(storeHighWatermark == 0L) {
+			return;
+		}
+		final FileStore store = bufferStore;
+		final long used = (long)store.allocatedCount() * store.regionSize;
+		if(storeHigh) {
+			if(used > storeLowWatermark) {
+				return;
+			}
+			storeHigh = false;
+		}else {
+			if(used < storeHighWatermark) {
+				return;
+			}
+			storeHigh = true;
+		}
+		executeLater(new Runnable() {
+			@Override
+			public void run() {
+				if(storeHighFired == storeHigh) {
+					return;
+				}
+				storeHighFired = storeHigh;
+				final SpillState state = (storeHigh? SpillState.STORE_HIGH: SpillState.STORE_LOW);
+				selLoop.serverSessManager.fireStoreSpillState(state);
+				selLoop.clientSessManager.fireStoreSpillState(state);
+			}
+		});
+	}
+	
+	/**
+	 * <p>
+	 * The load of this event loop: opened sessions plus accepted channels 
+	 * that wait for registering. Thread safe.
+	 * </p>
+	 * 
+	 * @return the load of this event loop
+	 */
+	public int load() {
+		return (selLoop.serverSessManager.sessionCount() + 
+				selLoop.clientSessManager.sessionCount() + pendingAccepts.get());
+	}
+	
+	/**
+	 * Check whether the sessions of this event loop reach its share of the max 
+	 *connections. Thread safe.
+	 * 
+	 * @param server check the server sessions plus the accepted channels that wait 
+	 *for registering, otherwise the client sessions
+	 * @return true if no free session slot
+	 * 
+	 * @since 2018-07-16 little-pan
+	 */
+	final boolean isFull(final boolean server) {
+		if(server) {
+			final SessionManager manager = selLoop.serverSessManager;
+			return (manager.sessionCount() + pendingAccepts.get() >= manager.maxConns());
+		}
+		final SessionManager manager = selLoop.clientSessManager;
+		return (manager.sessionCount() >= manager.maxConns());
+	}
+	
 	public boolean isShutdown() {
 		return shutdown;
 	}
@@ -117,9 +355,7 @@ public class EventLoop {
 	
 	public EventLoop connect(final SocketAddress remote, long timeout) {
 		connReqQueue.offer(new ConnRequest(remote, timeout));
-		if(!inEventLoop()) {
-			selLoop.selector.wakeup();
-		}
+		wakeup();
 		return this;
 	}
 	
@@ -137,18 +373,111 @@ public class EventLoop {
 			return this;
 		}
 		execTaskQueue.offer(task);
-		selLoop.selector.wakeup();
+		wakeup();
+		return this;
+	}
+	
+	/**
+	 * Execute task in the next round of event loop, even if called in event loop, 
+	 *so that the task doesn't reenter the caller.
+	 * 
+	 * @param task
+	 * @return the event loop
+	 * 
+	 * @since 2018-07-16 little-pan
+	 */
+	final EventLoop executeLater(final Runnable task) {
+		execTaskQueue.offer(task);
+		wakeup();
+		return this;
+	}
+	
+	/**
+	 * @return the accepted channel number of this event loop
+	 */
+	public long acceptedCount() {
+		return selLoop.acceptedCount;
+	}
+	
+	/**
+	 * @return the OP_ACCEPT ready number of this event loop
+	 */
+	public long acceptWakeups() {
+		return selLoop.acceptWakeups;
+	}
+	
+	/**
+	 * <p>
+	 * The OP_ACCEPT ready number that accepts {@link Configuration#getMaxAcceptsPerLoop()}
+	 *channels, which means more channels waiting in the backlog. If this is close to
+	 *{@link #acceptWakeups()}, increase the max accepts per loop or the backlog.
+	 * </p>
+	 * 
+	 * @return the accept budget exhausted number
+	 */
+	public long acceptFullWakeups() {
+		return selLoop.acceptFullWakeups;
+	}
+	
+	/**
+	 * @return the max accepted channel number in one OP_ACCEPT ready
+	 */
+	public int maxAcceptsOnce() {
+		return selLoop.maxAcceptsOnce;
+	}
+	
+	/**
+	 * Register the accepted socket channel into this event loop, and allocate 
+	 *a server session for it.
+	 * 
+	 * @param chan the accepted channel
+	 * @return the event loop
+	 * 
+	 * @since 2018-07-14 little-pan
+	 */
+	EventLoop register(final SocketChannel chan) {
+		if(terminated) {
+			IoUtil.close(chan);
+			return this;
+		}
+		pendingAccepts.incrementAndGet();
+		acceptQueue.offer(chan);
+		wakeup();
 		return this;
 	}
 	
 	public EventLoop schedule(final TimeTask task) {
-		timeTaskQueue.offer(task);
-		if(!inEventLoop()) {
-			selLoop.selector.wakeup();
+		if(inEventLoop()) {
+			timeTaskQueue.offer(task);
+			return this;
 		}
+		timeTaskSubmits.offer(task);
+		wakeup();
 		return this;
 	}
 	
+	/**
+	 * Wake up the selector after submitting a task from other threads. Only the 
+	 *first submission after the loop reset the wakeup flag calls the selector 
+	 *wakeup(), for avoiding wakeup storm.
+	 * 
+	 * @since 2018-07-16 little-pan
+	 */
+	protected final void wakeup() {
+		if(!inEventLoop() && wakenUp.compareAndSet(false, true)) {
+			selLoop.selector.wakeup();
+		}
+	}
+	
+	/**
+	 * @return true if any task or request submitted but not handled by the loop
+	 */
+	final boolean hasPendingTasks() {
+		return (!execTaskQueue.isEmpty() || !connReqQueue.isEmpty() || 
+				!acceptQueue.isEmpty() || !timeTaskSubmits.isEmpty() ||
+				(spillWriter != null && spillWriter.hasDoneJobs()));
+	}
+	
 	protected static ServerSocketChannel openServerChan(final Configuration config) {
 		if(config.getServerInitializer() == null) {
 			return null;
@@ -159,6 +488,13 @@ public class EventLoop {
 			chan = ServerSocketChannel.open();
 			chan.configureBlocking(false);
 			chan.socket().setReuseAddress(true);
+			if(config.isReusePort()) {
+				if(isReusePortSupported(chan)) {
+					chan.setOption(SO_REUSEPORT, true);
+				}else {
+					log.warn("SO_REUSEPORT not supported - ignore it");
+				}
+			}
 			final String host = config.getHost();
 			final int port = config.getPort();
 			final SocketAddress local = new InetSocketAddress(host, port);
@@ -175,6 +511,39 @@ public class EventLoop {
 		}
 	}
 	
+	/**
+	 * Test whether the SO_REUSEPORT option supported in this platform.
+	 * 
+	 * @return true if the server channel supports SO_REUSEPORT
+	 * 
+	 * @since 2018-07-15 little-pan
+	 */
+	public static boolean isReusePortSupported() {
+		ServerSocketChannel chan = null;
+		try {
+			chan = ServerSocketChannel.open();
+			return isReusePortSupported(chan);
+		} catch (final IOException e) {
+			return false;
+		} finally {
+			IoUtil.close(chan);
+		}
+	}
+	
+	static boolean isReusePortSupported(final ServerSocketChannel chan) {
+		return (SO_REUSEPORT != null && chan.supportedOptions().contains(SO_REUSEPORT));
+	}
+	
+	@SuppressWarnings("unchecked")
+	static SocketOption<Boolean> lookupReusePort() {
+		try {
+			final Object option = StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+			return (SocketOption<Boolean>)option;
+		} catch (final Exception e) {
+			return null;
+		}
+	}
+	
 	final static SocketChannel openSocketChan(Selector selector, ConnRequest req) 
 			throws IOException {
 		SocketChannel chan = null;
@@ -215,24 +584,41 @@ public class EventLoop {
 		private SessionManager serverSessManager;
 		private SessionManager clientSessManager;
 		
+		final static int MAX_TASKS_ONCE = 1024;
+		
+		// expired periodic tasks to reschedule
+		private ArrayQueue<TimeTask> periodics = new ArrayQueue<TimeTask>(64);
+		
+		// accept counters: written only in the loop
+		private volatile long acceptedCount, acceptWakeups, acceptFullWakeups;
+		private volatile int maxAcceptsOnce;
+		
 		SelectorLoop(EventLoop eventLoop, Selector selector, ServerSocketChannel ssChan){
 			this.eventLoop = eventLoop;
 			this.config    = eventLoop.config;
 			this.ssChan    = ssChan;
 			this.selector  = selector;
 			
-			int maxServerConns = config.getMaxServerConns();
-			if(ssChan == null) {
+			final int shares = eventLoop.shares;
+			int maxServerConns = shareOf(config.getMaxServerConns(), shares);
+			if(config.getServerInitializer() == null || eventLoop.boss) {
 				maxServerConns = 0;
 			}
 			this.serverSessManager = new SessionManager(eventLoop, selector, "serverSess", 
 					maxServerConns, config.getServerInitializer());
 			
-			int maxClientConns = config.getMaxClientConns();
+			int maxClientConns = shareOf(config.getMaxClientConns(), shares);
+			if(eventLoop.boss) {
+				maxClientConns = 0;
+			}
 			this.clientSessManager = new SessionManager(eventLoop, selector,  "clientSess", 
 					maxClientConns, config.getClientInitializer());
 		}
 
+		static int shareOf(int maxConns, int shares) {
+			return ((maxConns + shares - 1) / shares);
+		}
+
 		public void run() {
 			final long ts = System.currentTimeMillis();
 			initChans();
@@ -256,15 +642,19 @@ public class EventLoop {
 					if(!shutdown) {
 						handleConnRequests();
 					}
+					handleAccepts();
 					
 					// 2. handle file events
+					// Reset the wakeup flag before checking the queues: a submission after
+					// the check will set the flag and wake up the select
+					eventLoop.wakenUp.set(false);
 					final long nearest = nearestScheduleTime();
 					final int events;
 					final Selector sel = selector;
-					if(nearest == -1L) {
-						events = sel.select();
-					}else if(nearest == 0L) {
+					if(nearest == 0L || eventLoop.hasPendingTasks()) {
 						events = sel.selectNow();
+					}else if(nearest == -1L) {
+						events = sel.select();
 					}else {
 						events = sel.select(nearest);
 					}
@@ -307,6 +697,11 @@ public class EventLoop {
 					// 4. execute tasks
 					executeTasks();
 					
+					// 5. continue the sessions that spill jobs written
+					if(eventLoop.spillWriter != null) {
+						eventLoop.spillWriter.handleDoneJobs();
+					}
+					
 				}// loop
 			} catch(final IOException e) {
 				log.error("Selector loop severe error", e);
@@ -320,15 +715,14 @@ public class EventLoop {
 		}
 		
 		final void executeTasks() {
-			final Queue<Runnable> queue = eventLoop.execTaskQueue;
-			if(queue.size() == 0) {
-				return;
-			}
-			
-			final Iterator<Runnable> i = queue.iterator();
-			for(; i.hasNext(); i.remove()) {
+			final MpscQueue<Runnable> queue = eventLoop.execTaskQueue;
+			// Tasks executed at most a batch in one loop for not starving IO events
+			for(int n = 0; n < MAX_TASKS_ONCE; ++n) {
+				final Runnable task = queue.poll();
+				if(task == null) {
+					break;
+				}
 				try {
-					final Runnable task = i.next();
 					task.run();
 				}catch(final Throwable cause) {
 					log.warn("Uncaught exception in task", cause);
@@ -337,71 +731,86 @@ public class EventLoop {
 		}
 		
 		final void executeTimeTasks() {
-			final Queue<TimeTask> queue = eventLoop.timeTaskQueue;
-			if(queue.size() == 0) {
+			final TimeTaskQueue queue = eventLoop.timeTaskQueue;
+			if(queue.isEmpty()) {
 				return;
 			}
 			
+			// Periodic tasks executed at most once in one loop
+			final ArrayQueue<TimeTask> periodics = this.periodics;
 			final long cur = System.currentTimeMillis();
-			final Iterator<TimeTask> i = queue.iterator();
-			for(; i.hasNext(); ) {
-				final TimeTask task = i.next();
-				if(task.isCancel()) {
-					i.remove();
-					continue;
+			for(;;) {
+				final TimeTask task = queue.peek();
+				if(task == null) {
+					break;
 				}
 				final long tm = task.executeTime();
-				if(tm <= cur) {
-					try {
-						task.run();
-					} catch(final Throwable cause){
-						log.debug("Time task execution error", cause);
-					} finally {
-						final long period = task.period();
-						if(period <= 0L) {
-							i.remove();
-						}else {
-							task.executeTime(tm + period);
+				if(tm > cur) {
+					break;
+				}
+				queue.poll();
+				try {
+					task.run();
+				} catch(final Throwable cause){
+					log.debug("Time task execution error", cause);
+				} finally {
+					final long period = task.period();
+					if(period > 0L) {
+						task.executeTime(tm + period);
+						if(!periodics.offer(task)) {
+							this.periodics = ArrayQueue.drainQueue(periodics, periodics.capacity() << 1);
+							this.periodics.offer(task);
 						}
 					}
 				}
 			} // loop
+			
+			final ArrayQueue<TimeTask> tasks = this.periodics;
+			for(;;) {
+				final TimeTask task = tasks.poll();
+				if(task == null) {
+					break;
+				}
+				queue.offer(task);
+			}
 		}
 		
 		final long nearestScheduleTime() {
-			final Queue<TimeTask> queue = eventLoop.timeTaskQueue;
-			long nearest = -1L;
-			if(queue.size() == 0) {
-				return nearest;
+			final TimeTaskQueue queue = eventLoop.timeTaskQueue;
+			final MpscQueue<TimeTask> submits = eventLoop.timeTaskSubmits;
+			for(;;) {
+				final TimeTask task = submits.poll();
+				if(task == null) {
+					break;
+				}
+				queue.offer(task);
 			}
 			
+			final TimeTask task = queue.peek();
+			if(task == null) {
+				return -1L;
+			}
 			final long cur = System.currentTimeMillis();
-			final Iterator<TimeTask> i = queue.iterator();
-			for(; i.hasNext(); ) {
-				final TimeTask task = i.next();
-				if(task.isCancel()) {
-					i.remove();
-					continue;
-				}
-				final long tm = task.executeTime();
-				if(tm <= cur) {
-					nearest = 0L;
-					break;
-				}
-				if(nearest == -1L || tm - cur < nearest) {
-					nearest = tm - cur;
-				}
+			final long tm  = task.executeTime();
+			if(tm <= cur) {
+				return 0L;
 			}
-			return nearest;
+			return (tm - cur);
 		}
 		
 		final void cleanup(){
 			destroyChans();
 			eventLoop.connReqQueue.clear();
+			closeAccepts();
+			eventLoop.timeTaskSubmits.clear();
 			eventLoop.timeTaskQueue.clear();
 			eventLoop.execTaskQueue.clear();
-			config.getBufferStore().close();
-			config.getBufferPool().close();
+			eventLoop.unregisterMXBeans();
+			if(eventLoop.spillWriter != null) {
+				eventLoop.spillWriter.shutdown();
+			}
+			IoUtil.close(eventLoop.bufferStore);
+			eventLoop.closeBufferPool(eventLoop.bufferPool);
 		}
 		
 		final void initChans() {
@@ -425,8 +834,8 @@ public class EventLoop {
 		}
 		
 		final void handleConnRequests() {
-			final Queue<ConnRequest> queue = eventLoop.connReqQueue;
-			if(queue.size() == 0) {
+			final MpscQueue<ConnRequest> queue = eventLoop.connReqQueue;
+			if(queue.isEmpty()) {
 				return;
 			}
 			
@@ -448,6 +857,37 @@ public class EventLoop {
 			}
 		}
 		
+		final void handleAccepts() {
+			final MpscQueue<SocketChannel> queue = eventLoop.acceptQueue;
+			for(;;) {
+				final SocketChannel chan = queue.poll();
+				if(chan == null) {
+					break;
+				}
+				eventLoop.pendingAccepts.decrementAndGet();
+				if(eventLoop.shutdown) {
+					IoUtil.close(chan);
+					continue;
+				}
+				final Session sess = serverSessManager.allocateSession(chan);
+				if(sess != null){
+					sess.fireConnected();
+				}
+			}
+		}
+		
+		final void closeAccepts() {
+			final MpscQueue<SocketChannel> queue = eventLoop.acceptQueue;
+			for(;;) {
+				final SocketChannel chan = queue.poll();
+				if(chan == null) {
+					break;
+				}
+				eventLoop.pendingAccepts.decrementAndGet();
+				IoUtil.close(chan);
+			}
+		}
+		
 		final boolean isCompleted() {
 			return (serverSessManager.isCompleted() && clientSessManager.isCompleted());
 		}
@@ -483,29 +923,64 @@ public class EventLoop {
 		}
 		
 		final void onServerConnect(final ServerSocketChannel ssChan) {
+			// Drain the accept backlog in budget
+			// @since 2018-07-15 little-pan
+			final int maxAccepts = config.getMaxAcceptsPerLoop();
+			int accepts = 0;
+			for(; accepts < maxAccepts; ++accepts) {
+				if(!accept(ssChan)) {
+					break;
+				}
+			}
+			
+			++acceptWakeups;
+			acceptedCount += accepts;
+			if(accepts == maxAccepts) {
+				++acceptFullWakeups;
+			}
+			if(accepts > maxAcceptsOnce) {
+				maxAcceptsOnce = accepts;
+			}
+		}
+		
+		/**
+		 * Accept a channel.
+		 * 
+		 * @param ssChan the server channel
+		 * @return false if no channel acceptable or accept error
+		 */
+		final boolean accept(final ServerSocketChannel ssChan) {
 			SocketChannel chan = null;
 			boolean failed = true;
 			try{
 				chan = ssChan.accept();
 				if(chan == null){
-					return;
+					return false;
 				}
 				chan.configureBlocking(false);
 				failed = false;
 			}catch(final IOException e){
 				log.warn("Accept channel error", e);
-				return;
+				return false;
 			}finally{
 				if(failed){
 					IoUtil.close(chan);
 				}
 			}
 			
+			if(eventLoop.boss) {
+				// Hand over to a worker event loop
+				// @since 2018-07-14 little-pan
+				eventLoop.group.next(true).register(chan);
+				return true;
+			}
+			
 			Session sess = null;
 			sess = serverSessManager.allocateSession(chan);
 			if(sess != null){
 				sess.fireConnected();
 			}
+			return true;
 		}
 		
 		final void onClientConnect(final SelectionKey key) {
@@ -545,8 +1020,11 @@ public class EventLoop {
 		final String name;
 		
 		private final Session sessions[];
+		// free slots of the sessions
+		private final IndexPool slots;
 		private long nextSessionId;
-		private int maxIndex;
+		// written only in event loop, read by other threads
+		private volatile int sessionCount;
 		
 		final SessionInitializer sessionInitializer;
 		
@@ -556,6 +1034,7 @@ public class EventLoop {
 			this.selector  = selector;
 			this.name      = name;
 			this.sessions  = new Session[maxConns];
+			this.slots     = new IndexPool(maxConns);
 			
 			if(sessionInitializer == null) {
 				this.sessionInitializer = SessionInitializer.NOOP;
@@ -564,14 +1043,17 @@ public class EventLoop {
 			}
 		}
 		
+		public int sessionCount() {
+			return sessionCount;
+		}
+		
+		public int maxConns() {
+			return sessions.length;
+		}
+		
 		public boolean isCompleted() {
-			for(int i = 0; i < maxIndex; ++i){
-				final Session sess = sessions[i];
-				if(sess != null && sess.isOpen()){
-					return false;
-				}
-			}
-			return true;
+			// an allocated session released from its slot when closed
+			return slots.isEmpty();
 		}
 
 		/**
@@ -629,46 +1111,105 @@ public class EventLoop {
 				return null;
 			}
 			
-			final int maxConns = sessions.length;
-			if(maxIndex >= maxConns) {
+			final int i = slots.allocate();
+			if(i == -1) {
 				final String reason = String.format("%s allocation exceeds maxConns %d", 
-						name, maxConns);
+						name, sessions.length);
 				sess.fireCause(new SessionAllocateException(reason));
 				return null;
 			}
-			
-			for(int i = 0; i < maxConns; ++i) {
-				final Session s = sessions[i];
-				if(s == null || !s.isOpen()) {
-					sessions[i] = sess;
-					sess.sessionIndex(i);
-					if(i >= maxIndex) {
-						++maxIndex;
-					}
-					log.debug("{}: allocate a session success at sessions[{}] - maxIndex = {}", 
-							name, i, maxIndex);
-					break;
-				}
-			}
+			sessions[i] = sess;
+			sess.sessionIndex(i);
+			sessionCount = slots.size();
+			log.debug("{}: allocate a session success at sessions[{}] - sessionCount = {}", 
+					name, i, sessionCount);
 			return sess;
 		}
 
+		/**
+		 * Fire the store spill state into all opened sessions of this manager, and 
+		 *their writability changed.
+		 * 
+		 * @param state the store spill state
+		 * 
+		 * @since 2018-07-16 little-pan
+		 */
+		final void fireStoreSpillState(final SpillState state) {
+			final Session sessions[] = this.sessions;
+			for(int i = 0; i < sessions.length; ++i) {
+				final Session sess = sessions[i];
+				if(sess != null && sess.isOpen()) {
+					sess.fireUserEvent(state);
+					sess.out.onWritabilityChanged();
+				}
+			}
+		}
+		
 		final void releaseSession(final Session session, final int sessIndex) {
 			if(sessIndex != -1){
 				final Session sess = sessions[sessIndex];
 				if(sess == session){
 					sessions[sessIndex] = null;
-					if(sessIndex == maxIndex - 1){
-						--maxIndex;
-					}
-					log.debug("{}: release session {} at sessions[{}] - maxIndex = {}", 
-							name, session, sessIndex, maxIndex);
+					slots.release(sessIndex);
+					sessionCount = slots.size();
+					log.debug("{}: release session {} at sessions[{}] - sessionCount = {}", 
+							name, session, sessIndex, sessionCount);
 				}
 			}
 		}
 		
 	}
 	
+	/**
+	 * The metrics snapshot of a per loop buffer pool or store for the MXBean: the pool
+	 *and the store are not thread-safe, so that the snapshot is taken in the event loop, 
+	 *and published to the JMX thread by a volatile field. The last snapshot returned if 
+	 *the event loop busy beyond the timeout, or terminated.
+	 * 
+	 * @since 2018-07-16 little-pan
+	 */
+	static class MetricsSnapshot<T> implements Callable<T> {
+		static final long TIMEOUT = 1000L;
+		
+		final EventLoop eventLoop;
+		final Callable<T> source;
+		private volatile T last;
+		
+		// called before the event loop started
+		MetricsSnapshot(final EventLoop eventLoop, final Callable<T> source) {
+			this.eventLoop = eventLoop;
+			this.source = source;
+			try {
+				this.last = source.call();
+			} catch(final Exception e) {
+				throw new IllegalStateException("Metrics snapshot failed", e);
+			}
+		}
+		
+		@Override
+		public T call() throws Exception {
+			if(eventLoop.inEventLoop()) {
+				return (last = source.call());
+			}
+			if(eventLoop.isTerminated()) {
+				return last;
+			}
+			final FutureTask<T> task = new FutureTask<T>(source);
+			eventLoop.execute(task);
+			try {
+				return (last = task.get(TIMEOUT, TimeUnit.MILLISECONDS));
+			} catch(final TimeoutException e) {
+				return last;
+			} catch(final ExecutionException e) {
+				final Throwable cause = e.getCause();
+				if(cause instanceof Exception) {
+					throw (Exception)cause;
+				}
+				throw e;
+			}
+		}
+	}
+	
 	// connection request and timeout handler.
 	// @since 2018-07-01 little-pan
 	static class ConnRequest extends TimeTask {
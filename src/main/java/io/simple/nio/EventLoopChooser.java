@@ -0,0 +1,56 @@
+package io.simple.nio;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * The chooser that selects an event loop of the {@link EventLoopGroup} for 
+ *a new accepted or connecting channel.
+ * </p>
+ * 
+ * @author little-pan
+ * @since 2018-07-14
+ *
+ */
+public interface EventLoopChooser {
+	
+	/**
+	 * Choose event loops in turn.
+	 */
+	EventLoopChooser ROUND_ROBIN = new EventLoopChooser() {
+		
+		final AtomicInteger index = new AtomicInteger();
+		
+		@Override
+		public EventLoop choose(EventLoop[] eventLoops) {
+			final int i = index.getAndIncrement() & Integer.MAX_VALUE;
+			return eventLoops[i % eventLoops.length];
+		}
+		
+	};
+	
+	/**
+	 * Choose the event loop that has the least load.
+	 */
+	EventLoopChooser LEAST_LOADED = new EventLoopChooser() {
+		
+		@Override
+		public EventLoop choose(EventLoop[] eventLoops) {
+			EventLoop least = eventLoops[0];
+			int minLoad = least.load();
+			for(int i = 1, n = eventLoops.length; i < n; ++i) {
+				final EventLoop e = eventLoops[i];
+				final int load = e.load();
+				if(load < minLoad) {
+					least   = e;
+					minLoad = load;
+				}
+			}
+			return least;
+		}
+		
+	};
+	
+	EventLoop choose(EventLoop[] eventLoops);
+
+}
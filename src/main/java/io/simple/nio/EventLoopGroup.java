@@ -0,0 +1,247 @@
+package io.simple.nio;
+
+import java.net.SocketAddress;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.simple.util.IoUtil;
+import io.simple.util.JmxUtil;
+
+/**
+ * <p>
+ * A group of event loops for multi-core scale: a boss event loop accepts 
+ *server channels and hands them over to the worker event loops, each worker
+ *runs its own selector thread, sessions, buffer pool and buffer store.
+ * </p>
+ * 
+ * <p>
+ * If {@link Configuration#isReusePort()} and the platform supports SO_REUSEPORT,
+ *there is no boss, and each worker binds its own server channel on the same 
+ *host and port, then the kernel balances the incoming connections.
+ * </p>
+ * 
+ * @author little-pan
+ * @since 2018-07-14
+ *
+ */
+public class EventLoopGroup {
+	final static Logger log = LoggerFactory.getLogger(EventLoopGroup.class);
+	
+	protected final Configuration config;
+	
+	private final EventLoop boss;
+	private final EventLoop workers[];
+	private final EventLoopChooser chooser;
+	
+	// the buffer pool shared by workers, closed after all workers terminated
+	private final BufferPool bufferPool;
+	private final AtomicInteger bufferPoolRefs;
+	private final ObjectName bufferPoolMXBean;
+	
+	public EventLoopGroup(final Configuration config) {
+		final int n = config.getEventLoops();
+		final String name = config.getName();
+		this.config  = config;
+		this.chooser = config.getEventLoopChooser();
+		this.workers = new EventLoop[n];
+		boolean reusePort = false;
+		if(config.getServerInitializer() != null && config.isReusePort()) {
+			reusePort = EventLoop.isReusePortSupported();
+			if(!reusePort) {
+				log.warn("{}: SO_REUSEPORT not supported - use the boss acceptor", name);
+			}
+		}
+		if(config.isBufferPoolShared()) {
+			final BufferPool pool = this.bufferPool = config.newBufferPool(1);
+			this.bufferPoolRefs = new AtomicInteger(n);
+			if(config.isJmxEnabled()) {
+				this.bufferPoolMXBean = JmxUtil.register("BufferPool", name, 
+					BufferPoolMetricsMXBean.class, new Callable<BufferPoolMetrics>() {
+						@Override
+						public BufferPoolMetrics call() {
+							return pool.metrics();
+						}
+					});
+			}else {
+				this.bufferPoolMXBean = null;
+			}
+		}else {
+			this.bufferPool = null;
+			this.bufferPoolRefs = null;
+			this.bufferPoolMXBean = null;
+		}
+		boolean failed = true;
+		int i = 0;
+		try {
+			for(; i < n; ++i) {
+				workers[i] = new EventLoop(config, this, name + "-" + i, reusePort, false, n);
+			}
+			if(config.getServerInitializer() == null || reusePort) {
+				this.boss = null;
+			}else {
+				this.boss = new EventLoop(config, this, name + "-boss", true, true, n);
+			}
+			log.info("{}: started {} event loops", name, n);
+			failed = false;
+		} finally {
+			if(failed) {
+				// the failed worker has released the shared buffer pool
+				for(int j = i + 1; j < n; ++j) {
+					releaseBufferPool();
+				}
+				shutdown();
+			}
+		}
+	}
+	
+	public Configuration getConfig() {
+		return config;
+	}
+	
+	/**
+	 * @return the next worker event loop for a connecting channel
+	 */
+	public EventLoop next() {
+		return next(false);
+	}
+	
+	/**
+	 * Choose the next worker event loop by the chooser, and skip it if its share of 
+	 *the max connections is full, so that a channel is only rejected when all 
+	 *workers are full.
+	 * 
+	 * @param server choose for an accepted channel, otherwise a connecting channel
+	 * @return the next worker event loop
+	 * 
+	 * @since 2018-07-16 little-pan
+	 */
+	final EventLoop next(final boolean server) {
+		final EventLoop loops[] = workers;
+		final EventLoop chosen = chooser.choose(loops);
+		if(!chosen.isFull(server)) {
+			return chosen;
+		}
+		int i = 0;
+		for(final int n = loops.length; i < n && loops[i] != chosen; ++i);
+		for(int j = 1, n = loops.length; j < n; ++j) {
+			final EventLoop e = loops[(i + j) % n];
+			if(!e.isFull(server)) {
+				return e;
+			}
+		}
+		// All full: rejected by the chosen
+		return chosen;
+	}
+	
+	/**
+	 * @return the buffer pool shared by the workers, or null if each worker has its own
+	 */
+	public BufferPool bufferPool() {
+		return bufferPool;
+	}
+	
+	/**
+	 * Release the shared buffer pool when a worker terminated or failed to start.
+	 */
+	void releaseBufferPool() {
+		if(bufferPoolRefs != null && bufferPoolRefs.decrementAndGet() == 0) {
+			JmxUtil.unregister(bufferPoolMXBean);
+			IoUtil.close(bufferPool);
+		}
+	}
+	
+	public int size() {
+		return workers.length;
+	}
+	
+	public EventLoop get(int i) {
+		return workers[i];
+	}
+	
+	public boolean isShutdown() {
+		for(final EventLoop e : workers) {
+			if(e == null || !e.isShutdown()) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	public boolean isTerminated() {
+		if(boss != null && !boss.isTerminated()) {
+			return false;
+		}
+		for(final EventLoop e : workers) {
+			if(e != null && !e.isTerminated()) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	public EventLoopGroup shutdown() {
+		if(boss != null) {
+			boss.shutdown();
+		}
+		for(final EventLoop e : workers) {
+			if(e != null) {
+				e.shutdown();
+			}
+		}
+		return this;
+	}
+	
+	/**
+	 * Await all event loops in this group terminated.
+	 * 
+	 * @throws InterruptedException if this current thread interrupted
+	 */
+	public void awaitTermination() throws InterruptedException {
+		if(boss != null) {
+			boss.awaitTermination();
+		}
+		for(final EventLoop e : workers) {
+			e.awaitTermination();
+		}
+	}
+	
+	/**
+	 * Connect to remote host using the host and port of the configuration 
+	 *in the next event loop.
+	 */
+	public EventLoopGroup connect() {
+		next().connect();
+		return this;
+	}
+	
+	public EventLoopGroup connect(long timeout) {
+		next().connect(timeout);
+		return this;
+	}
+	
+	public EventLoopGroup connect(final String remoteHost, int remotePort) {
+		next().connect(remoteHost, remotePort);
+		return this;
+	}
+	
+	public EventLoopGroup connect(final String remoteHost, int remotePort, long timeout) {
+		next().connect(remoteHost, remotePort, timeout);
+		return this;
+	}
+	
+	public EventLoopGroup connect(final SocketAddress remote) {
+		next().connect(remote);
+		return this;
+	}
+	
+	public EventLoopGroup connect(final SocketAddress remote, long timeout) {
+		next().connect(remote, timeout);
+		return this;
+	}
+
+}
@@ -0,0 +1,41 @@
+package io.simple.nio;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * <p>
+ * A file segment that queued in the {@link BufferOutputStream} in write order, 
+ *and transfered into the socket channel by {@link FileChannel#transferTo(long, long, 
+ *java.nio.channels.WritableByteChannel)}.
+ * </p>
+ * 
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+class FileSegment extends RetainedBuffer {
+	
+	final static ByteBuffer EMPTY = ByteBuffer.allocate(0);
+	
+	final FileChannel chan;
+	long position;
+	long count;
+	
+	FileSegment(FileChannel chan, long position, long count, Runnable onComplete) {
+		super(EMPTY, onComplete);
+		this.chan     = chan;
+		this.position = position;
+		this.count    = count;
+	}
+	
+	final boolean hasRemaining() {
+		return (count > 0L);
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("FileSegment(position = %d, count = %d)", position, count);
+	}
+	
+}
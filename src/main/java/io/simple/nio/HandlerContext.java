@@ -3,6 +3,7 @@ package io.simple.nio;
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
  * The event handler context.
@@ -32,6 +33,16 @@ public class HandlerContext implements Closeable {
 		return session.isShutdown();
 	}
 	
+	/**
+	 * Please see {@link Session#isWritable()} method.
+	 * 
+	 * @return true if the session is writable
+	 * @since 2018-07-16 little-pan
+	 */
+	public boolean isWritable() {
+		return session.isWritable();
+	}
+	
 	public EventLoop eventLoop(){
 		return session.eventLoop();
 	}
@@ -71,6 +82,10 @@ public class HandlerContext implements Closeable {
 		return session.alloc();
 	}
 	
+	public Buffer alloc(int minCapacity)throws BufferAllocateException{
+		return session.alloc(minCapacity);
+	}
+	
 	public HandlerContext enableRead() {
 		session.enableRead();
 		return this;
@@ -130,11 +145,12 @@ public class HandlerContext implements Closeable {
 	}
 	
 	/**
-	 * Write byte buffer into output buffer stream.
+	 * Write byte buffer into output buffer stream, and the position of the 
+	 *byte buffer not changed.
 	 * 
 	 * @param buf
-	 * @param off
-	 * @param len
+	 * @param off the absolute offset in the byte buffer
+	 * @param len the byte number
 	 * 
 	 * @return this context
 	 * @throws IOException 
@@ -144,6 +160,55 @@ public class HandlerContext implements Closeable {
 		return this;
 	}
 
+	/**
+	 * Queue the byte buffer into output buffer stream without copying.
+	 * Please see {@link Session#writeRetained(ByteBuffer, Runnable)} method.
+	 * 
+	 * @param buf
+	 * @param onComplete
+	 * 
+	 * @return this context
+	 * @throws IOException 
+	 */
+	public HandlerContext writeRetained(ByteBuffer buf, Runnable onComplete) throws IOException {
+		session.writeRetained(buf, onComplete);
+		return this;
+	}
+	
+	/**
+	 * Queue the file segment into output buffer stream for zero-copy transfer.
+	 * Please see {@link Session#sendFile(FileChannel, long, long)} method.
+	 * 
+	 * @param chan
+	 * @param position
+	 * @param count
+	 * 
+	 * @return this context
+	 * @throws IOException 
+	 */
+	public HandlerContext sendFile(FileChannel chan, long position, long count) throws IOException {
+		session.sendFile(chan, position, count);
+		return this;
+	}
+	
+	/**
+	 * Queue the file segment into output buffer stream for zero-copy transfer.
+	 * Please see {@link Session#sendFile(FileChannel, long, long, Runnable)} method.
+	 * 
+	 * @param chan
+	 * @param position
+	 * @param count
+	 * @param onComplete
+	 * 
+	 * @return this context
+	 * @throws IOException 
+	 */
+	public HandlerContext sendFile(FileChannel chan, long position, long count, Runnable onComplete) 
+			throws IOException {
+		session.sendFile(chan, position, count, onComplete);
+		return this;
+	}
+	
 	/**
 	 * <p>
 	 * Flush output buffer stream into the socket channel.
@@ -196,6 +261,12 @@ public class HandlerContext implements Closeable {
 		}
 	}
 	
+	public void fireWritabilityChanged() throws Exception {
+		if(next != null){
+			next.handler.onWritabilityChanged(next);
+		}
+	}
+	
 	public void fireCause(Throwable cause) {
 		if(next != null){
 			next.handler.onCause(next, cause);
@@ -31,6 +31,8 @@ public class LinkedBufferPool extends AbstractBufferPool {
 			}
 			buffer.onAlloc();
 			pooledSize -= bufferSize;
+			curSize    += bufferSize;
+			onAllocated(true);
 			return buffer;
 		}
 		return super.allocate();
@@ -38,6 +38,12 @@ public abstract class MessageCodec extends EventHandlerAdapter {
 	 * Decode input stream into the message list.
 	 * </p>
 	 * 
+	 * <p>
+	 * A frame can be decoded without copying by {@link BufferInputStream#readRetained(int)}, 
+	 *and the application handler should release it after used. The {@link ReferenceCounted} 
+	 *messages that not passed to the next handler are released when error.
+	 * </p>
+	 * 
 	 * @param ctx
 	 * @param in the input stream
 	 * @param out the message list
@@ -62,17 +68,38 @@ public abstract class MessageCodec extends EventHandlerAdapter {
 	public void onRead(HandlerContext ctx, Object msg) throws Exception {
 		if(msg instanceof BufferInputStream) {
 			final BufferInputStream in = (BufferInputStream)msg;
-			decode(ctx, in, out);
-			if(out.size() > 0) {
-				final Iterator<Object> i = out.iterator();
-				for(; i.hasNext(); i.remove()) {
-					final Object o = i.next();
-					super.onRead(ctx, o);
+			boolean failed = true;
+			try {
+				decode(ctx, in, out);
+				if(out.size() > 0) {
+					final Iterator<Object> i = out.iterator();
+					for(; i.hasNext();) {
+						final Object o = i.next();
+						i.remove();
+						super.onRead(ctx, o);
+					}
+				}
+				failed = false;
+			} finally {
+				if(failed) {
+					releaseMessages();
 				}
 			}
 			return;
 		}
 		super.onRead(ctx, msg);
 	}
+	
+	private void releaseMessages() {
+		for(;;) {
+			final Object o = out.poll();
+			if(o == null) {
+				break;
+			}
+			if(o instanceof ReferenceCounted) {
+				((ReferenceCounted)o).release();
+			}
+		}
+	}
 
 }
@@ -0,0 +1,37 @@
+package io.simple.nio;
+
+/**
+ * <p>
+ * A reference counted object, which is deallocated when the count decreases to 0.
+ * The count is 1 when the object allocated, and the holder that retains it must 
+ *release it once after used.
+ * </p>
+ * 
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+public interface ReferenceCounted {
+	
+	/**
+	 * @return the reference count, 0 means deallocated
+	 */
+	int refCnt();
+	
+	/**
+	 * Increase the reference count by 1.
+	 * 
+	 * @return this object
+	 * @throws IllegalStateException if this object has been deallocated
+	 */
+	ReferenceCounted retain();
+	
+	/**
+	 * Decrease the reference count by 1, and deallocate this object when the count 
+	 *reaches 0.
+	 * 
+	 * @throws IllegalStateException if this object has been deallocated
+	 */
+	void release();
+	
+}
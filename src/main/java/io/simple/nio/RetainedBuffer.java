@@ -0,0 +1,56 @@
+package io.simple.nio;
+
+import java.nio.ByteBuffer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * A caller owned byte buffer that queued in the {@link BufferOutputStream} without 
+ *copying, and the complete handler is invoked when it released after flushed.
+ * It's always in read state, and never written by the stream.
+ * </p>
+ * 
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+class RetainedBuffer extends Buffer {
+	final static Logger log = LoggerFactory.getLogger(RetainedBuffer.class);
+	
+	private Runnable onComplete;
+	
+	RetainedBuffer(ByteBuffer backed, Runnable onComplete) {
+		super(null, backed);
+		this.onComplete = onComplete;
+		onAlloc();
+	}
+	
+	@Override
+	public Buffer clear() {
+		throw new UnsupportedOperationException("Retained buffer can't be cleared");
+	}
+	
+	@Override
+	protected void deallocate() {
+		onRelease();
+		final Runnable task = onComplete;
+		if(task != null) {
+			onComplete = null;
+			complete(task);
+		}
+	}
+	
+	static void complete(final Runnable onComplete) {
+		if(onComplete == null) {
+			return;
+		}
+		try {
+			onComplete.run();
+		} catch(final Throwable cause) {
+			log.warn("Retained buffer complete handler error", cause);
+		}
+	}
+	
+}
@@ -0,0 +1,71 @@
+package io.simple.nio;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+import io.simple.nio.store.FileRegion;
+import io.simple.nio.store.FileStore;
+
+/**
+ * <p>
+ * A file segment that queued behind the spilled regions of the
+ *{@link BufferOutputStream} in write order, transfered from the caller's file into
+ *the socket channel by zero-copy when flushing, instead of copying the file into
+ *the buffer store.
+ * </p>
+ * 
+ * <p>
+ * It's never allocated from the store, and never written: the following bytes are
+ *spilled into the new regions after it.
+ * </p>
+ * 
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+class SegmentRegion extends FileRegion {
+	
+	final FileSegment segment;
+	
+	SegmentRegion(FileStore store, FileSegment segment) {
+		super(store, -1);
+		this.segment = segment;
+	}
+	
+	@Override
+	public int readRemaining() {
+		return (int)Math.min(segment.count, Integer.MAX_VALUE);
+	}
+	
+	@Override
+	public int writeRemaining() {
+		return 0;
+	}
+	
+	@Override
+	public int transferTo(final int count, final WritableByteChannel dst) throws IOException {
+		final FileSegment seg = segment;
+		final long i = seg.chan.transferTo(seg.position, count, dst);
+		if(i <= 0L) {
+			if(seg.position >= seg.chan.size()) {
+				throw new EOFException("File truncated: position " + seg.position);
+			}
+			return 0;
+		}
+		seg.position += i;
+		seg.count    -= i;
+		return (int)i;
+	}
+	
+	@Override
+	public void release() {
+		segment.release();
+	}
+	
+	@Override
+	public String toString() {
+		return ("SegmentRegion-" + segment);
+	}
+	
+}
@@ -3,7 +3,9 @@ package io.simple.nio;
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
 import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
@@ -44,10 +46,15 @@ public class Session implements Closeable {
 	// Base resources
 	protected Selector selector;
 	protected SelectionKey selectKey;
+	// interest ops cache of the select key
+	private int interestOps;
 	protected SocketChannel chan;
 	protected final BufferInputStream  in;
 	protected final BufferOutputStream out;
 	private boolean flushing;
+	// nested onFlushed() depth of inline flushes
+	private int inlineFlushes;
+	final static int MAX_INLINE_FLUSHES = 8;
 	
 	// Handler chain
 	private final HeadContext head;
@@ -146,13 +153,58 @@ public class Session implements Closeable {
 	}
 	
 	public Buffer alloc()throws BufferAllocateException {
-		return config.getBufferPool().allocate();
+		return owned(eventLoop.bufferPool().allocate());
+	}
+	
+	/**
+	 * Allocate a buffer that its capacity at least the min capacity.
+	 * 
+	 * @param minCapacity
+	 * @return the buffer
+	 * @throws BufferAllocateException
+	 * 
+	 * @since 2018-07-16 little-pan
+	 */
+	public Buffer alloc(int minCapacity)throws BufferAllocateException {
+		return owned(eventLoop.bufferPool().allocate(minCapacity));
+	}
+	
+	/**
+	 * Own the buffer by the event loop if the pool not thread-safe, so that the buffer 
+	 *released in other threads is returned into the pool in the event loop.
+	 */
+	private Buffer owned(final Buffer buffer) {
+		if(!config.isBufferPoolShared()) {
+			buffer.owner = eventLoop;
+		}
+		return buffer;
 	}
 	
 	public boolean isShutdown() {
 		return eventLoop.isShutdown();
 	}
 	
+	/**
+	 * <p>
+	 * The session is not writable when the unflushed bytes reach the write high watermark
+	 *and not drop to the low yet, or the session or the buffer store spill high, or the
+	 *spill queue full, so that the producers can throttle in memory instead of spilling
+	 *into the buffer store.
+	 * </p>
+	 * 
+	 * <p>
+	 * The handlers are notified by {@link EventHandler#onWritabilityChanged(HandlerContext)}
+	 *when it changed.
+	 * </p>
+	 * 
+	 * @return true if the session is writable
+	 * 
+	 * @since 2018-07-16 little-pan
+	 */
+	public boolean isWritable() {
+		return out.isWritable();
+	}
+	
 	public EventLoop eventLoop() {
 		return eventLoop;
 	}
@@ -162,11 +214,11 @@ public class Session implements Closeable {
 	}
 	
 	public BufferPool bufferPool(){
-		return config.getBufferPool();
+		return eventLoop.bufferPool();
 	}
 	
 	public FileStore bufferStore(){
-		return config.getBufferStore();
+		return eventLoop.bufferStore();
 	}
 	
 	public SocketChannel channel(){
@@ -187,6 +239,7 @@ public class Session implements Closeable {
 
 	public void selectKey(SelectionKey selectKey) {
 		this.selectKey = selectKey;
+		this.interestOps = (selectKey == null || !selectKey.isValid()? 0: selectKey.interestOps());
 	}
 
 	public Session enableRead() {
@@ -205,22 +258,30 @@ public class Session implements Closeable {
 		return registerOps(SelectionKey.OP_WRITE, true);
 	}
 	
-	protected Session registerOps(int ops, boolean disable) {
+	/**
+	 * Change the interest ops: register the channel only the first time, then update
+	 *the ops of the select key directly, and skip no-op changes by the ops cache.
+	 * 
+	 * @param ops the ops to enable or disable
+	 * @param disable disable the ops if true, otherwise enable them
+	 * @return this session
+	 */
+	protected Session registerOps(final int ops, final boolean disable) {
+		final int newOps = (disable? interestOps & ~ops: interestOps | ops);
+		if(newOps == interestOps && (selectKey != null || disable)) {
+			return this;
+		}
 		try {
 			if(selectKey == null) {
-				if(disable) {
-					return this;
-				}
+				selectKey = chan.register(selector, newOps, this);
 			}else {
-				if(disable) {
-					ops = (~ops) & selectKey.interestOps();
-				}else {
-					ops = (ops)  | selectKey.interestOps();
-				}
+				selectKey.interestOps(newOps);
 			}
-			selectKey = chan.register(selector, ops, this);
-		} catch (ClosedChannelException e) {
+			interestOps = newOps;
+		} catch (final ClosedChannelException e) {
 			log.warn("Channel closed", e);
+		} catch (final CancelledKeyException e) {
+			log.warn("Select key cancelled", e);
 		}
 		return this;
 	}
@@ -250,6 +311,24 @@ public class Session implements Closeable {
 		return this;
 	}
 	
+	final Session fireWritabilityChanged() {
+		try {
+			head.fireWritabilityChanged();
+		} catch (final Throwable cause) {
+			head.fireCause(cause);
+		}
+		return this;
+	}
+	
+	final Session fireUserEvent(final Object ev) {
+		try {
+			head.fireUserEvent(ev);
+		} catch (final Throwable cause) {
+			head.fireCause(cause);
+		}
+		return this;
+	}
+	
 	/**
 	 * Write byte array into output stream.
 	 * @param b
@@ -293,52 +372,154 @@ public class Session implements Closeable {
 	 */
 	public Session write(ByteBuffer buf) throws IOException {
 		ensureOpen();
-		for(;buf.hasRemaining();) {
-			out.write(buf.get());
-		}
+		out.write(buf);
 		return this;
 	}
 	
 	/**
-	 * Write byte buffer into output buffer stream.
+	 * Write byte buffer into output buffer stream, and the position of the 
+	 *byte buffer not changed.
 	 * 
 	 * @param buf
-	 * @param off
-	 * @param len
+	 * @param off the absolute offset in the byte buffer
+	 * @param len the byte number
 	 * 
 	 * @return this session
 	 * @throws IOException 
 	 */
 	public Session write(ByteBuffer buf, int off, int len) throws IOException {
 		ensureOpen();
-		for(;off < len;) {
-			out.write(buf.get(off++));
+		if(off < 0 || len < 0 || off + len > buf.limit() || off + len < 0) {
+			throw new IndexOutOfBoundsException();
 		}
+		final ByteBuffer src = buf.duplicate();
+		src.limit(off + len).position(off);
+		out.write(src);
+		return this;
+	}
+	
+	/**
+	 * Queue the byte buffer into output buffer stream without copying. Please see 
+	 *{@link BufferOutputStream#writeRetained(ByteBuffer, Runnable)} method.
+	 * 
+	 * @param buf the byte buffer not modified until complete
+	 * @param onComplete invoked after the bytes flushed or this session closed
+	 * 
+	 * @return this session
+	 * @throws IOException
+	 */
+	public Session writeRetained(ByteBuffer buf, Runnable onComplete) throws IOException {
+		ensureOpen();
+		out.writeRetained(buf, onComplete);
+		return this;
+	}
+	
+	/**
+	 * Queue the file segment into output buffer stream for zero-copy transfer.
+	 * 
+	 * @param chan the file channel
+	 * @param position the start position in the file
+	 * @param count the byte number
+	 * 
+	 * @return this session
+	 * @throws IOException
+	 */
+	public Session sendFile(FileChannel chan, long position, long count) throws IOException {
+		return sendFile(chan, position, count, null);
+	}
+	
+	/**
+	 * Queue the file segment into output buffer stream for zero-copy transfer. Please see
+	 *{@link BufferOutputStream#sendFile(FileChannel, long, long, Runnable)} method.
+	 * 
+	 * @param chan the file channel
+	 * @param position the start position in the file
+	 * @param count the byte number
+	 * @param onComplete invoked after the segment flushed or this session closed
+	 * 
+	 * @return this session
+	 * @throws IOException
+	 */
+	public Session sendFile(FileChannel chan, long position, long count, Runnable onComplete) 
+			throws IOException {
+		ensureOpen();
+		out.sendFile(chan, position, count, onComplete);
 		return this;
 	}
 	
 	/**
 	 * <p>
-	 * Flush output buffer stream into the socket channel. First enable channel write, then
-	 * flush stream, and disable channel write after flushing completely.
+	 * Flush output buffer stream into the socket channel. Write first, and enable channel
+	 * write only if bytes remaining, then disable channel write after flushing completely.
+	 * </p>
+	 * 
+	 * <p>
+	 * The inline flush fires onFlushed() synchronously when the stream flushed completely,
+	 * and if channel write enabled, the stream is flushed when the channel writable.
 	 * </p>
 	 * @throws Exception 
 	 */
 	public final void flush() throws Exception {
+		if(flushing && isWriteEnabled()) {
+			// Socket send buffer full: flush when writable
+			return;
+		}
+		doFlush();
+	}
+	
+	final void doFlush() throws Exception {
 		flushing = true;
 		if(out.hasRemaining()) {
 			try {
-				enableWrite();
 				out.flush();
+				if(out.hasRemaining()) {
+					if(out.isSpillPending()) {
+						// Continue when the spill writer written
+						disableWrite();
+						return;
+					}
+					enableWrite();
+					return;
+				}
 			} catch (IOException e) {
 				disableWrite();
 				head.fireCause(e);
+				return;
 			}
+		}
+		if(inlineFlushes >= MAX_INLINE_FLUSHES) {
+			// Flushing in onFlushed() repeatedly: fire it when writable for bounding the stack
+			enableWrite();
 			return;
 		}
 		disableWrite();
 		flushing = false;
-		head.fireFlushed();
+		++inlineFlushes;
+		try {
+			head.fireFlushed();
+		} finally {
+			--inlineFlushes;
+		}
+	}
+	
+	/**
+	 * Continue flushing after the spill writer written the bytes to flush next.
+	 * 
+	 * @since 2018-07-16 little-pan
+	 */
+	final void onSpilled() {
+		if(!flushing || isWriteEnabled() || !isOpen()) {
+			return;
+		}
+		try {
+			doFlush();
+		} catch(final Throwable cause) {
+			head.fireCause(cause);
+		}
+	}
+	
+	final boolean isWriteEnabled() {
+		return ((interestOps & SelectionKey.OP_WRITE) != 0);
 	}
 	
 	public Session cancel(final TimeTask task) {
@@ -446,7 +627,7 @@ public class Session implements Closeable {
 		@Override
 		public void fireWrite(final Object out) throws Exception {
 			if(session.flushing){
-				session.flush();
+				session.doFlush();
 				return;
 			}
 			final EventHandler handler = prev.handler;
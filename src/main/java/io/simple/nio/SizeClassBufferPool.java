@@ -0,0 +1,393 @@
+package io.simple.nio;
+
+import java.nio.ByteBuffer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.simple.util.MathUtil;
+
+/**
+ * <p>
+ * A size-classed buffer pool: buffers are power of 2 sized, from {@link #MIN_BUFFER_SIZE} 
+ *to the chunk size, and carved out of large chunks. Each size class has its own free 
+ *list, so that a small message only pins a small buffer.
+ * </p>
+ * 
+ * <p>
+ * A new buffer is sliced from the tail of the current chunk, or split from a free buffer
+ *of a larger class if the chunk can't serve the request, and the remaining bytes of the 
+ *chunk are carved into smaller classes before a new chunk allocated. When the pool size 
+ *limit reached, the chunks that all buffers free are returned into VM, so that free 
+ *memory in other classes is not lost. The request that bigger than the chunk size is 
+ *allocated from VM, and dropped when released.
+ * </p>
+ * 
+ * <p>
+ * A released buffer is not merged with its buddy, as the buffers of mixed classes sliced 
+ *from a chunk in turn are not aligned by their sizes. So the reclaim is whole-chunk only:
+ *the free small buffers of a partly used chunk never serve a larger class.
+ * </p>
+ * 
+ * <p>
+ * Note: Not thread-safe as the other per event loop buffer pools.
+ * </p>
+ * 
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+public class SizeClassBufferPool implements BufferPool {
+	final static Logger log = LoggerFactory.getLogger(SizeClassBufferPool.class);
+	
+	public final static int DEFAULT_CHUNK_SIZE = 1 << 20;
+	
+	protected final long poolSize;
+	protected final int bufferSize;
+	protected final int bufferSizeShift;
+	protected final boolean direct;
+	protected final int chunkSize;
+	
+	// free lists of size classes
+	private final FreeList classes[];
+	// current chunk
+	private Chunk chunk;
+	
+	private long createdSize, usedSize;
+	// metrics
+	private long peakSize;
+	private long poolHits, vmAllocations, releases, allocationFailures;
+	private boolean closed;
+	
+	public SizeClassBufferPool(long poolSize) {
+		this(poolSize, DEFAULT_BUFFER_SIZE, true);
+	}
+	
+	public SizeClassBufferPool(long poolSize, int bufferSize, boolean direct) {
+		this(poolSize, bufferSize, direct, Math.max(DEFAULT_CHUNK_SIZE, bufferSize));
+	}
+	
+	public SizeClassBufferPool(long poolSize, int bufferSize, boolean direct, int chunkSize) {
+		if(poolSize   <= 0L) {
+			throw new IllegalArgumentException("poolSize must bigger than 0: " + poolSize);
+		}
+		if(bufferSize < MIN_BUFFER_SIZE) {
+			throw new IllegalArgumentException("bufferSize can't less than "+MIN_BUFFER_SIZE+": " + bufferSize);
+		}
+		if(chunkSize  < bufferSize) {
+			throw new IllegalArgumentException("chunkSize can't less than bufferSize: " + chunkSize);
+		}
+		this.poolSize   = poolSize;
+		this.bufferSize = bufferSize;
+		this.bufferSizeShift = MathUtil.bitShift(bufferSize);
+		this.direct    = direct;
+		this.chunkSize = chunkSize;
+		final int n = MathUtil.bitShift(chunkSize) - MIN_BUFFER_SHIFT + 1;
+		this.classes = new FreeList[n];
+		for(int i = 0; i < n; ++i) {
+			classes[i] = new FreeList();
+		}
+		log.info("{}: poolSize = {}, bufferSize = {}, chunkSize = {}, sizeClasses = {}, direct = {}", 
+				this, poolSize, bufferSize, chunkSize, n, direct);
+	}
+	
+	@Override
+	public Buffer allocate() throws BufferAllocateException {
+		return allocate(bufferSize);
+	}
+	
+	@Override
+	public Buffer allocate(final int minCapacity) throws BufferAllocateException {
+		checkNotClosed();
+		if(minCapacity < 0) {
+			throw new IllegalArgumentException("minCapacity negative: " + minCapacity);
+		}
+		
+		final Buffer buffer;
+		if(minCapacity > chunkSize) {
+			buffer = new Buffer(this, newByteBuffer(minCapacity));
+			++vmAllocations;
+		}else {
+			final int size = sizeOf(minCapacity);
+			final ChunkBuffer b = classes[classOf(size)].pop();
+			if(b != null) {
+				buffer = b;
+				++poolHits;
+			}else {
+				buffer = carve(size);
+				++vmAllocations;
+			}
+			((ChunkBuffer)buffer).chunk.used += size;
+		}
+		buffer.onAlloc();
+		usedSize += buffer.backed.capacity();
+		if(usedSize > peakSize) {
+			peakSize = usedSize;
+		}
+		return buffer;
+	}
+	
+	protected ChunkBuffer carve(final int size) throws BufferAllocateException {
+		Chunk c = chunk;
+		if(c != null && c.buf.remaining() >= size) {
+			return c.slice(size);
+		}
+		final ChunkBuffer b = split(size);
+		if(b != null) {
+			return b;
+		}
+		
+		if(c != null) {
+			// Carve the remaining of the current chunk into smaller classes
+			for(int rem = c.buf.remaining(); rem >= MIN_BUFFER_SIZE; rem = c.buf.remaining()) {
+				final int s = Integer.highestOneBit(rem);
+				classes[classOf(s)].push(c.slice(s));
+			}
+			chunk = null;
+		}
+		if(createdSize + chunkSize > poolSize) {
+			reclaim();
+		}
+		c = chunk = new Chunk(this, newByteBuffer(chunkSize));
+		log.debug("{}: Allocate a chunk from VM - {}", this, c.buf);
+		return c.slice(size);
+	}
+	
+	/**
+	 * Split a free buffer of the smallest larger class into halves until the size, 
+	 *the other halves pushed into the smaller classes.
+	 * 
+	 * @param size the size class
+	 * @return the buffer of the size, or null if no free buffer larger
+	 */
+	protected ChunkBuffer split(final int size) {
+		final FreeList lists[] = classes;
+		for(int i = classOf(size) + 1; i < lists.length; ++i) {
+			final ChunkBuffer b = lists[i].pop();
+			if(b == null) {
+				continue;
+			}
+			final ByteBuffer buf = b.backed;
+			for(int s = buf.capacity() >> 1; s >= size; s >>= 1) {
+				buf.limit(s << 1).position(s);
+				lists[classOf(s)].push(new ChunkBuffer(this, buf.slice(), b.chunk));
+			}
+			buf.limit(size).position(0);
+			return new ChunkBuffer(this, buf.slice(), b.chunk);
+		}
+		return null;
+	}
+	
+	/**
+	 * Return the chunks that all buffers free into VM, and remove their buffers from 
+	 *the free lists. A partly used chunk is kept whole, its free buffers not merged.
+	 */
+	protected void reclaim() {
+		int chunks = 0;
+		final Chunk cur = chunk;
+		if(cur != null && cur.used == 0) {
+			chunk = null;
+			cur.buf = null;
+			createdSize -= chunkSize;
+			++chunks;
+		}
+		for(final FreeList list : classes) {
+			final ChunkBuffer buffers[] = list.buffers;
+			final int count = list.count;
+			int n = 0;
+			for(int i = 0; i < count; ++i) {
+				final ChunkBuffer b = buffers[i];
+				final Chunk c = b.chunk;
+				if(c.used != 0) {
+					buffers[n++] = b;
+					continue;
+				}
+				if(c.buf != null) {
+					c.buf = null;
+					createdSize -= chunkSize;
+					++chunks;
+				}
+			}
+			for(int i = n; i < count; ++i) {
+				buffers[i] = null;
+			}
+			list.count = n;
+		}
+		log.debug("{}: Return {} free chunks into VM", this, chunks);
+	}
+	
+	protected ByteBuffer newByteBuffer(final int capacity) throws BufferAllocateException {
+		if(createdSize + capacity > poolSize) {
+			++allocationFailures;
+			throw new BufferAllocateException("Exceeds pool size limit");
+		}
+		final ByteBuffer buf;
+		if(direct) {
+			buf = ByteBuffer.allocateDirect(capacity);
+		}else {
+			buf = ByteBuffer.allocate(capacity);
+		}
+		createdSize += capacity;
+		return buf;
+	}
+	
+	/**
+	 * @param minCapacity
+	 * @return the size class that can hold the min capacity
+	 */
+	static int sizeOf(final int minCapacity) {
+		if(minCapacity <= MIN_BUFFER_SIZE) {
+			return MIN_BUFFER_SIZE;
+		}
+		return (Integer.highestOneBit(minCapacity - 1) << 1);
+	}
+	
+	static int classOf(final int size) {
+		return (31 - Integer.numberOfLeadingZeros(size) - MIN_BUFFER_SHIFT);
+	}
+
+	@Override
+	public void release(final Buffer buffer) {
+		checkNotClosed();
+		
+		if(buffer.bufferPool() != this) {
+			log.warn("{}: buffer not allocated from this pool - {}", this, buffer);
+			return;
+		}
+		buffer.clear().onRelease();
+		final int size = buffer.backed.capacity();
+		usedSize -= size;
+		++releases;
+		if(size > chunkSize) {
+			// Drop it into VM
+			createdSize -= size;
+			return;
+		}
+		final ChunkBuffer b = (ChunkBuffer)buffer;
+		b.chunk.used -= size;
+		classes[classOf(size)].push(b);
+	}
+	
+	protected void checkNotClosed(){
+		if(closed){
+			throw new IllegalStateException(this+" has closed");
+		}
+	}
+
+	/**
+	 * @return the bytes not in use, a free buffer of a partly used chunk only serves
+	 *  its class and the smaller classes
+	 */
+	@Override
+	public long available() {
+		return (poolSize - usedSize);
+	}
+
+	@Override
+	public long pooledSize() {
+		return (createdSize - usedSize);
+	}
+
+	@Override
+	public BufferPoolMetrics metrics() {
+		return new BufferPoolMetrics(poolSize, usedSize, peakSize, createdSize - usedSize, 
+				poolHits, vmAllocations, releases, allocationFailures);
+	}
+	
+	@Override
+	public int bufferSize() {
+		return bufferSize;
+	}
+
+	@Override
+	public int maxCapacity() {
+		return chunkSize;
+	}
+
+	@Override
+	public int bufferSizeShift() {
+		return bufferSizeShift;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return !closed;
+	}
+
+	@Override
+	public void close() {
+		for(final FreeList list : classes) {
+			list.clear();
+		}
+		chunk = null;
+		closed = true;
+	}
+	
+	@Override
+	public String toString() {
+		return "SizeClassPool";
+	}
+	
+	// A chunk and its used bytes, its buffer null after returned into VM.
+	static class Chunk {
+		final BufferPool pool;
+		ByteBuffer buf;
+		int used;
+		
+		Chunk(final BufferPool pool, final ByteBuffer buf) {
+			this.pool = pool;
+			this.buf  = buf;
+		}
+		
+		final ChunkBuffer slice(final int size) {
+			final ByteBuffer c = buf;
+			final int pos = c.position();
+			c.limit(pos + size);
+			final ByteBuffer b = c.slice();
+			c.limit(c.capacity()).position(pos + size);
+			return new ChunkBuffer(pool, b, this);
+		}
+	}
+	
+	// A buffer carved out of a chunk.
+	static class ChunkBuffer extends Buffer {
+		final Chunk chunk;
+		
+		ChunkBuffer(final BufferPool pool, final ByteBuffer backed, final Chunk chunk) {
+			super(pool, backed);
+			this.chunk = chunk;
+		}
+	}
+	
+	// Free buffer stack of a size class.
+	static class FreeList {
+		ChunkBuffer buffers[] = new ChunkBuffer[16];
+		int count;
+		
+		final ChunkBuffer pop() {
+			if(count == 0) {
+				return null;
+			}
+			final ChunkBuffer buffer = buffers[--count];
+			buffers[count] = null;
+			return buffer;
+		}
+		
+		final void push(final ChunkBuffer buffer) {
+			if(count == buffers.length) {
+				final ChunkBuffer a[] = new ChunkBuffer[count << 1];
+				System.arraycopy(buffers, 0, a, 0, count);
+				buffers = a;
+			}
+			buffers[count++] = buffer;
+		}
+		
+		final void clear() {
+			for(int i = 0; i < count; ++i) {
+				buffers[i] = null;
+			}
+			count = 0;
+		}
+	}
+
+}
@@ -0,0 +1,71 @@
+package io.simple.nio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>
+ * A read-only view of a buffer, which shares the reference count of the buffer.
+ * </p>
+ * 
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+class SlicedBuffer extends Buffer {
+	
+	final Buffer parent;
+	
+	SlicedBuffer(Buffer parent, ByteBuffer view) {
+		super(null, view);
+		if(parent instanceof SlicedBuffer) {
+			parent = ((SlicedBuffer)parent).parent;
+		}
+		this.parent = parent;
+	}
+	
+	@Override
+	public Buffer onAlloc() {
+		throw new UnsupportedOperationException("Sliced buffer can't be allocated");
+	}
+	
+	@Override
+	public ByteBuffer byteBuffer() {
+		if(parent.refCnt() == 0) {
+			throw new IllegalStateException("Buffer released");
+		}
+		return backed;
+	}
+	
+	@Override
+	public int refCnt() {
+		return parent.refCnt();
+	}
+	
+	@Override
+	public Buffer retain() {
+		parent.retain();
+		return this;
+	}
+	
+	@Override
+	public void release() {
+		parent.release();
+	}
+	
+	@Override
+	public Buffer touch(final Object hint) {
+		parent.touch(hint);
+		return this;
+	}
+	
+	@Override
+	public void onRelease() {
+		throw new UnsupportedOperationException("Sliced buffer can't be released into a pool");
+	}
+	
+	@Override
+	public String toString() {
+		return "SlicedBuffer(" + backed + ")";
+	}
+
+}
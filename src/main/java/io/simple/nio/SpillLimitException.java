@@ -0,0 +1,21 @@
+package io.simple.nio;
+
+import java.io.IOException;
+
+/**
+ * The write rejected for the session spill limit, see {@link Configuration#getSpillLimit()}.
+ * No byte of the rejected write is written into the stream.
+ * 
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+public class SpillLimitException extends IOException {
+
+	private static final long serialVersionUID = -3915487002461718405L;
+
+	public SpillLimitException(String message) {
+		super(message);
+	}
+
+}
@@ -0,0 +1,36 @@
+package io.simple.nio;
+
+/**
+ * The spill states, fired as user events through the handler chain so that
+ *producers can pause before the spill quotas exhausted.
+ *
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+public enum SpillState {
+
+	/**
+	 * The spilled bytes of the session reach the spill high watermark.
+	 */
+	SESSION_HIGH("Session spill high"),
+	/**
+	 * The spilled bytes of the session drop to the spill low watermark.
+	 */
+	SESSION_LOW("Session spill low"),
+	/**
+	 * The used bytes of the event loop buffer store reach the store high watermark.
+	 */
+	STORE_HIGH("Store spill high"),
+	/**
+	 * The used bytes of the event loop buffer store drop to the store low watermark.
+	 */
+	STORE_LOW("Store spill low");
+
+	public final String name;
+
+	private SpillState(String name) {
+		this.name = name;
+	}
+
+}
@@ -0,0 +1,273 @@
+package io.simple.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedList;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.simple.nio.store.FileRegion;
+import io.simple.nio.store.FileStore;
+import io.simple.util.MpscQueue;
+
+/**
+ * <p>
+ * The spill writer of an event loop: a background I/O thread that writes the filled 
+ *buffers of the {@link BufferOutputStream}s into their allocated file regions, so that 
+ *the selector thread doesn't block on disk.
+ * </p>
+ * 
+ * <p>
+ * The jobs are written in submission order, and handed back to the event loop that 
+ *commits the regions, returns the buffers into the pool and continues flushing in write
+ *order. The region allocation and buffer pool are only accessed by the event loop.
+ * </p>
+ * 
+ * <p>
+ * The event loop never writes a job itself: when the queue is full, the job waits in
+ *the overflow list of the event loop, and is resubmitted in order when written jobs
+ *handed back.
+ * </p>
+ * 
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+class SpillWriter implements Runnable {
+	final static Logger log = LoggerFactory.getLogger(SpillWriter.class);
+	
+	final EventLoop eventLoop;
+	final Thread thread;
+	
+	// submitted jobs, and written jobs for the event loop
+	private final MpscQueue<Job> jobs;
+	private final MpscQueue<Job> doneJobs = new MpscQueue<Job>();
+	// jobs waiting for the queue, only accessed by the event loop
+	private final LinkedList<Job> overflows = new LinkedList<Job>();
+	private volatile boolean parked, shutdown;
+	
+	SpillWriter(final EventLoop eventLoop, final String name, final int queueSize) {
+		this.eventLoop = eventLoop;
+		this.jobs = new MpscQueue<Job>(Math.min(queueSize, 1024), queueSize);
+		this.thread = new Thread(this, name);
+		thread.setDaemon(true);
+	}
+	
+	void start() {
+		thread.start();
+	}
+	
+	/**
+	 * Submit the job, called by the event loop.
+	 * 
+	 * @param job the spill job
+	 * @return false if the queue full, and the job waits in the overflow list
+	 */
+	boolean submit(final Job job) {
+		if(!overflows.isEmpty() || !offer(job)) {
+			overflows.offer(job);
+			return false;
+		}
+		return true;
+	}
+	
+	private boolean offer(final Job job) {
+		if(!jobs.offer(job)) {
+			return false;
+		}
+		if(parked) {
+			LockSupport.unpark(thread);
+		}
+		return true;
+	}
+	
+	/**
+	 * Hand the written jobs back to the streams, and resubmit the overflow jobs, 
+	 *called by the event loop.
+	 */
+	void handleDoneJobs() {
+		for(;;) {
+			final Job job = doneJobs.poll();
+			if(job == null) {
+				break;
+			}
+			job.out.onSpilled(job);
+		}
+		for(;;) {
+			final Job job = overflows.peek();
+			if(job == null) {
+				break;
+			}
+			if(job.cancelled) {
+				// the stream closed
+				overflows.poll();
+				job.release();
+				eventLoop.checkStoreWatermarks();
+				continue;
+			}
+			if(!offer(job)) {
+				break;
+			}
+			overflows.poll();
+			job.out.onResubmitted();
+		}
+	}
+	
+	/**
+	 * @return the number of jobs waiting in the overflow list
+	 */
+	int overflowCount() {
+		return overflows.size();
+	}
+	
+	boolean hasDoneJobs() {
+		return !doneJobs.isEmpty();
+	}
+	
+	/**
+	 * Stop the writer after the submitted jobs written, and release the resources 
+	 *of the jobs not handed back, called by the event loop when terminating.
+	 */
+	void shutdown() {
+		shutdown = true;
+		LockSupport.unpark(thread);
+		boolean interrupted = false;
+		for(;;) {
+			try {
+				thread.join();
+				break;
+			} catch (final InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		for(;;) {
+			final Job job = doneJobs.poll();
+			if(job == null) {
+				break;
+			}
+			job.release();
+		}
+		for(;;) {
+			final Job job = overflows.poll();
+			if(job == null) {
+				break;
+			}
+			job.release();
+		}
+		if(interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	@Override
+	public void run() {
+		log.debug("Started");
+		for(;;) {
+			final Job job = jobs.poll();
+			if(job == null) {
+				if(shutdown) {
+					break;
+				}
+				parked = true;
+				if(jobs.isEmpty() && !shutdown) {
+					LockSupport.park(this);
+				}
+				parked = false;
+				continue;
+			}
+			job.run();
+			doneJobs.offer(job);
+			eventLoop.wakeup();
+		}
+		log.debug("Terminated");
+	}
+	
+	/**
+	 * A spill job: the bytes of a filled buffer written into the allocated regions.
+	 */
+	static final class Job implements Runnable {
+		
+		final BufferOutputStream out;
+		final FileStore store;
+		final Buffer buffer;
+		final FileRegion regions[];
+		final int counts[];
+		// file segments queued behind the regions by the event loop, or null
+		LinkedList<FileRegion> segments;
+		
+		// set by the writer thread, and visible to the event loop by the done queue
+		IOException cause;
+		// set by the event loop: written means handed back
+		boolean written, cancelled, released;
+		
+		Job(BufferOutputStream out, FileStore store, Buffer buffer, FileRegion regions[]) {
+			this.out     = out;
+			this.store   = store;
+			this.buffer  = buffer;
+			this.regions = regions;
+			this.counts  = new int[regions.length];
+		}
+		
+		@Override
+		public void run() {
+			final ByteBuffer src = buffer.byteBuffer();
+			try {
+				for(int i = 0; i < regions.length && src.hasRemaining(); ++i) {
+					counts[i] = store.writeAhead(regions[i], src);
+				}
+			} catch(final Exception e) {
+				cause = (e instanceof IOException? (IOException)e: new IOException(e));
+			}
+		}
+		
+		/**
+		 * Queue the file segment behind the regions of this job, called by the event loop.
+		 */
+		void addSegment(final FileRegion segment) {
+			if(segments == null) {
+				segments = new LinkedList<FileRegion>();
+			}
+			segments.offer(segment);
+		}
+		
+		/**
+		 * Commit the written bytes into the regions, called by the event loop.
+		 */
+		void commit() {
+			for(int i = 0; i < regions.length; ++i) {
+				store.commit(regions[i], counts[i]);
+			}
+		}
+		
+		/**
+		 * Release the buffer and the regions, called by the event loop.
+		 * 
+		 * @param withRegions release the regions too
+		 */
+		void release(final boolean withRegions) {
+			if(released) {
+				return;
+			}
+			released = true;
+			buffer.release();
+			if(withRegions) {
+				for(final FileRegion region : regions) {
+					region.release();
+				}
+				if(segments != null) {
+					for(final FileRegion segment : segments) {
+						segment.release();
+					}
+				}
+			}
+		}
+		
+		void release() {
+			release(true);
+		}
+		
+	}
+
+}
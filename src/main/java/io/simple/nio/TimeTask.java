@@ -15,6 +15,11 @@ public abstract class TimeTask implements Runnable {
 	private long period;
 	private boolean cancel;
 	
+	// time task queue states since 2018-07-15 little-pan
+	TimeTaskQueue queue;
+	long deadline;
+	int index = -1;
+	
 	public TimeTask(long period) {
 		this(0L, period);
 	}
@@ -31,8 +36,36 @@ public abstract class TimeTask implements Runnable {
 		return executeTime;
 	}
 	
+	/**
+	 * Set the execute time. Delaying a scheduled task is cheap, and bringing 
+	 *it forward updates the queue of the event loop: in the loop directly, or by 
+	 *a task executed in the loop if called from other threads.
+	 * 
+	 * @param executeTime
+	 * @return this task
+	 */
 	public TimeTask executeTime(long executeTime) {
 		this.executeTime = executeTime;
+		final TimeTaskQueue queue = this.queue;
+		if(queue == null) {
+			return this;
+		}
+		final EventLoop loop = queue.eventLoop;
+		if(loop == null || loop.inEventLoop()) {
+			if(executeTime < deadline) {
+				queue.update(this);
+			}
+			return this;
+		}
+		loop.execute(new Runnable() {
+			@Override
+			public void run() {
+				final TimeTask task = TimeTask.this;
+				if(task.queue == queue) {
+					queue.update(task);
+				}
+			}
+		});
 		return this;
 	}
 	
@@ -0,0 +1,189 @@
+package io.simple.nio;
+
+/**
+ * <p>
+ * A binary heap of {@link TimeTask} ordered by the execute time, which is
+ *owned by the event loop and not thread safe.
+ * </p>
+ * 
+ * <p>
+ * The canceled tasks are removed lazily when they reach the head. And pushing
+ *the execute time of a queued task later is O(1): the task is sifted down only 
+ *when it reaches the head, so that idle tasks that delayed on each read or flush
+ *cost nothing until their old execute time.
+ * </p>
+ * 
+ * @author little-pan
+ * @since 2018-07-15
+ *
+ */
+public class TimeTaskQueue {
+	
+	// the owner event loop, or null if used standalone
+	final EventLoop eventLoop;
+	private TimeTask heap[];
+	private int size;
+	
+	public TimeTaskQueue() {
+		this(16);
+	}
+	
+	public TimeTaskQueue(int initialCapacity) {
+		this(null, initialCapacity);
+	}
+	
+	TimeTaskQueue(EventLoop eventLoop, int initialCapacity) {
+		if(initialCapacity < 1) {
+			throw new IllegalArgumentException("initialCapacity must bigger than 0: " + initialCapacity);
+		}
+		this.eventLoop = eventLoop;
+		this.heap = new TimeTask[initialCapacity];
+	}
+	
+	/**
+	 * Add the task into this queue, or update its position if queued.
+	 * 
+	 * @param task
+	 * @return false if the task has been canceled
+	 */
+	public boolean offer(final TimeTask task) {
+		if(task.isCancel()) {
+			return false;
+		}
+		if(task.queue == this) {
+			update(task);
+			return true;
+		}
+		if(task.queue != null) {
+			throw new IllegalStateException("Time task queued in other queue");
+		}
+		if(size == heap.length) {
+			final TimeTask a[] = new TimeTask[size << 1];
+			System.arraycopy(heap, 0, a, 0, size);
+			heap = a;
+		}
+		task.queue    = this;
+		task.deadline = task.executeTime();
+		siftUp(size++, task);
+		return true;
+	}
+	
+	/**
+	 * @return the nearest task that not canceled, or null if empty
+	 */
+	public TimeTask peek() {
+		for(; size > 0;) {
+			final TimeTask head = heap[0];
+			if(head.isCancel()) {
+				removeAt(0);
+				continue;
+			}
+			final long tm = head.executeTime();
+			if(tm > head.deadline) {
+				// delayed after queued
+				head.deadline = tm;
+				siftDown(0, head);
+				continue;
+			}
+			return head;
+		}
+		return null;
+	}
+	
+	/**
+	 * @return the nearest task that not canceled, or null if empty
+	 */
+	public TimeTask poll() {
+		final TimeTask head = peek();
+		if(head != null) {
+			removeAt(0);
+		}
+		return head;
+	}
+	
+	/**
+	 * Update the task position after its execute time changed earlier, called in
+	 *the owner event loop.
+	 * 
+	 * @param task
+	 */
+	final void update(final TimeTask task) {
+		final long tm = task.executeTime();
+		if(tm < task.deadline) {
+			task.deadline = tm;
+			siftUp(task.index, task);
+		}
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public boolean isEmpty() {
+		return (size == 0);
+	}
+	
+	public void clear() {
+		for(int i = 0; i < size; ++i) {
+			final TimeTask task = heap[i];
+			task.queue = null;
+			task.index = -1;
+			heap[i] = null;
+		}
+		size = 0;
+	}
+	
+	final void removeAt(final int i) {
+		final TimeTask task = heap[i];
+		task.queue = null;
+		task.index = -1;
+		
+		final int last = --size;
+		final TimeTask moved = heap[last];
+		heap[last] = null;
+		if(i != last) {
+			siftDown(i, moved);
+			if(heap[i] == moved) {
+				siftUp(i, moved);
+			}
+		}
+	}
+	
+	final void siftUp(int i, final TimeTask task) {
+		final long deadline = task.deadline;
+		for(; i > 0;) {
+			final int parent = (i - 1) >>> 1;
+			final TimeTask p = heap[parent];
+			if(deadline >= p.deadline) {
+				break;
+			}
+			heap[i]  = p;
+			p.index  = i;
+			i = parent;
+		}
+		heap[i] = task;
+		task.index = i;
+	}
+	
+	final void siftDown(int i, final TimeTask task) {
+		final long deadline = task.deadline;
+		final int half = size >>> 1;
+		for(; i < half;) {
+			int child = (i << 1) + 1;
+			TimeTask c = heap[child];
+			final int right = child + 1;
+			if(right < size && heap[right].deadline < c.deadline) {
+				c = heap[child = right];
+			}
+			if(deadline <= c.deadline) {
+				break;
+			}
+			heap[i] = c;
+			c.index = i;
+			i = child;
+		}
+		heap[i] = task;
+		task.index = i;
+	}
+
+}
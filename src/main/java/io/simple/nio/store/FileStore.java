@@ -28,9 +28,17 @@ public class FileStore implements Closeable {
 	final FileChannel chan;
 	
 	private FileRegion regionPool[];
+	// allocated region bitmap, and the next sequential region id
+	private long allocated[];
+	private int allocatedCount;
 	private long size;
 	private int maxId;
 	
+	// metrics
+	private long peakSize;
+	private long regionsAllocated, regionsReleased, allocationFailures;
+	private long bytesWritten, bytesRead;
+	
 	public FileStore(long storeSize, int regionSize) throws IOException {
 		this("FileStore", null, null, storeSize, regionSize);
 	}
@@ -45,6 +53,8 @@ public class FileStore implements Closeable {
 
 	public FileStore(String name, File file, String mode, long storeSize, int regionSize) 
 			throws IOException {
+		File f = null;
+		FileChannel ch = null;
 		boolean failed = true;
 		try {
 			final long cap = storeSize / regionSize;
@@ -52,55 +62,186 @@ public class FileStore implements Closeable {
 				throw new IllegalArgumentException("storeSize can't bigger than " + 
 						((long)Integer.MAX_VALUE * regionSize));
 			}
-			this.file = (file==null?createTempFile():file);
-			this.chan = openChannel(this.file, mode);
+			f  = (file==null?createTempFile():file);
+			ch = openChannel(f, mode);
+			this.file = f;
+			this.chan = ch;
 			this.storeSize  = storeSize;
 			this.regionPool = new FileRegion[(int)cap];
+			this.allocated  = new long[(int)((cap + 63) >>> 6)];
 			this.regionSize = regionSize;
 			this.name       = name;
 			failed = false;
 		}finally {
 			if(failed) {
-				IoUtil.close(this.chan);
-				if(file == null && this.file != null) {
-					this.file.delete();
+				IoUtil.close(ch);
+				if(file == null && f != null) {
+					f.delete();
 				}
 			}
 		}
 	}
 	
+	/**
+	 * Allocate a region: the next sequential region for write locality, or the first 
+	 *free region after it in the free bitmap.
+	 * 
+	 * @return the region
+	 * @throws IOException if no free region
+	 */
 	public FileRegion allocate() throws IOException {
 		// Sequence allocate and write for performance.
 		// @since 2018-07-07 little-pan
-		final int id;
-		if(maxId == regionPool.length) {
-			// circular
-			id = 0;
-			chan.position(0L);
-		}else {
-			id = maxId;
+		final int cap = regionPool.length;
+		int id = (maxId == cap? 0: maxId);
+		if(isAllocated(id)) {
+			// Fall back to the free bitmap
+			// @since 2018-07-16 little-pan
+			id = nextFree(id);
+			if(id == -1) {
+				++allocationFailures;
+				throw new IOException("Too many file regions");
+			}
 		}
-		
-		FileRegion region = regionPool[id];
-		if(region != null && !region.isReleased()) {
-			throw new IOException("Too many file regions");
+		final FileRegion region = newRegion(id);
+		maxId = id + 1;
+		return region;
+	}
+	
+	/**
+	 * Allocate a run of contiguous regions, the first one after the next sequential 
+	 *region preferred.
+	 * 
+	 * @param count the region number
+	 * @return the regions in id order
+	 * @throws IOException if no contiguous free regions
+	 * 
+	 * @since 2018-07-16 little-pan
+	 */
+	public FileRegion[] allocate(final int count) throws IOException {
+		final int cap = regionPool.length;
+		if(count < 1 || count > cap) {
+			throw new IllegalArgumentException("count must bigger than 0 and not bigger than " 
+					+ cap + ": " + count);
+		}
+		final int from = (maxId == cap? 0: maxId);
+		int start = findRun(from, cap, count);
+		if(start == -1) {
+			start = findRun(0, from, count);
+		}
+		if(start == -1) {
+			++allocationFailures;
+			throw new IOException("No " + count + " contiguous file regions");
 		}
+		final FileRegion regions[] = new FileRegion[count];
+		for(int i = 0; i < count; ++i) {
+			regions[i] = newRegion(start + i);
+		}
+		maxId = start + count;
+		return regions;
+	}
+	
+	/**
+	 * @return the number of the allocated regions
+	 * 
+	 * @since 2018-07-16 little-pan
+	 */
+	public int allocatedCount() {
+		return allocatedCount;
+	}
+	
+	/**
+	 * @return the number of all regions
+	 * 
+	 * @since 2018-07-16 little-pan
+	 */
+	public int capacity() {
+		return regionPool.length;
+	}
+	
+	private FileRegion newRegion(final int id) {
+		FileRegion region = regionPool[id];
 		if(region == null){
 			region = new FileRegion(this, id);
 			regionPool[id] = region;
 		}
 		region.onAllocate();
-		
-		maxId = id + 1;
+		allocated[id >>> 6] |= (1L << id);
+		++allocatedCount;
+		++regionsAllocated;
 		return region;
 	}
 	
+	private boolean isAllocated(final int id) {
+		return ((allocated[id >>> 6] & (1L << id)) != 0L);
+	}
+	
+	/**
+	 * @return the first free region id from the begin id in circular, or -1 if full
+	 */
+	private int nextFree(final int begin) {
+		if(allocatedCount == regionPool.length) {
+			return -1;
+		}
+		final int id = nextFree(begin, regionPool.length);
+		if(id != -1) {
+			return id;
+		}
+		return nextFree(0, begin);
+	}
+	
+	/**
+	 * @return the first free region id in [from, to), or -1 if none
+	 */
+	private int nextFree(final int from, final int to) {
+		final long bits[] = allocated;
+		for(int i = from; i < to;) {
+			final int w = i >>> 6;
+			// free bits from i in the word
+			final long free = ~bits[w] & (-1L << i);
+			if(free != 0L) {
+				final int id = (w << 6) + Long.numberOfTrailingZeros(free);
+				return (id < to? id: -1);
+			}
+			i = (w + 1) << 6;
+		}
+		return -1;
+	}
+	
+	/**
+	 * @return the first id of count contiguous free regions that start in [from, to), 
+	 *or -1 if none
+	 */
+	private int findRun(final int from, final int to, final int count) {
+		final int cap = regionPool.length;
+		for(int start = from; start < to;) {
+			start = nextFree(start, to);
+			if(start == -1 || start + count > cap) {
+				return -1;
+			}
+			int end = start + 1;
+			for(; end < start + count && !isAllocated(end); ++end) {
+				// scan
+			}
+			if(end == start + count) {
+				return start;
+			}
+			start = end + 1;
+		}
+		return -1;
+	}
+	
 	public void release(FileRegion region) {
 		if(region.store == this){
 			final int id  = region.id;
+			// discard the unread bytes
+			size -= region.readRemaining();
 			region.onRelease();
 			region.clear();
 			regionPool[id]= null;
+			allocated[id >>> 6] &= ~(1L << id);
+			--allocatedCount;
+			++regionsReleased;
 			return;
 		}
 		throw new IllegalArgumentException(region + ": not in " + this);
@@ -117,6 +258,35 @@ public class FileStore implements Closeable {
 		return size;
 	}
 	
+	/**
+	 * @return the metrics snapshot of this store
+	 * 
+	 * @since 2018-07-16 little-pan
+	 */
+	public FileStoreMetrics metrics() {
+		return new FileStoreMetrics(storeSize, size, peakSize, regionsAllocated, 
+				regionsReleased, allocationFailures, bytesWritten, bytesRead);
+	}
+	
+	/**
+	 * Update the size and metrics after n bytes written into this store.
+	 */
+	protected final void onWritten(final int n) {
+		size += n;
+		bytesWritten += n;
+		if(size > peakSize) {
+			peakSize = size;
+		}
+	}
+	
+	/**
+	 * Update the size and metrics after n bytes read out of this store.
+	 */
+	protected final void onRead(final int n) {
+		size -= n;
+		bytesRead += n;
+	}
+	
 	public int transferFrom(FileRegion region, ReadableByteChannel src, int count) 
 			throws IOException {
 		region.checkNotReleased();
@@ -126,9 +296,9 @@ public class FileStore implements Closeable {
 		if(size == 0){
 			return 0;
 		}
-		final long position = region.id * regionSize + widx;
+		final long position = (long)region.id * regionSize + widx;
 		final int n = (int)chan.transferFrom(src, position, size);
-		this.size  += n;
+		onWritten(n);
 		region.writeIndex(widx + n);
 		return n;
 	}
@@ -144,9 +314,9 @@ public class FileStore implements Closeable {
 		
 		// Random read
 		final int ridx = region.readIndex();
-		final long position = region.id * regionSize + ridx;
+		final long position = (long)region.id * regionSize + ridx;
 		final int n = (int)chan.transferTo(position, size, dst);
-		this.size  -= n;
+		onRead(n);
 		region.readIndex(ridx + n);
 		
 		return n;
@@ -169,12 +339,12 @@ public class FileStore implements Closeable {
 		try{
 			dst.limit(dst.position() + size);
 			final int ridx = region.readIndex();
-			final long position = region.id * regionSize + ridx;
+			final long position = (long)region.id * regionSize + ridx;
 			final int n = chan.read(dst, position);
 			if(n == -1){
 				throw new IOException(name+" truncated");
 			}
-			this.size  -= n;
+			onRead(n);
 			region.readIndex(ridx + n);
 			return n;
 		}finally{
@@ -194,7 +364,7 @@ public class FileStore implements Closeable {
 		try{
 			src.limit(src.position() + size);
 			final int widx = region.writeIndex();
-			final long position = region.id * regionSize + widx;
+			final long position = (long)region.id * regionSize + widx;
 			
 			// Keep sequence write for performance
 			if(chan.position() != position) {
@@ -206,7 +376,7 @@ public class FileStore implements Closeable {
 			for(int i = 0; n < size; n += i) {
 				i = chan.write(src);
 			}
-			this.size  += n;
+			onWritten(n);
 			region.writeIndex(widx + n);
 			
 			return n;
@@ -215,6 +385,54 @@ public class FileStore implements Closeable {
 		}
 	}
 	
+	/**
+	 * <p>
+	 * Write the bytes from the write index of the region by positional write, without 
+	 *moving the write index. It can be called by a spill thread while the region is not 
+	 *accessed by others, and the bytes are visible after {@link #commit(FileRegion, int)}
+	 *called by the owner thread.
+	 * </p>
+	 * 
+	 * @param region the allocated region
+	 * @param src the source bytes
+	 * @return the byte number written
+	 * @throws IOException if write failed
+	 * 
+	 * @since 2018-07-16 little-pan
+	 */
+	public int writeAhead(FileRegion region, ByteBuffer src) throws IOException {
+		final int size = Math.min(region.writeRemaining(), src.remaining());
+		if(size == 0){
+			return 0;
+		}
+		
+		final int lim = src.limit();
+		try{
+			src.limit(src.position() + size);
+			final long position = (long)region.id * regionSize + region.writeIndex();
+			for(int n = 0; n < size;) {
+				n += chan.write(src, position + n);
+			}
+			return size;
+		}finally{
+			src.limit(lim);
+		}
+	}
+	
+	/**
+	 * Commit the bytes written ahead into the region.
+	 * 
+	 * @param region the allocated region
+	 * @param n the byte number written ahead
+	 * 
+	 * @since 2018-07-16 little-pan
+	 */
+	public void commit(FileRegion region, int n) {
+		region.checkNotReleased();
+		region.writeIndex(region.writeIndex() + n);
+		onWritten(n);
+	}
+	
 	public void force(boolean metaData) throws IOException {
 		chan.force(metaData);
 	}
@@ -222,6 +440,8 @@ public class FileStore implements Closeable {
 	@Override
 	public void close(){
 		regionPool = null;
+		allocated  = null;
+		allocatedCount = 0;
 		maxId      = 0;
 		truncate(size = 0L);
 		IoUtil.close(chan);
@@ -0,0 +1,84 @@
+package io.simple.nio.store;
+
+/**
+ * <p>
+ * A snapshot of the {@link FileStore} metrics, which may be stale when taken out of 
+ *the event loop.
+ * </p>
+ * 
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+public class FileStoreMetrics implements FileStoreMetricsMXBean {
+	
+	private final long storeSize;
+	private final long size;
+	private final long peakSize;
+	private final long regionsAllocated;
+	private final long regionsReleased;
+	private final long allocationFailures;
+	private final long bytesWritten;
+	private final long bytesRead;
+	
+	public FileStoreMetrics(long storeSize, long size, long peakSize, long regionsAllocated, 
+			long regionsReleased, long allocationFailures, long bytesWritten, long bytesRead) {
+		this.storeSize = storeSize;
+		this.size      = size;
+		this.peakSize  = peakSize;
+		this.regionsAllocated = regionsAllocated;
+		this.regionsReleased  = regionsReleased;
+		this.allocationFailures = allocationFailures;
+		this.bytesWritten = bytesWritten;
+		this.bytesRead    = bytesRead;
+	}
+	
+	@Override
+	public long getStoreSize() {
+		return storeSize;
+	}
+	
+	@Override
+	public long getSize() {
+		return size;
+	}
+	
+	@Override
+	public long getPeakSize() {
+		return peakSize;
+	}
+	
+	@Override
+	public long getRegionsAllocated() {
+		return regionsAllocated;
+	}
+	
+	@Override
+	public long getRegionsReleased() {
+		return regionsReleased;
+	}
+	
+	@Override
+	public long getAllocationFailures() {
+		return allocationFailures;
+	}
+	
+	@Override
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+	
+	@Override
+	public long getBytesRead() {
+		return bytesRead;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("FileStoreMetrics(storeSize = %d, size = %d, peakSize = %d, "
+				+ "regionsAllocated = %d, regionsReleased = %d, allocationFailures = %d, "
+				+ "bytesWritten = %d, bytesRead = %d)", storeSize, size, peakSize, regionsAllocated, 
+				regionsReleased, allocationFailures, bytesWritten, bytesRead);
+	}
+
+}
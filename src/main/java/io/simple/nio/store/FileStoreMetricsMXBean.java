@@ -0,0 +1,55 @@
+package io.simple.nio.store;
+
+/**
+ * <p>
+ * The metrics of a {@link FileStore}, which is registered as a JMX MXBean when 
+ *{@link io.simple.nio.Configuration#isJmxEnabled()}.
+ * </p>
+ * 
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+public interface FileStoreMetricsMXBean {
+	
+	/**
+	 * @return the store size limit in bytes
+	 */
+	long getStoreSize();
+	
+	/**
+	 * @return the bytes stored and not read out
+	 */
+	long getSize();
+	
+	/**
+	 * @return the peak of the stored bytes
+	 */
+	long getPeakSize();
+	
+	/**
+	 * @return the number of the regions allocated
+	 */
+	long getRegionsAllocated();
+	
+	/**
+	 * @return the number of the regions released
+	 */
+	long getRegionsReleased();
+	
+	/**
+	 * @return the number of the region allocations failed for no free region
+	 */
+	long getAllocationFailures();
+	
+	/**
+	 * @return the bytes spilled to disk
+	 */
+	long getBytesWritten();
+	
+	/**
+	 * @return the bytes transferred back from disk
+	 */
+	long getBytesRead();
+	
+}
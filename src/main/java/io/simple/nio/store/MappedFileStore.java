@@ -0,0 +1,278 @@
+package io.simple.nio.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+
+import io.simple.util.MathUtil;
+import io.simple.util.ReflectUtil;
+
+/**
+ * <p>
+ * A file store that maps the file in fixed size {@link MappedByteBuffer} segments, so 
+ *that writing into or reading from a region is a memory copy without system call. The 
+ *segments are mapped when first accessed, and a region never spans segments.
+ * </p>
+ * 
+ * <p>
+ * The {@link #transferTo(FileRegion, int, java.nio.channels.WritableByteChannel)} and 
+ *{@link #transferFrom(FileRegion, java.nio.channels.ReadableByteChannel, int)} still work 
+ *on the file channel, which shares the page cache with the mapped segments.
+ * </p>
+ * 
+ * <p>
+ * The segments are unmapped explicitly when this store closed. If some thread still 
+ *accesses a view, such as the spill writer, the close is deferred until the last view 
+ *released, as the file truncated by the close faults the mapped pages.
+ * </p>
+ * 
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+public class MappedFileStore extends FileStore {
+	
+	public final static int DEFAULT_SEGMENT_SIZE = 1 << 26;
+	
+	public final int segmentSize;
+	private final int segmentShift;
+	// the mapped bytes of all regions
+	private final long mapSize;
+	private MappedByteBuffer segments[];
+	// views in use, and the segments of the closed store to unmap after them
+	private int views;
+	private MappedByteBuffer closedSegments[];
+	
+	public MappedFileStore(long storeSize, int regionSize) throws IOException {
+		this("MappedFileStore", null, storeSize, regionSize, DEFAULT_SEGMENT_SIZE);
+	}
+	
+	public MappedFileStore(String name, long storeSize, int regionSize) throws IOException {
+		this(name, null, storeSize, regionSize, DEFAULT_SEGMENT_SIZE);
+	}
+	
+	public MappedFileStore(String name, File file, long storeSize, int regionSize, int segmentSize) 
+			throws IOException {
+		super(name, file, "rw", storeSize, regionSize);
+		boolean failed = true;
+		try {
+			if(segmentSize < regionSize) {
+				throw new IllegalArgumentException("segmentSize can't less than regionSize: " 
+						+ segmentSize);
+			}
+			MathUtil.bitShift(regionSize);
+			this.segmentShift = MathUtil.bitShift(segmentSize);
+			this.segmentSize  = segmentSize;
+			final long mapSize = this.mapSize = (storeSize / regionSize) * regionSize;
+			final long n = (mapSize + segmentSize - 1) >> segmentShift;
+			this.segments = new MappedByteBuffer[(int)n];
+			failed = false;
+		} finally {
+			if(failed) {
+				super.close();
+			}
+		}
+	}
+	
+	/**
+	 * <p>
+	 * The segments are never modified after mapped: each access works on its own view
+	 *from {@link #view(long, int)}, so that the spill writer thread and the owner thread
+	 *don't share the position and limit of a segment.
+	 * </p>
+	 * 
+	 * @param position the file position of a region
+	 * @return the segment that contains the position, mapped if not yet
+	 * @throws IOException if map failed
+	 */
+	protected synchronized MappedByteBuffer segment(final long position) throws IOException {
+		final MappedByteBuffer segs[] = segments;
+		if(segs == null) {
+			throw new IOException(name + " closed");
+		}
+		final int i = (int)(position >>> segmentShift);
+		MappedByteBuffer seg = segs[i];
+		if(seg == null) {
+			final long start = (long)i << segmentShift;
+			final long size = Math.min(segmentSize, mapSize - start);
+			seg = segs[i] = chan.map(MapMode.READ_WRITE, start, size);
+		}
+		return seg;
+	}
+	
+	/**
+	 * @param position the file position
+	 * @param size the byte number to access
+	 * @return an independent view of the segment, its position at the file position and
+	 *  its limit after the byte number, must be released by {@link #releaseView()}
+	 * @throws IOException if map failed or this store closed
+	 */
+	protected ByteBuffer view(final long position, final int size) throws IOException {
+		final ByteBuffer view;
+		synchronized(this) {
+			view = segment(position).duplicate();
+			++views;
+		}
+		final int off = (int)(position & (segmentSize - 1));
+		view.clear();
+		view.limit(off + size);
+		view.position(off);
+		return view;
+	}
+	
+	/**
+	 * Release a view from {@link #view(long, int)}, and complete the deferred close if 
+	 *this store closed and no views left.
+	 */
+	protected void releaseView() {
+		final MappedByteBuffer segs[];
+		synchronized(this) {
+			if(--views > 0 || closedSegments == null) {
+				return;
+			}
+			segs = closedSegments;
+			closedSegments = null;
+		}
+		unmap(segs);
+		super.close();
+	}
+	
+	/**
+	 * Unmap the segments at once, or leave them to GC if not supported.
+	 * 
+	 * @param segs the mapped segments
+	 */
+	protected void unmap(final MappedByteBuffer segs[]) {
+		for(final MappedByteBuffer seg : segs) {
+			if(seg != null) {
+				ReflectUtil.unmap(seg);
+			}
+		}
+	}
+	
+	@Override
+	public int read(FileRegion region, ByteBuffer dst) throws IOException {
+		region.checkNotReleased();
+		
+		final int rem = region.readRemaining();
+		if(rem == 0){
+			return -1;
+		}
+		
+		final int size = Math.min(rem, dst.remaining());
+		if(size == 0){
+			return 0;
+		}
+		
+		final int ridx = region.readIndex();
+		final long position = (long)region.id * regionSize + ridx;
+		final ByteBuffer seg = view(position, size);
+		try {
+			dst.put(seg);
+		} finally {
+			releaseView();
+		}
+		onRead(size);
+		region.readIndex(ridx + size);
+		return size;
+	}
+	
+	@Override
+	public int write(FileRegion region, ByteBuffer src) throws IOException {
+		region.checkNotReleased();
+		
+		final int size = Math.min(region.writeRemaining(), src.remaining());
+		if(size == 0){
+			return 0;
+		}
+		
+		final int widx = region.writeIndex();
+		final long position = (long)region.id * regionSize + widx;
+		final ByteBuffer seg = view(position, size);
+		final int lim = src.limit();
+		try {
+			src.limit(src.position() + size);
+			seg.put(src);
+		} finally {
+			src.limit(lim);
+			releaseView();
+		}
+		onWritten(size);
+		region.writeIndex(widx + size);
+		return size;
+	}
+	
+	@Override
+	public int writeAhead(FileRegion region, ByteBuffer src) throws IOException {
+		final int size = Math.min(region.writeRemaining(), src.remaining());
+		if(size == 0){
+			return 0;
+		}
+		
+		final long position = (long)region.id * regionSize + region.writeIndex();
+		final ByteBuffer seg = view(position, size);
+		final int lim = src.limit();
+		try {
+			src.limit(src.position() + size);
+			seg.put(src);
+		} finally {
+			src.limit(lim);
+			releaseView();
+		}
+		return size;
+	}
+	
+	@Override
+	public void force(boolean metaData) throws IOException {
+		final MappedByteBuffer segs[];
+		synchronized(this) {
+			if(segments == null) {
+				throw new IOException(name + " closed");
+			}
+			segs = segments.clone();
+			++views;
+		}
+		try {
+			for(final MappedByteBuffer seg : segs) {
+				if(seg != null) {
+					seg.force();
+				}
+			}
+		} finally {
+			releaseView();
+		}
+		super.force(metaData);
+	}
+	
+	@Override
+	public void close() {
+		// No new view after closed, and closed after the views in use
+		final MappedByteBuffer segs[];
+		synchronized(this) {
+			segs = segments;
+			if(segs == null) {
+				return;
+			}
+			segments = null;
+			if(views > 0) {
+				closedSegments = segs;
+				return;
+			}
+		}
+		unmap(segs);
+		super.close();
+	}
+	
+	public static MappedFileStore open(String name, long storeSize, int regionSize) 
+			throws IOException {
+		return new MappedFileStore(name, null, storeSize, regionSize, DEFAULT_SEGMENT_SIZE);
+	}
+	
+	public static MappedFileStore open(String name, File file, long storeSize, int regionSize, 
+			int segmentSize) throws IOException {
+		return new MappedFileStore(name, file, storeSize, regionSize, segmentSize);
+	}
+
+}
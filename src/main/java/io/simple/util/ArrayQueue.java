@@ -66,6 +66,22 @@ public class ArrayQueue<E> {
 		return (E)elems[front];
 	}
 	
+	/**
+	 * @param index the index from the front
+	 * @return the element at the index
+	 * @throws IndexOutOfBoundsException if index out of the size
+	 */
+	public E get(final int index) {
+		if(index < 0 || index >= count) {
+			throw new IndexOutOfBoundsException("index: " + index);
+		}
+		int i = front + index;
+		if(i >= elems.length) {
+			i -= elems.length;
+		}
+		return (E)elems[i];
+	}
+	
 	public boolean offerFirst(E e) {
 		if(e == null) {
 			throw new NullPointerException();
@@ -0,0 +1,93 @@
+package io.simple.util;
+
+/**
+ * <p>
+ * An index allocator based on an intrusive int free-list, allocate and release 
+ *an index in O(1), for slot arrays such as sessions.
+ * </p>
+ * 
+ * <p>
+ * Note: Not thread-safe. An allocated index is marked in the free-list, so that 
+ *releasing an index not allocated fails fast instead of corrupting the free-list.
+ * </p>
+ * 
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+public class IndexPool {
+	
+	final static int END = -1, ALLOCATED = -2;
+	
+	// next free index of each free index, or -1 as the end, or -2 if allocated
+	private final int nexts[];
+	private int freeHead;
+	private int size;
+	
+	public IndexPool(final int capacity) {
+		if(capacity < 0) {
+			throw new IllegalArgumentException("capacity must not be negative: " + capacity);
+		}
+		this.nexts = new int[capacity];
+		for(int i = 0; i < capacity; ++i) {
+			nexts[i] = i + 1;
+		}
+		if(capacity > 0) {
+			nexts[capacity - 1] = END;
+			this.freeHead = 0;
+		}else {
+			this.freeHead = END;
+		}
+	}
+	
+	/**
+	 * @return the free index, or -1 if full
+	 */
+	public int allocate() {
+		final int i = freeHead;
+		if(i == END) {
+			return -1;
+		}
+		freeHead = nexts[i];
+		nexts[i] = ALLOCATED;
+		++size;
+		return i;
+	}
+	
+	/**
+	 * @param index the allocated index
+	 * @throws IndexOutOfBoundsException if the index out of the capacity
+	 * @throws IllegalStateException if the index not allocated, e.g. released twice
+	 */
+	public void release(final int index) {
+		if(index < 0 || index >= nexts.length) {
+			throw new IndexOutOfBoundsException("index: " + index);
+		}
+		if(nexts[index] != ALLOCATED) {
+			throw new IllegalStateException("index not allocated: " + index);
+		}
+		nexts[index] = freeHead;
+		freeHead = index;
+		--size;
+	}
+	
+	/**
+	 * @return the allocated index number
+	 */
+	public int size() {
+		return size;
+	}
+	
+	public int capacity() {
+		return nexts.length;
+	}
+	
+	public boolean isEmpty() {
+		return (size == 0);
+	}
+	
+	public boolean isFull() {
+		return (freeHead == END);
+	}
+
+}
@@ -0,0 +1,80 @@
+package io.simple.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.Callable;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * JMX utility: registers an MXBean that reads a fresh metrics snapshot of the 
+ *source for each attribute.
+ * </p>
+ * 
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+public final class JmxUtil {
+	final static Logger log = LoggerFactory.getLogger(JmxUtil.class);
+	
+	public final static String DOMAIN = "io.simple.nio";
+	
+	private JmxUtil() {}
+	
+	/**
+	 * Register an MXBean in the platform MBean server.
+	 * 
+	 * @param type the MBean type
+	 * @param name the MBean name
+	 * @param mxbeanInterface the MXBean interface that the snapshot implements
+	 * @param source the snapshot source
+	 * @return the object name, or null if failed
+	 */
+	public static <T> ObjectName register(final String type, final String name, 
+			final Class<T> mxbeanInterface, final Callable<? extends T> source) {
+		final InvocationHandler handler = new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				try {
+					return method.invoke(source.call(), args);
+				} catch(final InvocationTargetException e) {
+					throw e.getCause();
+				}
+			}
+		};
+		final T mxbean = mxbeanInterface.cast(Proxy.newProxyInstance(
+				mxbeanInterface.getClassLoader(), new Class<?>[]{mxbeanInterface}, handler));
+		try {
+			final ObjectName objName = new ObjectName(DOMAIN + ":type=" + type 
+					+ ",name=" + ObjectName.quote(name));
+			final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			server.registerMBean(new StandardMBean(mxbean, mxbeanInterface, true), objName);
+			return objName;
+		} catch(final Exception e) {
+			log.warn("Register MXBean failed: type = " + type + ", name = " + name, e);
+			return null;
+		}
+	}
+	
+	public static void unregister(final ObjectName objName) {
+		if(objName == null) {
+			return;
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objName);
+		} catch(final Exception e) {
+			log.debug("Unregister MXBean failed: " + objName, e);
+		}
+	}
+
+}
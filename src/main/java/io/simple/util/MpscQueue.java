@@ -0,0 +1,188 @@
+package io.simple.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * <p>
+ * A lock-free multi-producer single-consumer queue based on linked array chunks, 
+ *for handing over tasks from other threads to the event loop without allocating a 
+ *node per element.
+ * </p>
+ * 
+ * <p>
+ * Producers link the chunk of the next slot first, then claim the slot by CAS on the
+ *producer index and store the element into it, so that a failed chunk allocation 
+ *never leaves a claimed slot behind; the consumer polls slots in order, and only 
+ *waits in the short window that a slot claimed but not yet stored, spinning then 
+ *yielding. The queue is unbounded by default, or bounded if a capacity specified.
+ * </p>
+ * 
+ * <p>
+ * <b>Note</b>: a new chunk is allocated per chunk size offers, and the consumed 
+ *chunks are not recycled but left to GC, because a producer may still hold a stale 
+ *chunk reference. That is one array allocation per 1024 offers by default.
+ * </p>
+ * 
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+@SuppressWarnings("unchecked")
+public class MpscQueue<E> {
+	
+	final static int DEFAULT_CHUNK_SIZE = 1024;
+	// spins before yielding when waiting for a slot stored
+	final static int MAX_SPINS = 64;
+	
+	private final int chunkSize;
+	private final long capacity;
+	
+	private final AtomicLong producerIndex = new AtomicLong();
+	private volatile Chunk producerChunk;
+	
+	private final AtomicLong consumerIndex = new AtomicLong();
+	private volatile Chunk consumerChunk;
+	
+	public MpscQueue() {
+		this(DEFAULT_CHUNK_SIZE, 0L);
+	}
+	
+	/**
+	 * Create a MPSC queue.
+	 * 
+	 * @param chunkSize the slot number of each array chunk
+	 * @param capacity the max element number, or unbounded if 0
+	 */
+	public MpscQueue(final int chunkSize, final long capacity) {
+		if(chunkSize < 1) {
+			throw new IllegalArgumentException("chunkSize must bigger than 0: " + chunkSize);
+		}
+		if(capacity < 0L) {
+			throw new IllegalArgumentException("capacity must not be negative: " + capacity);
+		}
+		this.chunkSize = chunkSize;
+		this.capacity  = capacity;
+		this.producerChunk = this.consumerChunk = new Chunk(0L, chunkSize);
+	}
+	
+	/**
+	 * Offer the element into this queue, called by any thread.
+	 * 
+	 * @param e the element
+	 * @return false if this queue bounded and full, otherwise true
+	 */
+	public boolean offer(final E e) {
+		if(e == null) {
+			throw new NullPointerException();
+		}
+		
+		final int size = chunkSize;
+		for(;;) {
+			final long p = producerIndex.get();
+			if(capacity > 0L && p - consumerIndex.get() >= capacity) {
+				// Full
+				return false;
+			}
+			
+			// The consumer can't pass the slot not claimed, so its chunk is a safe start
+			Chunk chunk = producerChunk;
+			if(chunk.base > p) {
+				chunk = consumerChunk;
+				if(chunk.base > p) {
+					// the slot claimed and consumed: retry
+					continue;
+				}
+			}
+			// Link the chunk of the slot before claiming it
+			while(p >= chunk.base + size) {
+				Chunk next = chunk.next;
+				if(next == null) {
+					final Chunk c = new Chunk(chunk.base + size, size);
+					if(NEXT.compareAndSet(chunk, null, c)) {
+						next = c;
+					}else {
+						next = chunk.next;
+					}
+				}
+				chunk = next;
+			}
+			if(!producerIndex.compareAndSet(p, p + 1L)) {
+				continue;
+			}
+			
+			if(producerChunk.base < chunk.base) {
+				producerChunk = chunk;
+			}
+			chunk.slots.lazySet((int)(p - chunk.base), e);
+			return true;
+		}
+	}
+	
+	/**
+	 * Poll the head element from this queue, only called by the consumer thread.
+	 * 
+	 * @return the head element, or null if empty
+	 */
+	public E poll() {
+		final long c = consumerIndex.get();
+		if(c >= producerIndex.get()) {
+			// Empty
+			return null;
+		}
+		
+		Chunk chunk = consumerChunk;
+		int i = (int)(c - chunk.base);
+		if(i == chunkSize) {
+			// linked before the slot claimed
+			consumerChunk = chunk = chunk.next;
+			i = 0;
+		}
+		Object e;
+		for(int spins = 0; (e = chunk.slots.get(i)) == null; ++spins) {
+			// the producer of this slot storing the element
+			if(spins >= MAX_SPINS) {
+				Thread.yield();
+			}
+		}
+		chunk.slots.lazySet(i, null);
+		consumerIndex.lazySet(c + 1L);
+		return (E)e;
+	}
+	
+	public int size() {
+		final long n = producerIndex.get() - consumerIndex.get();
+		return (int)Math.min(Math.max(n, 0L), Integer.MAX_VALUE);
+	}
+	
+	public boolean isEmpty() {
+		return (consumerIndex.get() >= producerIndex.get());
+	}
+	
+	/**
+	 * Poll all elements, only called by the consumer thread.
+	 */
+	public void clear() {
+		while(poll() != null) {}
+	}
+	
+	public long capacity() {
+		return capacity;
+	}
+	
+	final static AtomicReferenceFieldUpdater<Chunk, Chunk> NEXT = 
+			AtomicReferenceFieldUpdater.newUpdater(Chunk.class, Chunk.class, "next");
+	
+	final static class Chunk {
+		final long base;
+		final AtomicReferenceArray<Object> slots;
+		volatile Chunk next;
+		
+		Chunk(long base, int size) {
+			this.base  = base;
+			this.slots = new AtomicReferenceArray<Object>(size);
+		}
+	}
+
+}
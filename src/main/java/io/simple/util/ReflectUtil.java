@@ -1,6 +1,9 @@
 package io.simple.util;
 
 import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
 
 /**
  * Reflection utils.
@@ -51,5 +54,45 @@ public final class ReflectUtil {
 			throw new RuntimeException("Can't new instance of class " + className, e);
 		}
 	}
+	
+	/**
+	 * Unmap the mapped or free the direct byte buffer at once, not waiting for GC: by
+	 *Unsafe.invokeCleaner() since JDK 9, or the cleaner of the buffer in JDK 8. The 
+	 *buffer and its views must never be accessed after this call.
+	 * 
+	 * @param buffer the mapped or direct byte buffer, not a duplicate or slice
+	 * @return true if unmapped, false if not supported
+	 * 
+	 * @since 2018-07-16 little-pan
+	 */
+	public static boolean unmap(final ByteBuffer buffer) {
+		if(buffer == null || !buffer.isDirect()) {
+			return false;
+		}
+		try {
+			final Class<?> clazz = Class.forName("sun.misc.Unsafe");
+			final Method invokeCleaner = clazz.getMethod("invokeCleaner", ByteBuffer.class);
+			final Field field = clazz.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			invokeCleaner.invoke(field.get(null), buffer);
+			return true;
+		} catch (final NoSuchMethodException e) {
+			// JDK 8
+		} catch (final Exception e) {
+			return false;
+		}
+		try {
+			final Method cleaner = buffer.getClass().getMethod("cleaner");
+			cleaner.setAccessible(true);
+			final Object c = cleaner.invoke(buffer);
+			if(c == null) {
+				return false;
+			}
+			c.getClass().getMethod("clean").invoke(c);
+			return true;
+		} catch (final Exception e) {
+			return false;
+		}
+	}
 
 }
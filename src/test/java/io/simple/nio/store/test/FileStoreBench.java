@@ -0,0 +1,86 @@
+package io.simple.nio.store.test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import io.simple.nio.store.FileRegion;
+import io.simple.nio.store.FileStore;
+import io.simple.nio.store.MappedFileStore;
+
+/**
+ * <p>
+ * Spill throughput benchmark of the file store and the memory mapped file store: 
+ *write the regions of the store in sequence as a backed up output stream does, and 
+ *then read them back.
+ * </p>
+ * 
+ * <p>
+ * Usage: java io.simple.nio.store.test.FileStoreBench [storeSizeMiB] [regionSize] [chunkSize]
+ * </p>
+ * 
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+public class FileStoreBench {
+	
+	public static void main(String args[]) throws IOException {
+		final long storeSize = (args.length > 0? Long.parseLong(args[0]): 256L) << 20;
+		final int regionSize = args.length > 1? Integer.parseInt(args[1]): 1 << 13;
+		final int chunkSize  = args.length > 2? Integer.parseInt(args[2]): 1 << 10;
+		
+		for(int r = 0; r < 3; ++r) {
+			// warm up in the first round
+			final boolean print = (r > 0);
+			final FileStore file = FileStore.open("FileStore", storeSize, regionSize);
+			try {
+				bench(file, chunkSize, print);
+			} finally {
+				file.close();
+			}
+			final FileStore mapped = MappedFileStore.open("MappedFileStore", storeSize, regionSize);
+			try {
+				bench(mapped, chunkSize, print);
+			} finally {
+				mapped.close();
+			}
+		}
+	}
+	
+	static void bench(final FileStore store, final int chunkSize, final boolean print) 
+			throws IOException {
+		final int n = (int)(store.storeSize / store.regionSize);
+		final FileRegion regions[] = new FileRegion[n];
+		final ByteBuffer chunk = ByteBuffer.allocateDirect(chunkSize);
+		
+		long ts = System.nanoTime();
+		for(int i = 0; i < n; ++i) {
+			final FileRegion region = regions[i] = store.allocate();
+			while(region.writeRemaining() > 0) {
+				chunk.clear();
+				region.write(chunk);
+			}
+		}
+		final long writeNanos = System.nanoTime() - ts;
+		
+		ts = System.nanoTime();
+		for(int i = 0; i < n; ++i) {
+			final FileRegion region = regions[i];
+			for(;;) {
+				chunk.clear();
+				if(region.read(chunk) == -1) {
+					break;
+				}
+			}
+			region.release();
+		}
+		final long readNanos = System.nanoTime() - ts;
+		
+		if(print) {
+			final double mib = store.storeSize / (double)(1 << 20);
+			System.out.println(String.format("%-16s: write %7.1f MiB/s, read %7.1f MiB/s", store, 
+					mib * 1e9 / writeNanos, mib * 1e9 / readNanos));
+		}
+	}
+
+}
@@ -14,6 +14,7 @@ import org.junit.Test;
 import static junit.framework.TestCase.*;
 import io.simple.nio.store.FileRegion;
 import io.simple.nio.store.FileStore;
+import io.simple.nio.store.FileStoreMetrics;
 
 /**
  * Test file store.
@@ -208,6 +209,128 @@ public class FileStoreTest {
 		}
 	}
 	
+	@Test
+	public void testAllocateFreeRegion() throws IOException {
+		final FileStore store = FileStore.open("TestStore", 130 * regionSize, regionSize);
+		try {
+			final FileRegion regions[] = new FileRegion[store.capacity()];
+			for(int i = 0; i < regions.length; ++i) {
+				regions[i] = store.allocate();
+				assertEquals(i, regions[i].id);
+			}
+			// a slow session holds region 0 and 65
+			for(int i = 1; i < regions.length; ++i) {
+				if(i != 65) {
+					regions[i].release();
+				}
+			}
+			assertEquals(2, store.allocatedCount());
+			assertEquals(1, store.allocate().id);
+			assertEquals(2, store.allocate().id);
+			for(int i = 3; i < regions.length - 1; ++i) {
+				final FileRegion region = store.allocate();
+				assertEquals(i >= 65? i + 1: i, region.id);
+				region.release();
+			}
+			// wrap around and skip the held regions 0-2
+			assertEquals(3, store.allocate().id);
+		} finally {
+			store.close();
+		}
+	}
+	
+	@Test
+	public void testAllocateRun() throws IOException {
+		final FileStore store = FileStore.open("TestStore", 8 * regionSize, regionSize);
+		try {
+			final FileRegion a[] = store.allocate(3);
+			for(int i = 0; i < a.length; ++i) {
+				assertEquals(i, a[i].id);
+			}
+			final FileRegion b = store.allocate();
+			assertEquals(3, b.id);
+			final FileRegion c[] = store.allocate(4);
+			assertEquals(4, c[0].id);
+			assertEquals(7, c[3].id);
+			try {
+				store.allocate(1);
+				fail("No free region");
+			} catch(final IOException e) {
+				// OK
+			}
+			
+			// free 0-2 and 5: a run of 3 wraps to 0
+			for(final FileRegion r : a) {
+				r.release();
+			}
+			c[1].release();
+			try {
+				store.allocate(4);
+				fail("No 4 contiguous regions");
+			} catch(final IOException e) {
+				// OK
+			}
+			final FileRegion d[] = store.allocate(3);
+			assertEquals(0, d[0].id);
+			assertEquals(2, d[2].id);
+			assertEquals(5, store.allocate().id);
+			assertEquals(store.capacity(), store.allocatedCount());
+		} finally {
+			store.close();
+		}
+	}
+	
+	@Test
+	public void testMetrics() throws IOException {
+		final FileRegion a = store.allocate(), b = store.allocate();
+		try {
+			store.allocate();
+			fail("Too many file regions");
+		} catch(final IOException e) {
+			// OK
+		}
+		a.write(ByteBuffer.wrap(new byte[regionSize]));
+		b.write(ByteBuffer.wrap(new byte[3]));
+		a.read(ByteBuffer.allocate(regionSize));
+		a.release();
+		b.release();
+		
+		final FileStoreMetrics metrics = store.metrics();
+		assertEquals(storeSize, metrics.getStoreSize());
+		assertEquals(0L, metrics.getSize());
+		assertEquals(regionSize + 3, metrics.getPeakSize());
+		assertEquals(2, metrics.getRegionsAllocated());
+		assertEquals(2, metrics.getRegionsReleased());
+		assertEquals(1, metrics.getAllocationFailures());
+		assertEquals(regionSize + 3, metrics.getBytesWritten());
+		assertEquals(regionSize, metrics.getBytesRead());
+	}
+	
+	@Test
+	public void testWriteAheadCommit() throws IOException {
+		final FileRegion region = store.allocate();
+		try {
+			final byte a[] = "0123456789".getBytes();
+			final ByteBuffer src = ByteBuffer.wrap(a);
+			int n = store.writeAhead(region, src);
+			assertEquals(regionSize, n);
+			assertEquals(regionSize, src.position());
+			// not visible before commit
+			assertEquals(0, region.writeIndex());
+			assertEquals(0L, store.size());
+			assertEquals(-1, region.read(ByteBuffer.allocate(regionSize)));
+			
+			store.commit(region, n);
+			assertEquals(regionSize, region.writeIndex());
+			assertEquals(regionSize, store.size());
+			final ByteBuffer dst = ByteBuffer.allocate(regionSize);
+			assertEquals(regionSize, region.read(dst));
+			assertTrue(Arrays.equals(Arrays.copyOf(a, regionSize), dst.array()));
+		} finally {
+			region.release();
+		}
+	}
+	
 	@After
 	public void destroy(){
 		store.close();
@@ -0,0 +1,218 @@
+package io.simple.nio.store.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static junit.framework.TestCase.*;
+import io.simple.nio.store.FileRegion;
+import io.simple.nio.store.MappedFileStore;
+
+/**
+ * Test memory mapped file store.
+ * 
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+public class MappedFileStoreTest {
+	
+	final static int storeSize = 1 << 5, regionSize = 1 << 3, segmentSize = 1 << 4;
+	
+	File file;
+	MappedFileStore store;
+	
+	// counts the unmapped segments, and exposes the views
+	static class TrackedStore extends MappedFileStore {
+		int unmaps;
+		
+		TrackedStore(File file) throws IOException {
+			super("TestTrackedStore", file, MappedFileStoreTest.storeSize, 
+					MappedFileStoreTest.regionSize, MappedFileStoreTest.segmentSize);
+		}
+		
+		ByteBuffer acquireView(final long position, final int size) throws IOException {
+			return view(position, size);
+		}
+		
+		void releaseAcquired() {
+			releaseView();
+		}
+		
+		@Override
+		protected void unmap(final MappedByteBuffer segs[]) {
+			++unmaps;
+			super.unmap(segs);
+		}
+	}
+	
+	@Before
+	public void init() throws IOException {
+		file  = new File("data/mapped.data");
+		store = MappedFileStore.open("TestMappedStore", file, storeSize, regionSize, segmentSize);
+	}
+	
+	@Test
+	public void testWriteRead() throws IOException {
+		final FileRegion regions[] = new FileRegion[storeSize / regionSize];
+		for(int i = 0; i < regions.length; ++i) {
+			regions[i] = store.allocate();
+			final ByteBuffer src = ByteBuffer.allocate(regionSize + 1);
+			for(int j = 0; j < src.capacity(); ++j) {
+				src.put((byte)(i * regionSize + j));
+			}
+			src.flip();
+			assertEquals(regionSize, regions[i].write(src));
+			assertEquals(1, src.remaining());
+			assertEquals(0, regions[i].write(src));
+		}
+		assertEquals(storeSize, store.size());
+		
+		for(int i = 0; i < regions.length; ++i) {
+			final ByteBuffer dst = ByteBuffer.allocate(regionSize);
+			dst.limit(3);
+			assertEquals(3, regions[i].read(dst));
+			dst.limit(dst.capacity());
+			assertEquals(regionSize - 3, regions[i].read(dst));
+			assertEquals(-1, regions[i].read(dst));
+			for(int j = 0; j < regionSize; ++j) {
+				assertEquals((byte)(i * regionSize + j), dst.get(j));
+			}
+			regions[i].release();
+		}
+		assertEquals(0L, store.size());
+	}
+	
+	@Test
+	public void testTransferTo() throws IOException {
+		final FileRegion region = store.allocate();
+		try {
+			region.write(ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5}));
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			assertEquals(5, region.transferTo(regionSize, Channels.newChannel(out)));
+			assertEquals(5, out.size());
+			assertEquals(5, out.toByteArray()[4]);
+			assertEquals(0L, store.size());
+			assertEquals(5, store.metrics().getBytesRead());
+		} finally {
+			region.release();
+		}
+	}
+	
+	@Test
+	public void testConcurrentReadWriteAhead() throws Exception {
+		final int regionSize = 1 << 8, rounds = 20000;
+		final File file = new File("data/mapped-concurrent.data");
+		final MappedFileStore store = MappedFileStore.open("TestConcurrentStore", file, 
+				1 << 14, regionSize, 1 << 12);
+		try {
+			// regions in the same segment: the owner reads and writes one, the spill
+			// writer writes ahead another
+			final FileRegion owned = store.allocate(), ahead = store.allocate();
+			final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+			final Thread writer = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						for(int i = 0; i < rounds; ++i) {
+							final ByteBuffer src = ByteBuffer.allocate(regionSize);
+							for(int j = 0; j < regionSize; ++j) {
+								src.put(j, (byte)(i + j));
+							}
+							assertEquals(regionSize, store.writeAhead(ahead, src));
+						}
+					} catch(final Throwable e) {
+						error.set(e);
+					}
+				}
+			}, "spill-writer");
+			writer.start();
+			final ByteBuffer buf = ByteBuffer.allocate(regionSize);
+			for(int i = 0; i < rounds; ++i) {
+				buf.clear();
+				for(int j = 0; j < 7; ++j) {
+					buf.put((byte)j);
+				}
+				buf.flip();
+				assertEquals(7, owned.write(buf));
+				buf.clear().limit(3);
+				assertEquals(3, owned.read(buf));
+				buf.limit(7);
+				assertEquals(4, owned.read(buf));
+				assertEquals(6, buf.get(6));
+				owned.clear();
+			}
+			writer.join();
+			assertNull(error.get());
+			
+			store.commit(ahead, regionSize);
+			final ByteBuffer dst = ByteBuffer.allocate(regionSize);
+			assertEquals(regionSize, ahead.read(dst));
+			for(int j = 0; j < regionSize; ++j) {
+				assertEquals((byte)(rounds - 1 + j), dst.get(j));
+			}
+			owned.release();
+			ahead.release();
+		} finally {
+			store.close();
+		}
+	}
+	
+	/**
+	 * Close the store with a view in use: closed and the segments unmapped only after 
+	 *the view released, and no new view after closed.
+	 */
+	@Test
+	public void testCloseWithViewInUse() throws IOException {
+		final File file = new File("data/mapped-tracked.data");
+		final TrackedStore store = new TrackedStore(file);
+		try {
+			final ByteBuffer view = store.acquireView(0L, regionSize);
+			store.close();
+			assertEquals(0, store.unmaps);
+			assertTrue(file.exists());
+			view.put((byte)1);
+			assertEquals(1, view.get(0));
+			try {
+				store.acquireView(0L, regionSize);
+				fail("Store closed");
+			} catch(final IOException e) {
+				// OK
+			}
+			store.releaseAcquired();
+			assertEquals(1, store.unmaps);
+			assertFalse(file.exists());
+		} finally {
+			store.close();
+		}
+		assertEquals(1, store.unmaps);
+	}
+	
+	@Test
+	public void testCloseUnmap() throws IOException {
+		final TrackedStore store = new TrackedStore(new File("data/mapped-tracked.data"));
+		try {
+			final FileRegion region = store.allocate();
+			region.write(ByteBuffer.wrap(new byte[]{1, 2, 3}));
+			assertEquals(3, region.read(ByteBuffer.allocate(regionSize)));
+			region.release();
+		} finally {
+			store.close();
+		}
+		assertEquals(1, store.unmaps);
+	}
+	
+	@After
+	public void destroy(){
+		store.close();
+	}
+
+}
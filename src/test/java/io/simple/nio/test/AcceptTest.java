@@ -0,0 +1,105 @@
+package io.simple.nio.test;
+
+import static junit.framework.TestCase.*;
+
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import io.simple.nio.Configuration;
+import io.simple.nio.EventLoop;
+import io.simple.nio.Session;
+import io.simple.nio.SessionInitializer;
+import io.simple.util.IoUtil;
+
+/**
+ * Test the batched accept of the server event loop.
+ *
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+public class AcceptTest {
+
+	/**
+	 * Open a burst of connections while the loop is blocked: accepted at most the max
+	 *accepts per loop in one selection, and the rest in the next passes.
+	 */
+	@Test
+	public void testBatchedAccept() throws Exception {
+		final int maxAccepts = 4, conns = 22;
+		final int port = Loopback.freePort();
+		final List<Session> sessions = new CopyOnWriteArrayList<Session>();
+		final EventLoop loop = Configuration.newBuilder()
+				.setName("test-accept")
+				.setDaemon(true)
+				.setPort(port)
+				.setMaxAcceptsPerLoop(maxAccepts)
+				.setServerInitializer(new SessionInitializer() {
+					@Override
+					public void initSession(Session session) {
+						sessions.add(session);
+					}
+				})
+				.boot();
+		final List<Socket> sockets = new ArrayList<Socket>();
+		try {
+			final CountDownLatch blocked = new CountDownLatch(1), resume = new CountDownLatch(1);
+			loop.execute(new Runnable() {
+				@Override
+				public void run() {
+					blocked.countDown();
+					try {
+						resume.await();
+					} catch (final InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+			try {
+				assertTrue(blocked.await(Loopback.TIMEOUT, TimeUnit.MILLISECONDS));
+				for(int i = 0; i < conns; ++i) {
+					final Socket so = new Socket();
+					sockets.add(so);
+					so.connect(new InetSocketAddress("127.0.0.1", port));
+				}
+			} finally {
+				resume.countDown();
+			}
+
+			final long deadline = System.currentTimeMillis() + Loopback.TIMEOUT;
+			for(; loop.acceptedCount() < conns;) {
+				assertTrue("Accept timeout", System.currentTimeMillis() < deadline);
+				Thread.sleep(10L);
+			}
+			assertEquals(conns, loop.acceptedCount());
+			assertEquals(maxAccepts, loop.maxAcceptsOnce());
+			// each selection accepts the max accepts, except the last
+			final int passes = (conns + maxAccepts - 1) / maxAccepts;
+			assertTrue(loop.acceptWakeups() >= passes);
+			assertTrue(loop.acceptFullWakeups() >= conns / maxAccepts);
+			assertTrue(loop.acceptFullWakeups() < loop.acceptWakeups());
+		} finally {
+			for(final Socket so : sockets) {
+				IoUtil.close(so);
+			}
+			for(final Session sess : sessions) {
+				sess.execute(new Runnable() {
+					@Override
+					public void run() {
+						sess.close();
+					}
+				});
+			}
+			loop.shutdown();
+			loop.awaitTermination();
+		}
+	}
+
+}
@@ -0,0 +1,127 @@
+package io.simple.nio.test;
+
+import static junit.framework.TestCase.*;
+
+import org.junit.Test;
+
+import io.simple.nio.ArrayBufferPool;
+import io.simple.nio.Buffer;
+import io.simple.nio.BufferAllocateException;
+import io.simple.nio.BufferPoolMetrics;
+
+/**
+ * Test array buffer pool.
+ * 
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+public class ArrayBufferPoolTest {
+	
+	@Test
+	public void testReuseLimit() {
+		final int bufferSize = 1 << 13;
+		final ArrayBufferPool pool = new ArrayBufferPool(bufferSize * 2, bufferSize);
+		try {
+			for(int i = 0; i < 10; ++i) {
+				pool.allocate().release();
+			}
+			assertEquals(bufferSize * 2, pool.available());
+			pool.allocate();
+			pool.allocate();
+			assertEquals(0L, pool.available());
+			try {
+				pool.allocate();
+				fail("Exceeds pool size limit");
+			} catch (final BufferAllocateException e) {
+				// OK
+			}
+		} finally {
+			pool.close();
+		}
+	}
+	
+	@Test
+	public void testSlab() {
+		final int bufferSize = 1 << 13, slabSize = 1 << 15;
+		final ArrayBufferPool pool = new ArrayBufferPool(slabSize + bufferSize * 2, bufferSize, slabSize, false);
+		try {
+			final Buffer bufs[] = new Buffer[6];
+			for(int i = 0; i < bufs.length; ++i) {
+				bufs[i] = pool.allocate();
+				assertTrue(bufs[i].byteBuffer().isDirect());
+				assertEquals(bufferSize, bufs[i].byteBuffer().capacity());
+			}
+			// slices not overlapped
+			for(int i = 0; i < bufs.length; ++i) {
+				bufs[i].byteBuffer().put(0, (byte)i);
+			}
+			for(int i = 0; i < bufs.length; ++i) {
+				assertEquals(i, bufs[i].byteBuffer().get(0));
+			}
+			try {
+				pool.allocate();
+				fail("Exceeds pool size limit");
+			} catch (final BufferAllocateException e) {
+				// OK
+			}
+		} finally {
+			pool.close();
+		}
+	}
+	
+	@Test
+	public void testPreTouch() {
+		final int bufferSize = 1 << 13, slabSize = 1 << 15;
+		final ArrayBufferPool pool = new ArrayBufferPool(slabSize * 2, bufferSize, slabSize, true);
+		try {
+			assertEquals(slabSize * 2, pool.pooledSize());
+			final Buffer buf = pool.allocate();
+			assertEquals(slabSize * 2 - bufferSize, pool.pooledSize());
+			assertEquals(slabSize * 2 - bufferSize, pool.available());
+			buf.release();
+			assertEquals(slabSize * 2, pool.available());
+		} finally {
+			pool.close();
+		}
+	}
+	
+	@Test
+	public void testMetrics() {
+		final int bufferSize = 1 << 13;
+		final ArrayBufferPool pool = new ArrayBufferPool(bufferSize * 2, bufferSize);
+		try {
+			final Buffer a = pool.allocate(), b = pool.allocate();
+			a.release();
+			pool.allocate().release();
+			try {
+				pool.allocate(bufferSize + 1);
+				fail("minCapacity bigger than bufferSize");
+			} catch (final BufferAllocateException e) {
+				// OK
+			}
+			pool.allocate();
+			try {
+				pool.allocate();
+				fail("Exceeds pool size limit");
+			} catch (final BufferAllocateException e) {
+				// OK
+			}
+			b.release();
+			
+			final BufferPoolMetrics metrics = pool.metrics();
+			assertEquals(bufferSize * 2, metrics.getPoolSize());
+			assertEquals(bufferSize, metrics.getUsedSize());
+			assertEquals(bufferSize * 2, metrics.getPeakUsedSize());
+			assertEquals(bufferSize, metrics.getPooledSize());
+			assertEquals(4, metrics.getAllocations());
+			assertEquals(2, metrics.getPoolHits());
+			assertEquals(2, metrics.getVmAllocations());
+			assertEquals(3, metrics.getReleases());
+			assertEquals(1, metrics.getAllocationFailures());
+		} finally {
+			pool.close();
+		}
+	}
+
+}
@@ -0,0 +1,78 @@
+package io.simple.nio.test;
+
+import static junit.framework.TestCase.*;
+
+import org.junit.After;
+import org.junit.Test;
+
+import io.simple.nio.Buffer;
+import io.simple.nio.BufferLeakDetector;
+import io.simple.nio.SimpleBufferPool;
+
+/**
+ * Test buffer leak detector.
+ * 
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+public class BufferLeakDetectorTest {
+	
+	@After
+	public void reset() {
+		BufferLeakDetector.setLevel(BufferLeakDetector.Level.DISABLED);
+	}
+	
+	@Test
+	public void testReleased() {
+		BufferLeakDetector.setLevel(BufferLeakDetector.Level.PARANOID);
+		final int bufferSize = 1 << 10;
+		final SimpleBufferPool pool = new SimpleBufferPool(bufferSize * 4, bufferSize);
+		try {
+			final int tracked = BufferLeakDetector.trackedCount();
+			final Buffer buf = pool.allocate();
+			assertEquals(tracked + 1, BufferLeakDetector.trackedCount());
+			buf.retain().touch("test");
+			buf.release();
+			assertEquals(tracked + 1, BufferLeakDetector.trackedCount());
+			buf.release();
+			assertEquals(tracked, BufferLeakDetector.trackedCount());
+		} finally {
+			pool.close();
+		}
+	}
+	
+	@Test
+	public void testDisabled() {
+		final int bufferSize = 1 << 10;
+		final SimpleBufferPool pool = new SimpleBufferPool(bufferSize * 4, bufferSize);
+		try {
+			final int tracked = BufferLeakDetector.trackedCount();
+			final Buffer buf = pool.allocate();
+			assertEquals(tracked, BufferLeakDetector.trackedCount());
+			buf.release();
+		} finally {
+			pool.close();
+		}
+	}
+	
+	@Test
+	public void testLeak() throws InterruptedException {
+		BufferLeakDetector.setLevel(BufferLeakDetector.Level.PARANOID);
+		final int bufferSize = 1 << 10;
+		final SimpleBufferPool pool = new SimpleBufferPool(bufferSize * 64, bufferSize);
+		try {
+			final long leaks = BufferLeakDetector.leakCount();
+			pool.allocate().touch("leak");
+			for(int i = 0; i < 50 && BufferLeakDetector.leakCount() == leaks; ++i) {
+				System.gc();
+				Thread.sleep(10L);
+				BufferLeakDetector.reportLeaks();
+			}
+			assertEquals(leaks + 1, BufferLeakDetector.leakCount());
+		} finally {
+			pool.close();
+		}
+	}
+
+}
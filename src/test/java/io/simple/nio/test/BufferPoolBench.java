@@ -0,0 +1,166 @@
+package io.simple.nio.test;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import io.simple.nio.ArrayBufferPool;
+import io.simple.nio.Buffer;
+import io.simple.nio.BufferPool;
+import io.simple.nio.BufferPoolMetrics;
+import io.simple.nio.ConcurrentBufferPool;
+
+/**
+ * <p>
+ * Multi-thread allocation benchmark of the thread-safe buffer pool and the 
+ *array buffer pool guarded by a lock, the only way to share it among threads.
+ * Each thread allocates a batch of buffers then releases them.
+ * </p>
+ * 
+ * <p>
+ * Usage: java io.simple.nio.test.BufferPoolBench [opsPerThread] [batch]
+ * </p>
+ * 
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+public class BufferPoolBench {
+	
+	static final int BUFFER_SIZE = 1 << 13;
+	
+	public static void main(String args[]) throws Exception {
+		final int ops   = args.length > 0? Integer.parseInt(args[0]): 1000000;
+		final int batch = args.length > 1? Integer.parseInt(args[1]): 4;
+		// Measure the pools, not the debug logging
+		Logger.getRootLogger().setLevel(Level.WARN);
+		
+		final int threads[] = {1, 4, 16};
+		for(int r = 0; r < 2; ++r) {
+			// warm up in the first round
+			for(final int n : threads) {
+				final long poolSize = (long)BUFFER_SIZE * n * 64;
+				bench("concurrent", new ConcurrentBufferPool(poolSize, BUFFER_SIZE, true), 
+						n, ops, batch, r == 1);
+				bench("locked-array", new LockedPool(new ArrayBufferPool(poolSize, BUFFER_SIZE)), 
+						n, ops, batch, r == 1);
+			}
+		}
+	}
+	
+	static void bench(final String name, final BufferPool pool, final int threads, 
+			final int ops, final int batch, final boolean show) throws Exception {
+		final CountDownLatch start = new CountDownLatch(1);
+		final Thread workers[] = new Thread[threads];
+		for(int i = 0; i < threads; ++i) {
+			workers[i] = new Thread() {
+				@Override
+				public void run() {
+					final Buffer bufs[] = new Buffer[batch];
+					try {
+						start.await();
+						for(int j = 0; j < ops; j += batch) {
+							for(int k = 0; k < batch; ++k) {
+								bufs[k] = pool.allocate();
+							}
+							for(int k = 0; k < batch; ++k) {
+								bufs[k].release();
+							}
+						}
+					} catch (final InterruptedException e) {
+						return;
+					}
+				}
+			};
+			workers[i].start();
+		}
+		
+		final long ts = System.nanoTime();
+		start.countDown();
+		for(final Thread t : workers) {
+			t.join();
+		}
+		final long nanos = System.nanoTime() - ts;
+		pool.close();
+		if(show) {
+			final long total = (long)ops * threads;
+			System.out.println(String.format("%-12s threads %2d: %4d ns/op, %9d ops/s", 
+					name, threads, nanos * threads / total, total * 1000000000L / nanos));
+		}
+	}
+	
+	// Share the array buffer pool among threads by a lock.
+	static class LockedPool implements BufferPool {
+		final BufferPool pool;
+		
+		LockedPool(BufferPool pool) {
+			this.pool = pool;
+		}
+
+		@Override
+		public synchronized Buffer allocate() {
+			final Buffer buffer = pool.allocate();
+			return new Buffer(this, buffer.byteBuffer()) {
+				@Override
+				public void release() {
+					synchronized(LockedPool.this) {
+						buffer.release();
+					}
+				}
+			}.onAlloc();
+		}
+
+		@Override
+		public Buffer allocate(int minCapacity) {
+			return allocate();
+		}
+
+		@Override
+		public synchronized void release(Buffer buffer) {
+			buffer.release();
+		}
+
+		@Override
+		public synchronized long available() {
+			return pool.available();
+		}
+
+		@Override
+		public synchronized long pooledSize() {
+			return pool.pooledSize();
+		}
+
+		@Override
+		public synchronized BufferPoolMetrics metrics() {
+			return pool.metrics();
+		}
+		
+		@Override
+		public int bufferSize() {
+			return pool.bufferSize();
+		}
+
+		@Override
+		public int maxCapacity() {
+			return pool.maxCapacity();
+		}
+
+		@Override
+		public int bufferSizeShift() {
+			return pool.bufferSizeShift();
+		}
+
+		@Override
+		public synchronized boolean isOpen() {
+			return pool.isOpen();
+		}
+
+		@Override
+		public synchronized void close() {
+			pool.close();
+		}
+		
+	}
+
+}
@@ -0,0 +1,561 @@
+package io.simple.nio.test;
+
+import static junit.framework.TestCase.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Test;
+
+import io.simple.nio.BufferPoolMetrics;
+import io.simple.nio.Configuration;
+import io.simple.nio.EventHandlerAdapter;
+import io.simple.nio.HandlerContext;
+import io.simple.nio.Session;
+import io.simple.nio.SessionInitializer;
+
+/**
+ * Test the buffer input and output streams of the session.
+ *
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+public class BufferStreamTest {
+
+	final static int bufferSize = 1 << 13, maxBuffers = 4;
+
+	Loopback loopback;
+	RandomAccessFile file;
+
+	@After
+	public void destroy() throws InterruptedException, IOException {
+		if(loopback != null) {
+			loopback.shutdown();
+		}
+		if(file != null) {
+			file.close();
+		}
+	}
+
+	/**
+	 * Write the test pattern in one write, and offer the store region number after
+	 *written.
+	 */
+	static SessionInitializer writer(final int total, final LinkedBlockingQueue<Integer> regions) {
+		return new SessionInitializer() {
+			@Override
+			public void initSession(Session session) {
+				session.addHandler(new EventHandlerAdapter() {
+					@Override
+					public void onConnected(HandlerContext ctx) throws Exception {
+						final byte message[] = new byte[total];
+						for(int i = 0; i < total; ++i) {
+							message[i] = Loopback.pattern(i);
+						}
+						ctx.write(message);
+						ctx.flush();
+						regions.offer(ctx.session().bufferStore().allocatedCount());
+					}
+				});
+			}
+		};
+	}
+
+	/**
+	 * Write the test pattern by the bytes before the file segment, the file segment,
+	 *and the bytes after it.
+	 */
+	static SessionInitializer segmentWriter(final int before, final RandomAccessFile file,
+			final int after, final AtomicInteger completes) {
+		return new SessionInitializer() {
+			@Override
+			public void initSession(Session session) {
+				session.addHandler(new EventHandlerAdapter() {
+					@Override
+					public void onConnected(HandlerContext ctx) throws Exception {
+						final int count = (int)file.length();
+						ctx.write(message(0, before));
+						ctx.sendFile(file.getChannel(), 0L, count, new Runnable() {
+							@Override
+							public void run() {
+								completes.incrementAndGet();
+							}
+						});
+						ctx.write(message(before + count, after));
+						ctx.flush();
+					}
+				});
+			}
+		};
+	}
+
+	/**
+	 * Write the test pattern by the small pieces across the buffer boundaries, and
+	 *count the flushed events.
+	 */
+	static SessionInitializer pieceWriter(final int total, final int piece,
+			final AtomicInteger flushes, final CountDownLatch written) {
+		return new SessionInitializer() {
+			@Override
+			public void initSession(Session session) {
+				session.addHandler(new EventHandlerAdapter() {
+					@Override
+					public void onConnected(HandlerContext ctx) throws Exception {
+						for(int off = 0; off < total; off += piece) {
+							ctx.write(message(off, Math.min(piece, total - off)));
+						}
+						ctx.flush();
+						written.countDown();
+					}
+
+					@Override
+					public void onFlushed(HandlerContext ctx) throws Exception {
+						flushes.incrementAndGet();
+						ctx.fireFlushed();
+					}
+				});
+			}
+		};
+	}
+
+	/**
+	 * Write the test pattern by heap and direct byte buffers alternately, the odd
+	 *pieces by the absolute offset and length of the buffer with padding bytes, and
+	 *count the errors of the source buffer positions.
+	 */
+	static SessionInitializer byteBufferWriter(final int total, final int piece,
+			final AtomicLong writeErrors) {
+		return new SessionInitializer() {
+			@Override
+			public void initSession(Session session) {
+				session.addHandler(new EventHandlerAdapter() {
+					@Override
+					public void onConnected(HandlerContext ctx) throws Exception {
+						final int pad = 7;
+						for(int off = 0, i = 0; off < total; off += piece, ++i) {
+							final int len = Math.min(piece, total - off);
+							final ByteBuffer buf;
+							if((i & 2) == 0) {
+								buf = ByteBuffer.allocate(pad + len + pad);
+							}else {
+								buf = ByteBuffer.allocateDirect(pad + len + pad);
+							}
+							for(int j = 0; j < buf.capacity(); ++j) {
+								buf.put(j, (byte)-1);
+							}
+							for(int j = 0; j < len; ++j) {
+								buf.put(pad + j, Loopback.pattern(off + j));
+							}
+							if((i & 1) == 0) {
+								buf.position(pad).limit(pad + len);
+								ctx.write(buf);
+								if(buf.hasRemaining()) {
+									writeErrors.incrementAndGet();
+								}
+							}else {
+								// the offset and the length, not the end index
+								ctx.write(buf, pad, len);
+								if(buf.position() != 0 || buf.limit() != buf.capacity()) {
+									writeErrors.incrementAndGet();
+								}
+							}
+						}
+						ctx.flush();
+					}
+				});
+			}
+		};
+	}
+
+	/**
+	 * Queue the test pattern by the retained direct buffers without copying, and count
+	 *the completions before the flush and after it.
+	 */
+	static SessionInitializer retainedWriter(final int pieces, final int piece,
+			final AtomicInteger completes, final AtomicInteger early,
+			final AtomicLong writeErrors) {
+		return new SessionInitializer() {
+			@Override
+			public void initSession(Session session) {
+				session.addHandler(new EventHandlerAdapter() {
+					@Override
+					public void onConnected(HandlerContext ctx) throws Exception {
+						for(int i = 0; i < pieces; ++i) {
+							final ByteBuffer buf = ByteBuffer.allocateDirect(piece);
+							buf.put(message(i * piece, piece)).flip();
+							ctx.writeRetained(buf, new Runnable() {
+								@Override
+								public void run() {
+									if(buf.position() != 0 || buf.limit() != piece) {
+										writeErrors.incrementAndGet();
+									}
+									completes.incrementAndGet();
+								}
+							});
+						}
+						early.set(completes.get());
+						ctx.flush();
+					}
+				});
+			}
+		};
+	}
+
+	static byte[] message(final long position, final int length) {
+		final byte message[] = new byte[length];
+		for(int i = 0; i < length; ++i) {
+			message[i] = Loopback.pattern(position + i);
+		}
+		return message;
+	}
+
+	static RandomAccessFile segmentFile(final long position, final int length) throws IOException {
+		final File f = File.createTempFile("segment", ".bin");
+		f.deleteOnExit();
+		final RandomAccessFile file = new RandomAccessFile(f, "rw");
+		file.write(message(position, length));
+		return file;
+	}
+
+	void testSendFile(final Configuration.Builder serverConfig, final int before,
+			final int after) throws Exception {
+		final int count = 1 << 20, total = before + count + after;
+		final AtomicInteger completes = new AtomicInteger();
+		final AtomicLong received = new AtomicLong(), errors = new AtomicLong();
+		file = segmentFile(before, count);
+		loopback = new Loopback(serverConfig.setBufferSize(1 << 12),
+				segmentWriter(before, file, after, completes),
+				Configuration.newBuilder().setAutoRead(false), Loopback.reader(received, errors));
+		final Session sessions[] = loopback.connect();
+		final Session srv = sessions[0], cli = sessions[1];
+
+		// spilled when the peer doesn't read
+		Loopback.await(srv, new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return srv.bufferStore().allocatedCount() > 0;
+			}
+		});
+		enableRead(cli);
+		Loopback.await(cli, new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return received.get() >= total;
+			}
+		});
+		assertEquals(total, received.get());
+		assertEquals(0L, errors.get());
+		assertEquals(1, completes.get());
+		assertEquals(0L, storeRegions(srv));
+	}
+
+	@Test
+	public void testSendFileBehindSpill() throws Exception {
+		testSendFile(Configuration.newBuilder().setMaxWriteBuffers(4), 1 << 20, 1 << 20);
+	}
+
+	@Test
+	public void testSendFileBehindAsyncSpill() throws Exception {
+		testSendFile(Configuration.newBuilder().setMaxWriteBuffers(4).setSpillAsync(true)
+				.setSpillQueueSize(1), 1 << 20, 1 << 20);
+	}
+
+	@Test
+	public void testSendFileNoLocalSlot() throws Exception {
+		testSendFile(Configuration.newBuilder().setMaxWriteBuffers(1), 0, 1 << 20);
+	}
+
+	static long storeRegions(final Session session) throws Exception {
+		return Loopback.call(session, new Callable<Long>() {
+			@Override
+			public Long call() {
+				return (long)session.bufferStore().allocatedCount();
+			}
+		});
+	}
+
+	static void enableRead(final Session session) {
+		session.execute(new Runnable() {
+			@Override
+			public void run() {
+				session.enableRead();
+			}
+		});
+	}
+
+	static BufferPoolMetrics metrics(final Session session) throws Exception {
+		return Loopback.call(session, new Callable<BufferPoolMetrics>() {
+			@Override
+			public BufferPoolMetrics call() {
+				return session.bufferPool().metrics();
+			}
+		});
+	}
+
+	@Test
+	public void testGatheringWritePartialFlush() throws Exception {
+		final int total = 1 << 23, bufSize = 1 << 16;
+		final AtomicInteger flushes = new AtomicInteger();
+		final CountDownLatch written = new CountDownLatch(1);
+		final AtomicLong received = new AtomicLong(), errors = new AtomicLong();
+		loopback = new Loopback(
+				Configuration.newBuilder().setBufferSize(bufSize).setMaxWriteBuffers(256),
+				pieceWriter(total, 1000, flushes, written),
+				Configuration.newBuilder().setAutoRead(false),
+				Loopback.reader(received, errors));
+		final Session sessions[] = loopback.connect();
+		final Session srv = sessions[0], cli = sessions[1];
+
+		// the socket send buffer full before flushed completely: keep the rest in buffers
+		assertTrue("Write timeout", written.await(Loopback.TIMEOUT, TimeUnit.MILLISECONDS));
+		assertEquals(0, flushes.get());
+		assertEquals(0L, storeRegions(srv));
+		assertTrue(metrics(srv).getUsedSize() > 0L);
+
+		enableRead(cli);
+		Loopback.await(cli, new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return received.get() >= total;
+			}
+		});
+		assertEquals(total, received.get());
+		assertEquals(0L, errors.get());
+		Loopback.await(srv, new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return flushes.get() > 0;
+			}
+		});
+		assertEquals(1, flushes.get());
+		// the flushed buffers released
+		assertEquals(0L, metrics(srv).getUsedSize());
+	}
+
+	@Test
+	public void testScatteringRead() throws Exception {
+		final int total = 1 << 20, bufSize = 1 << 12;
+		final LinkedBlockingQueue<Integer> regions = new LinkedBlockingQueue<Integer>();
+		final AtomicLong received = new AtomicLong(), errors = new AtomicLong();
+		loopback = new Loopback(Configuration.newBuilder(), writer(total, regions),
+				Configuration.newBuilder().setBufferSize(bufSize).setMaxReadBuffers(maxBuffers * 2)
+					.setAutoRead(false),
+				Loopback.reader(received, errors));
+		final Session sessions[] = loopback.connect();
+		final Session cli = sessions[1];
+
+		assertNotNull("Write timeout", regions.poll(Loopback.TIMEOUT, TimeUnit.MILLISECONDS));
+		enableRead(cli);
+		Loopback.await(cli, new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return received.get() >= total;
+			}
+		});
+		assertEquals(total, received.get());
+		assertEquals(0L, errors.get());
+		// the staged buffers doubled up to the max read buffers in one read
+		assertEquals(maxBuffers * 2 * bufSize, metrics(cli).getPeakUsedSize());
+	}
+
+	@Test
+	public void testIdleSessionHoldsNoReadBuffer() throws Exception {
+		final int total = 1 << 16;
+		final LinkedBlockingQueue<Integer> regions = new LinkedBlockingQueue<Integer>();
+		final AtomicLong received = new AtomicLong(), errors = new AtomicLong();
+		loopback = new Loopback(Configuration.newBuilder(), writer(total, regions),
+				Configuration.newBuilder().setBufferSize(bufferSize).setAutoRead(false),
+				Loopback.reader(received, errors));
+		final Session sessions[] = loopback.connect();
+		final Session cli = sessions[1];
+
+		// no read buffer allocated before reading
+		assertNotNull("Write timeout", regions.poll(Loopback.TIMEOUT, TimeUnit.MILLISECONDS));
+		assertEquals(0L, metrics(cli).getUsedSize());
+
+		enableRead(cli);
+		Loopback.await(cli, new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return received.get() >= total;
+			}
+		});
+		assertEquals(total, received.get());
+		assertEquals(0L, errors.get());
+		// the read buffers released after read out
+		assertTrue(metrics(cli).getPeakUsedSize() > 0L);
+		assertEquals(0L, metrics(cli).getUsedSize());
+	}
+
+	@Test
+	public void testWriteByteBuffers() throws Exception {
+		final int total = 1 << 20;
+		final AtomicLong received = new AtomicLong(), errors = new AtomicLong();
+		final AtomicLong writeErrors = new AtomicLong();
+		// the pieces across the buffer boundaries, and spilled over the write buffers
+		loopback = new Loopback(
+				Configuration.newBuilder().setBufferSize(1 << 12).setMaxWriteBuffers(maxBuffers),
+				byteBufferWriter(total, 5000, writeErrors),
+				Configuration.newBuilder().setAutoRead(false),
+				Loopback.reader(received, errors));
+		final Session sessions[] = loopback.connect();
+		final Session srv = sessions[0], cli = sessions[1];
+
+		Loopback.await(srv, new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return srv.bufferStore().allocatedCount() > 0;
+			}
+		});
+		enableRead(cli);
+		Loopback.await(cli, new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return received.get() >= total;
+			}
+		});
+		assertEquals(total, received.get());
+		assertEquals(0L, errors.get());
+		assertEquals(0L, writeErrors.get());
+		assertEquals(0L, storeRegions(srv));
+	}
+
+	@Test
+	public void testWriteByteBufferBounds() throws Exception {
+		final AtomicLong received = new AtomicLong(), errors = new AtomicLong();
+		loopback = new Loopback(Configuration.newBuilder(), SessionInitializer.NOOP,
+				Configuration.newBuilder(), Loopback.reader(received, errors));
+		final Session srv = loopback.connect()[0];
+
+		final String result = Loopback.call(srv, new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				final ByteBuffer buf = ByteBuffer.allocate(16);
+				buf.limit(12);
+				// the offset plus the length beyond the limit
+				try {
+					srv.write(buf, 8, 8);
+					return "Write beyond limit";
+				} catch(final IndexOutOfBoundsException e) {
+					// OK
+				}
+				// the length less than the offset is valid
+				srv.write(buf, 8, 4);
+				return null;
+			}
+		});
+		assertNull(result, result);
+	}
+
+	@Test
+	public void testWriteRetained() throws Exception {
+		final int pieces = 16, piece = 3000, total = pieces * piece;
+		final AtomicInteger completes = new AtomicInteger(), early = new AtomicInteger(-1);
+		final AtomicLong received = new AtomicLong(), errors = new AtomicLong();
+		final AtomicLong writeErrors = new AtomicLong();
+		loopback = new Loopback(Configuration.newBuilder(),
+				retainedWriter(pieces, piece, completes, early, writeErrors),
+				Configuration.newBuilder(), Loopback.reader(received, errors));
+		final Session srv = loopback.connect()[0];
+
+		Loopback.await(srv, new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return completes.get() >= pieces;
+			}
+		});
+		// queued without copying until flushed
+		assertEquals(0, early.get());
+		assertEquals(pieces, completes.get());
+		assertEquals(0L, writeErrors.get());
+		assertEquals(0L, metrics(srv).getUsedSize());
+		Loopback.await(srv, new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return received.get() >= total;
+			}
+		});
+		assertEquals(total, received.get());
+		assertEquals(0L, errors.get());
+	}
+
+	/**
+	 * Close the session with the retained buffer still queued: completed once by
+	 *the close.
+	 */
+	@Test
+	public void testWriteRetainedReleasedOnClose() throws Exception {
+		final AtomicInteger completes = new AtomicInteger();
+		loopback = new Loopback(Configuration.newBuilder(), SessionInitializer.NOOP,
+				Configuration.newBuilder().setAutoRead(false), SessionInitializer.NOOP);
+		final Session srv = loopback.connect()[0];
+
+		final String result = Loopback.call(srv, new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				final ByteBuffer buf = ByteBuffer.wrap(message(0L, 1000));
+				srv.writeRetained(buf, new Runnable() {
+					@Override
+					public void run() {
+						completes.incrementAndGet();
+					}
+				});
+				if(completes.get() != 0) {
+					return "Completed before flushed";
+				}
+				srv.close();
+				if(completes.get() != 1) {
+					return "Not completed by close: " + completes.get();
+				}
+				return null;
+			}
+		});
+		assertNull(result, result);
+		assertEquals(1, completes.get());
+	}
+
+	@Test
+	public void testBigMessageSizeClassed() throws Exception {
+		final int total = 1 << 20;
+		final LinkedBlockingQueue<Integer> regions = new LinkedBlockingQueue<Integer>();
+		final AtomicLong received = new AtomicLong(), errors = new AtomicLong();
+		loopback = new Loopback(
+				Configuration.newBuilder().setBufferSize(bufferSize).setBufferSizeClassed(true)
+					.setMaxWriteBuffers(maxBuffers),
+				writer(total, regions),
+				Configuration.newBuilder().setBufferSize(bufferSize).setBufferSizeClassed(true)
+					.setMaxReadBuffers(maxBuffers).setAutoRead(false),
+				Loopback.reader(received, errors));
+		final Session sessions[] = loopback.connect();
+		final Session srv = sessions[0], cli = sessions[1];
+
+		// the bigger local buffers still bounded by the write HWM in bytes, then spilled
+		final Integer n = regions.poll(Loopback.TIMEOUT, TimeUnit.MILLISECONDS);
+		assertNotNull("Write timeout", n);
+		assertTrue(n.intValue() > 0);
+		assertTrue(metrics(srv).getPeakUsedSize() <= maxBuffers * bufferSize);
+
+		enableRead(cli);
+		Loopback.await(cli, new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return received.get() >= total;
+			}
+		});
+		assertEquals(total, received.get());
+		assertEquals(0L, errors.get());
+		// the read buffers bounded by the read HWM in bytes
+		assertTrue(metrics(cli).getPeakUsedSize() <= (maxBuffers + 1) * bufferSize);
+	}
+
+}
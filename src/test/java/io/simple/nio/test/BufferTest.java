@@ -0,0 +1,189 @@
+package io.simple.nio.test;
+
+import static junit.framework.TestCase.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import io.simple.nio.Buffer;
+import io.simple.nio.CompositeBuffer;
+import io.simple.nio.Configuration;
+import io.simple.nio.Session;
+import io.simple.nio.SessionInitializer;
+import io.simple.nio.SimpleBufferPool;
+
+/**
+ * Test reference counted buffer, slice and composite buffer.
+ * 
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+public class BufferTest {
+	
+	@Test
+	public void testRefCnt() {
+		final int bufferSize = 1 << 10;
+		final SimpleBufferPool pool = new SimpleBufferPool(bufferSize * 2, bufferSize);
+		try {
+			final Buffer buf = pool.allocate();
+			assertEquals(1, buf.refCnt());
+			buf.retain();
+			assertEquals(2, buf.refCnt());
+			buf.release();
+			assertEquals(1, buf.refCnt());
+			assertEquals(bufferSize, pool.available());
+			buf.release();
+			assertEquals(0, buf.refCnt());
+			assertEquals(bufferSize * 2, pool.available());
+			try {
+				buf.release();
+				fail("Buffer released");
+			} catch(final IllegalStateException e) {
+				// OK
+			}
+			try {
+				buf.byteBuffer();
+				fail("Buffer released");
+			} catch(final IllegalStateException e) {
+				// OK
+			}
+		} finally {
+			pool.close();
+		}
+	}
+	
+	@Test
+	public void testSlice() {
+		final int bufferSize = 1 << 10;
+		final SimpleBufferPool pool = new SimpleBufferPool(bufferSize * 2, bufferSize);
+		try {
+			final Buffer buf = pool.allocate();
+			final ByteBuffer b = buf.byteBuffer();
+			for(int i = 0; i < 100; ++i) {
+				b.put((byte)i);
+			}
+			b.flip();
+			
+			final Buffer slice = buf.retainedSlice(10, 20);
+			assertEquals(2, buf.refCnt());
+			assertEquals(2, slice.refCnt());
+			final ByteBuffer s = slice.byteBuffer();
+			assertEquals(20, s.remaining());
+			assertEquals(10, s.get());
+			assertEquals(0, b.position());
+			try {
+				s.put(0, (byte)0);
+				fail("Slice is read-only");
+			} catch(final ReadOnlyBufferException e) {
+				// OK
+			}
+			
+			final Buffer sub = slice.slice(5, 5);
+			assertEquals(15, sub.byteBuffer().get());
+			try {
+				buf.slice(bufferSize - 1, 2);
+				fail("Slice out of bounds");
+			} catch(final IndexOutOfBoundsException e) {
+				// OK
+			}
+			
+			// the parent is still in use by the slice
+			buf.release();
+			assertEquals(1, slice.refCnt());
+			assertEquals(bufferSize, pool.available());
+			slice.release();
+			assertEquals(0, buf.refCnt());
+			assertEquals(bufferSize * 2, pool.available());
+
+		} finally {
+			pool.close();
+		}
+	}
+	
+	@Test
+	public void testComposite() {
+		final int bufferSize = 1 << 10;
+		final SimpleBufferPool pool = new SimpleBufferPool(bufferSize * 2, bufferSize);
+		try {
+			final Buffer a = pool.allocate(), b = pool.allocate();
+			a.byteBuffer().put(new byte[]{1, 2, 3}).flip();
+			b.byteBuffer().put(new byte[]{4, 5}).flip();
+			
+			final CompositeBuffer frame = new CompositeBuffer(1)
+				.addComponent(a.retainedSlice(1, 2))
+				.addComponent(b.retainedSlice(0, 2));
+			a.release();
+			b.release();
+			assertEquals(0L, pool.available());
+			
+			assertEquals(2, frame.numComponents());
+			assertEquals(4, frame.remaining());
+			assertEquals(2, frame.get());
+			final byte bytes[] = new byte[4];
+			assertEquals(3, frame.get(bytes, 0, bytes.length));
+			assertEquals(3, bytes[0]);
+			assertEquals(4, bytes[1]);
+			assertEquals(5, bytes[2]);
+			assertFalse(frame.hasRemaining());
+			assertEquals(-1, frame.get(bytes, 0, bytes.length));
+			
+			frame.retain().release();
+			assertEquals(0L, pool.available());
+			frame.release();
+			assertEquals(0, frame.refCnt());
+			assertEquals(bufferSize * 2, pool.available());
+		} finally {
+			pool.close();
+		}
+	}
+
+	@Test
+	public void testReleaseOutsideEventLoop() throws Exception {
+		final Loopback loopback = new Loopback(Configuration.newBuilder(), SessionInitializer.NOOP,
+				Configuration.newBuilder(), SessionInitializer.NOOP);
+		final CountDownLatch blocked = new CountDownLatch(1), resume = new CountDownLatch(1);
+		try {
+			final Session srv = loopback.connect()[0];
+			final Buffer buf = Loopback.call(srv, new Callable<Buffer>() {
+				@Override
+				public Buffer call() {
+					return srv.alloc();
+				}
+			});
+			final long available = buf.bufferPool().available();
+			
+			// block the event loop, and release the buffer in this thread
+			srv.execute(new Runnable() {
+				@Override
+				public void run() {
+					blocked.countDown();
+					try {
+						resume.await();
+					} catch(final InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+			blocked.await();
+			buf.release();
+			// handed back to the event loop, not released into the pool by this thread
+			assertEquals(available, buf.bufferPool().available());
+			resume.countDown();
+			Loopback.await(srv, new Callable<Boolean>() {
+				@Override
+				public Boolean call() {
+					return buf.bufferPool().available() == available + buf.bufferPool().bufferSize();
+				}
+			});
+		} finally {
+			resume.countDown();
+			loopback.shutdown();
+		}
+	}
+
+}
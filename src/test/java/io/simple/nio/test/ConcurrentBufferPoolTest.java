@@ -0,0 +1,213 @@
+package io.simple.nio.test;
+
+import static junit.framework.TestCase.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import io.simple.nio.Buffer;
+import io.simple.nio.BufferAllocateException;
+import io.simple.nio.ConcurrentBufferPool;
+
+/**
+ * Test the thread-safe buffer pool by multiple threads.
+ *
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+public class ConcurrentBufferPoolTest {
+
+	final static int bufferSize = 1 << 10, magazineSize = 4, threads = 8;
+
+	/**
+	 * Allocate and release by the threads, each buffer checked not shared by
+	 *another thread when in use.
+	 */
+	@Test
+	public void testAllocateRelease() throws Exception {
+		final ConcurrentBufferPool pool = new ConcurrentBufferPool(1L << 20, bufferSize,
+				false, magazineSize);
+		final AtomicInteger errors = new AtomicInteger();
+		final CountDownLatch start = new CountDownLatch(1);
+		final List<Thread> workers = new ArrayList<Thread>();
+		for(int i = 0; i < threads; ++i) {
+			final byte id = (byte)(i + 1);
+			final Thread t = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						final Buffer held[] = new Buffer[magazineSize * 3];
+						for(int round = 0; round < 2000; ++round) {
+							final int n = 1 + (round % held.length);
+							for(int j = 0; j < n; ++j) {
+								held[j] = pool.allocate();
+								held[j].byteBuffer().put(0, id).put(bufferSize - 1, id);
+							}
+							Thread.yield();
+							for(int j = 0; j < n; ++j) {
+								final ByteBuffer b = held[j].byteBuffer();
+								if(b.get(0) != id || b.get(bufferSize - 1) != id) {
+									errors.incrementAndGet();
+								}
+								held[j].release();
+								held[j] = null;
+							}
+						}
+					} catch(final Throwable e) {
+						e.printStackTrace();
+						errors.incrementAndGet();
+					}
+				}
+			}, "pool-test-" + i);
+			workers.add(t);
+			t.start();
+		}
+		start.countDown();
+		for(final Thread t : workers) {
+			t.join();
+		}
+		try {
+			assertEquals(0, errors.get());
+			assertEquals(1L << 20, pool.available());
+			assertTrue(pool.pooledSize() > 0L);
+		} finally {
+			pool.close();
+		}
+		// the magazines of the terminated threads drained too
+		assertEquals(0L, pool.pooledSize());
+	}
+
+	/**
+	 * Close the pool when the threads cache buffers in their magazines and hold
+	 *buffers in use, which released after closed.
+	 */
+	@Test
+	public void testCloseDrainsMagazines() throws Exception {
+		final ConcurrentBufferPool pool = new ConcurrentBufferPool(1L << 20, bufferSize,
+				true, magazineSize);
+		final CountDownLatch cached = new CountDownLatch(threads), closed = new CountDownLatch(1);
+		final AtomicInteger errors = new AtomicInteger();
+		final List<Thread> workers = new ArrayList<Thread>();
+		for(int i = 0; i < threads; ++i) {
+			final Thread t = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						final Buffer held[] = new Buffer[magazineSize * 2 + 1];
+						for(int j = 0; j < held.length; ++j) {
+							held[j] = pool.allocate();
+						}
+						// cache some in the magazine, and hold one
+						for(int j = 1; j < held.length; ++j) {
+							held[j].release();
+						}
+						cached.countDown();
+						closed.await();
+						held[0].release();
+						try {
+							pool.allocate();
+							errors.incrementAndGet();
+						} catch(final IllegalStateException e) {
+							// OK
+						}
+					} catch(final Throwable e) {
+						e.printStackTrace();
+						errors.incrementAndGet();
+					}
+				}
+			}, "pool-test-" + i);
+			workers.add(t);
+			t.start();
+		}
+		cached.await();
+		assertEquals((1L << 20) - (long)threads * bufferSize, pool.available());
+		pool.close();
+		assertEquals(0L, pool.pooledSize());
+		closed.countDown();
+		for(final Thread t : workers) {
+			t.join();
+		}
+		assertEquals(0, errors.get());
+		assertEquals(1L << 20, pool.available());
+		assertEquals(0L, pool.pooledSize());
+	}
+
+	/**
+	 * Allocate and release by many short-lived threads, each leaves buffers in its
+	 *magazine when terminated: these buffers reclaimed instead of exceeding the limit.
+	 */
+	@Test
+	public void testShortLivedThreads() throws Exception {
+		final int limit = magazineSize * 2;
+		final ConcurrentBufferPool pool = new ConcurrentBufferPool(bufferSize * limit, bufferSize,
+				false, magazineSize);
+		final AtomicInteger errors = new AtomicInteger();
+		try {
+			for(int i = 0; i < 100; ++i) {
+				final Thread t = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							final Buffer held[] = new Buffer[magazineSize - 1];
+							for(int j = 0; j < held.length; ++j) {
+								held[j] = pool.allocate();
+							}
+							for(int j = 0; j < held.length; ++j) {
+								held[j].release();
+							}
+						} catch(final Throwable e) {
+							e.printStackTrace();
+							errors.incrementAndGet();
+						}
+					}
+				}, "short-lived-" + i);
+				t.start();
+				t.join();
+			}
+			assertEquals(0, errors.get());
+			assertEquals((long)bufferSize * limit, pool.available());
+
+			// all buffers available for the live thread
+			final Buffer held[] = new Buffer[limit];
+			for(int j = 0; j < limit; ++j) {
+				held[j] = pool.allocate();
+			}
+			for(int j = 0; j < limit; ++j) {
+				held[j].release();
+			}
+		} finally {
+			pool.close();
+		}
+		// the created size returns to 0
+		assertEquals((long)bufferSize * limit, pool.available());
+		assertEquals(0L, pool.pooledSize());
+	}
+
+	@Test
+	public void testLimit() {
+		final ConcurrentBufferPool pool = new ConcurrentBufferPool(bufferSize * 2, bufferSize,
+				false, magazineSize);
+		try {
+			final Buffer a = pool.allocate();
+			pool.allocate();
+			try {
+				pool.allocate();
+				fail("Exceeds pool size limit");
+			} catch(final BufferAllocateException e) {
+				// OK
+			}
+			a.release();
+			assertSame(a, pool.allocate());
+		} finally {
+			pool.close();
+		}
+	}
+
+}
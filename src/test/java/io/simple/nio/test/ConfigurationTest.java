@@ -0,0 +1,56 @@
+package io.simple.nio.test;
+
+import static junit.framework.TestCase.*;
+
+import org.junit.Test;
+
+import io.simple.nio.Configuration;
+import io.simple.nio.EventLoop;
+import io.simple.nio.SessionInitializer;
+
+/**
+ * Test the configuration builder.
+ *
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+public class ConfigurationTest {
+
+	static Configuration.Builder smallPool() {
+		final int bufferSize = 1 << 13;
+		return Configuration.newBuilder()
+				.setName("test-config")
+				.setDaemon(true)
+				.setBufferSize(bufferSize)
+				.setPoolSize(bufferSize * 2)
+				.setEventLoops(4)
+				.setClientInitializer(SessionInitializer.NOOP);
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void testBootStandalone() throws InterruptedException {
+		// the event loop number only shares the pool size in a group
+		final EventLoop loop = smallPool().boot();
+		try {
+			final Configuration config = loop.getConfig();
+			assertSame(loop.bufferPool(), config.getBufferPool());
+			assertSame(loop.bufferStore(), config.getBufferStore());
+		} finally {
+			loop.shutdown();
+			loop.awaitTermination();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBootGroupPoolTooSmall() {
+		smallPool().bootGroup();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testPoolLessThanBufferSize() {
+		smallPool().setPoolSize(1 << 12).build();
+	}
+
+}
@@ -0,0 +1,232 @@
+package io.simple.nio.test;
+
+import static junit.framework.TestCase.*;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import io.simple.nio.BufferPool;
+import io.simple.nio.Configuration;
+import io.simple.nio.EventHandlerAdapter;
+import io.simple.nio.EventLoop;
+import io.simple.nio.EventLoopChooser;
+import io.simple.nio.EventLoopGroup;
+import io.simple.nio.HandlerContext;
+import io.simple.nio.Session;
+import io.simple.nio.SessionInitializer;
+
+/**
+ * Test the event loop group: the boss hands over the accepted channels to the
+ *workers by the chooser.
+ *
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+public class EventLoopGroupTest {
+
+	EventLoopGroup group;
+	EventLoop client;
+	final LinkedBlockingQueue<Session> accepted = new LinkedBlockingQueue<Session>();
+	final LinkedBlockingQueue<Session> connected = new LinkedBlockingQueue<Session>();
+	final List<Session> sessions = new CopyOnWriteArrayList<Session>();
+
+	@After
+	public void destroy() throws InterruptedException {
+		closeAll();
+		try {
+			if(client != null) {
+				Loopback.shutdown(client);
+			}
+		} finally {
+			if(group != null) {
+				group.shutdown();
+				group.awaitTermination();
+			}
+		}
+	}
+
+	void closeAll() {
+		for(final Session sess : sessions) {
+			sess.execute(new Runnable() {
+				@Override
+				public void run() {
+					sess.close();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Boot the server group, and the client event loop that connects to it.
+	 */
+	void boot(final Configuration.Builder serverConfig) throws Exception {
+		final int port = Loopback.freePort();
+		group = serverConfig.setName("test-group").setDaemon(true).setPort(port)
+				.setServerInitializer(new SessionInitializer() {
+					@Override
+					public void initSession(Session session) {
+						session.addHandler(new EventHandlerAdapter() {
+							@Override
+							public void onConnected(HandlerContext ctx) throws Exception {
+								sessions.add(ctx.session());
+								accepted.offer(ctx.session());
+								ctx.fireConnected();
+							}
+						});
+					}
+				})
+				.bootGroup();
+		client = Configuration.newBuilder().setName("test-client").setDaemon(true)
+				.setHost("127.0.0.1").setPort(port)
+				.setClientInitializer(new SessionInitializer() {
+					@Override
+					public void initSession(Session session) {
+						session.addHandler(new EventHandlerAdapter() {
+							@Override
+							public void onConnected(HandlerContext ctx) throws Exception {
+								sessions.add(ctx.session());
+								connected.offer(ctx.session());
+								ctx.fireConnected();
+							}
+						});
+					}
+				})
+				.boot();
+	}
+
+	/**
+	 * Connect to the server group.
+	 *
+	 * @return the accepted server session
+	 */
+	Session connect() throws InterruptedException {
+		client.connect();
+		assertNotNull("Connect timeout", connected.poll(Loopback.TIMEOUT, TimeUnit.MILLISECONDS));
+		final Session sess = accepted.poll(Loopback.TIMEOUT, TimeUnit.MILLISECONDS);
+		assertNotNull("Accept timeout", sess);
+		return sess;
+	}
+
+	int indexOf(final EventLoop loop) {
+		for(int i = 0; i < group.size(); ++i) {
+			if(group.get(i) == loop) {
+				return i;
+			}
+		}
+		fail("Not a worker of the group: " + loop);
+		return -1;
+	}
+
+	void close(final Session sess) throws Exception {
+		final EventLoop loop = sess.eventLoop();
+		final int load = loop.load();
+		sess.execute(new Runnable() {
+			@Override
+			public void run() {
+				sess.close();
+			}
+		});
+		final long deadline = System.currentTimeMillis() + Loopback.TIMEOUT;
+		for(; loop.load() >= load;) {
+			assertTrue("Close timeout", System.currentTimeMillis() < deadline);
+			Thread.sleep(10L);
+		}
+	}
+
+	@Test
+	public void testRoundRobin() throws Exception {
+		final int n = 4;
+		boot(Configuration.newBuilder().setEventLoops(n));
+		final int counts[] = new int[n];
+		// the round robin chooser shared by groups: starts at any loop
+		final int first = indexOf(connect().eventLoop());
+		++counts[first];
+		for(int i = 1; i < n * 2; ++i) {
+			final Session sess = connect();
+			final int j = indexOf(sess.eventLoop());
+			assertEquals((first + i) % n, j);
+			++counts[j];
+		}
+		for(int i = 0; i < n; ++i) {
+			assertEquals(2, counts[i]);
+			assertEquals(2, group.get(i).load());
+		}
+	}
+
+	@Test
+	public void testLeastLoaded() throws Exception {
+		boot(Configuration.newBuilder().setEventLoops(2)
+				.setEventLoopChooser(EventLoopChooser.LEAST_LOADED));
+		final Session a = connect();
+		assertEquals(0, indexOf(a.eventLoop()));
+		assertEquals(1, indexOf(connect().eventLoop()));
+		close(a);
+		// round robin would choose the loop 0 then 1
+		assertEquals(0, indexOf(connect().eventLoop()));
+		assertEquals(0, indexOf(connect().eventLoop()));
+	}
+
+	/**
+	 * The chosen worker reaches its share of the max server connections: choose
+	 *another worker that has free slots.
+	 */
+	@Test
+	public void testSkipFullLoop() throws Exception {
+		boot(Configuration.newBuilder().setEventLoops(2).setMaxServerConns(4));
+		final int a = indexOf(connect().eventLoop()), b = 1 - a;
+		final Session sb = connect();
+		assertEquals(b, indexOf(sb.eventLoop()));
+		assertEquals(a, indexOf(connect().eventLoop()));
+		close(sb);
+		assertEquals(b, indexOf(connect().eventLoop()));
+		// the loop a full
+		assertEquals(b, indexOf(connect().eventLoop()));
+		assertEquals(2, group.get(a).load());
+		assertEquals(2, group.get(b).load());
+	}
+
+	/**
+	 * Each worker binds its own server channel with SO_REUSEPORT, and no boss.
+	 */
+	@Test
+	public void testReusePort() throws Exception {
+		assumeTrue(EventLoop.isReusePortSupported());
+		final int n = 4;
+		boot(Configuration.newBuilder().setEventLoops(n).setReusePort(true));
+		for(final Thread t : Thread.getAllStackTraces().keySet()) {
+			assertFalse(t.getName(), t.getName().endsWith("-boss"));
+		}
+		int load = 0;
+		for(int i = 0; i < n * 4; ++i) {
+			indexOf(connect().eventLoop());
+		}
+		for(int i = 0; i < n; ++i) {
+			load += group.get(i).load();
+		}
+		assertEquals(n * 4, load);
+	}
+
+	@Test
+	public void testShutdownReleasesSharedPool() throws Exception {
+		boot(Configuration.newBuilder().setEventLoops(2).setBufferPoolShared(true));
+		final BufferPool pool = group.bufferPool();
+		assertNotNull(pool);
+		assertSame(pool, group.get(0).bufferPool());
+		assertSame(pool, group.get(1).bufferPool());
+		connect();
+		connect();
+
+		closeAll();
+		group.shutdown();
+		group.awaitTermination();
+		assertFalse(pool.isOpen());
+	}
+
+}
@@ -0,0 +1,121 @@
+package io.simple.nio.test;
+
+import static junit.framework.TestCase.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.simple.nio.Configuration;
+import io.simple.nio.EventLoop;
+import io.simple.nio.SessionInitializer;
+import io.simple.nio.TimeTask;
+
+/**
+ * Test the task submissions into the event loop from other threads: the wakeups
+ *coalesced, but no submission missed.
+ *
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+public class EventLoopTest {
+
+	final static int threads = 8, tasks = 10000;
+
+	EventLoop loop;
+
+	@Before
+	public void init() {
+		loop = Configuration.newBuilder()
+				.setName("test-loop")
+				.setDaemon(true)
+				.setClientInitializer(SessionInitializer.NOOP)
+				.boot();
+	}
+
+	@After
+	public void destroy() throws InterruptedException {
+		loop.shutdown();
+		loop.awaitTermination();
+	}
+
+	/**
+	 * Execute the tasks from the threads concurrently, all executed in the loop, and
+	 *in the submission order of each thread.
+	 */
+	@Test
+	public void testExecuteFromThreads() throws Exception {
+		final int last[] = new int[threads];
+		final AtomicInteger errors = new AtomicInteger();
+		final CountDownLatch start = new CountDownLatch(1), done = new CountDownLatch(threads * tasks);
+		final List<Thread> producers = new ArrayList<Thread>();
+		for(int i = 0; i < threads; ++i) {
+			final int id = i;
+			final Thread t = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						for(int j = 1; j <= tasks; ++j) {
+							final int seq = j;
+							loop.execute(new Runnable() {
+								@Override
+								public void run() {
+									// only accessed in the loop
+									if(!loop.inEventLoop() || last[id] + 1 != seq) {
+										errors.incrementAndGet();
+									}
+									last[id] = seq;
+									done.countDown();
+								}
+							});
+						}
+					} catch(final Throwable e) {
+						e.printStackTrace();
+						errors.incrementAndGet();
+					}
+				}
+			}, "producer-" + i);
+			producers.add(t);
+			t.start();
+		}
+		start.countDown();
+		for(final Thread t : producers) {
+			t.join();
+		}
+		assertTrue("Execute timeout", done.await(Loopback.TIMEOUT, TimeUnit.MILLISECONDS));
+		assertEquals(0, errors.get());
+	}
+
+	/**
+	 * Submit one by one after the loop parked in select: each submission wakes it up.
+	 */
+	@Test
+	public void testWakeupAfterPark() throws Exception {
+		for(int i = 0; i < 100; ++i) {
+			Thread.sleep(2L);
+			final CountDownLatch done = new CountDownLatch(2);
+			loop.execute(new Runnable() {
+				@Override
+				public void run() {
+					done.countDown();
+				}
+			});
+			loop.schedule(new TimeTask(0L) {
+				@Override
+				public void run() {
+					done.countDown();
+				}
+			});
+			assertTrue("Wakeup missed: round " + i, done.await(1000L, TimeUnit.MILLISECONDS));
+		}
+	}
+
+}
@@ -0,0 +1,194 @@
+package io.simple.nio.test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.simple.nio.BufferInputStream;
+import io.simple.nio.Configuration;
+import io.simple.nio.EventHandlerAdapter;
+import io.simple.nio.EventLoop;
+import io.simple.nio.HandlerContext;
+import io.simple.nio.Session;
+import io.simple.nio.SessionInitializer;
+
+/**
+ * A server and a client event loop connected by loopback, for the session tests.
+ *
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+public class Loopback {
+
+	final static long TIMEOUT = 10000L;
+
+	public final EventLoop server, client;
+	private final LinkedBlockingQueue<Session> serverSessions = new LinkedBlockingQueue<Session>();
+	private final LinkedBlockingQueue<Session> clientSessions = new LinkedBlockingQueue<Session>();
+	private final List<Session> sessions = new CopyOnWriteArrayList<Session>();
+
+	/**
+	 * Boot the server and client event loops.
+	 *
+	 * @param serverConfig the server config builder, without the port and initializer
+	 * @param serverInit the server session initializer
+	 * @param clientConfig the client config builder, without the port and initializer
+	 * @param clientInit the client session initializer
+	 * @throws IOException if no free port
+	 */
+	public Loopback(Configuration.Builder serverConfig, SessionInitializer serverInit,
+			Configuration.Builder clientConfig, SessionInitializer clientInit) throws IOException {
+		final int port = freePort();
+		this.server = serverConfig.setName("test-server").setDaemon(true).setPort(port)
+				.setServerInitializer(wrap(serverInit, serverSessions))
+				.boot();
+		boolean failed = true;
+		try {
+			this.client = clientConfig.setName("test-client").setDaemon(true)
+					.setHost("127.0.0.1").setPort(port)
+					.setClientInitializer(wrap(clientInit, clientSessions))
+					.boot();
+			failed = false;
+		} finally {
+			if(failed) {
+				server.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * Connect the client to the server.
+	 *
+	 * @return the server session and the client session
+	 * @throws InterruptedException if interrupted
+	 */
+	public Session[] connect() throws InterruptedException {
+		client.connect();
+		final Session cli = clientSessions.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+		final Session srv = serverSessions.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+		if(cli == null || srv == null) {
+			throw new AssertionError("Connect timeout");
+		}
+		sessions.add(cli);
+		sessions.add(srv);
+		return new Session[]{srv, cli};
+	}
+
+	/**
+	 * Close the connected sessions, and shutdown the event loops gracefully.
+	 * 
+	 * @throws InterruptedException if interrupted
+	 */
+	public void shutdown() throws InterruptedException {
+		for(final Session session : sessions) {
+			session.execute(new Runnable() {
+				@Override
+				public void run() {
+					session.close();
+				}
+			});
+		}
+		try {
+			shutdown(client);
+		} finally {
+			shutdown(server);
+		}
+	}
+
+	/**
+	 * Call the task in the event loop of the session, and wait for the result.
+	 */
+	public static <V> V call(final Session session, final Callable<V> task) throws Exception {
+		final FutureTask<V> future = new FutureTask<V>(task);
+		session.execute(future);
+		return future.get(TIMEOUT, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Wait for the condition in the event loop of the session.
+	 */
+	public static void await(final Session session, final Callable<Boolean> cond) throws Exception {
+		final long deadline = System.currentTimeMillis() + TIMEOUT;
+		for(; !call(session, cond);) {
+			if(System.currentTimeMillis() > deadline) {
+				throw new AssertionError("Await timeout");
+			}
+			Thread.sleep(10L);
+		}
+	}
+
+	/**
+	 * @param i the stream position
+	 * @return the test byte at the position
+	 */
+	public static byte pattern(final long i) {
+		return (byte)(i * 31 + (i >>> 13));
+	}
+	
+	/**
+	 * @param received the received byte number
+	 * @param errors the number of the received bytes that mismatch the test pattern
+	 * @return a session initializer that checks the received bytes by the test pattern
+	 */
+	public static SessionInitializer reader(final AtomicLong received, final AtomicLong errors) {
+		return new SessionInitializer() {
+			@Override
+			public void initSession(Session session) {
+				session.addHandler(new EventHandlerAdapter() {
+					@Override
+					public void onRead(HandlerContext ctx, Object o) throws Exception {
+						final BufferInputStream in = (BufferInputStream)o;
+						final byte buf[] = new byte[in.available()];
+						final int n = in.read(buf);
+						final long pos = received.get();
+						for(int i = 0; i < n; ++i) {
+							if(buf[i] != pattern(pos + i)) {
+								errors.incrementAndGet();
+							}
+						}
+						received.set(pos + n);
+					}
+				});
+			}
+		};
+	}
+	
+	static void shutdown(final EventLoop loop) throws InterruptedException {
+		loop.shutdown();
+		loop.awaitTermination();
+	}
+
+	static int freePort() throws IOException {
+		final ServerSocket so = new ServerSocket(0);
+		try {
+			return so.getLocalPort();
+		} finally {
+			so.close();
+		}
+	}
+
+	static SessionInitializer wrap(final SessionInitializer init,
+			final LinkedBlockingQueue<Session> sessions) {
+		return new SessionInitializer() {
+			@Override
+			public void initSession(final Session session) {
+				session.addHandler(new EventHandlerAdapter() {
+					@Override
+					public void onConnected(HandlerContext ctx) throws Exception {
+						sessions.offer(ctx.session());
+						ctx.fireConnected();
+					}
+				});
+				init.initSession(session);
+			}
+		};
+	}
+
+}
@@ -0,0 +1,95 @@
+package io.simple.nio.test;
+
+import static junit.framework.TestCase.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Test;
+
+import io.simple.nio.Configuration;
+import io.simple.nio.Session;
+import io.simple.util.JmxUtil;
+
+/**
+ * Test the metrics MXBeans of the buffer pool and store of an event loop, read by
+ *the platform MBean server from the JMX thread.
+ *
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+public class MetricsMXBeanTest {
+
+	Loopback loopback;
+
+	@After
+	public void destroy() throws InterruptedException {
+		if(loopback != null) {
+			loopback.shutdown();
+		}
+	}
+
+	static ObjectName objectName(final String type, final String name) throws Exception {
+		return new ObjectName(JmxUtil.DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+	}
+
+	static long attribute(final ObjectName objName, final String attr) throws Exception {
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		return ((Long)server.getAttribute(objName, attr)).longValue();
+	}
+
+	@Test
+	public void testReadAttributes() throws Exception {
+		final int total = 1 << 20, bufferSize = 1 << 13;
+		final LinkedBlockingQueue<Integer> regions = new LinkedBlockingQueue<Integer>();
+		final AtomicLong received = new AtomicLong(), errors = new AtomicLong();
+		loopback = new Loopback(
+				Configuration.newBuilder().setJmxEnabled(true).setBufferSize(bufferSize)
+					.setMaxWriteBuffers(4),
+				BufferStreamTest.writer(total, regions),
+				Configuration.newBuilder().setAutoRead(false),
+				Loopback.reader(received, errors));
+		final Session sessions[] = loopback.connect();
+		final Session srv = sessions[0], cli = sessions[1];
+		final ObjectName pool = objectName("BufferPool", "test-server");
+		final ObjectName store = objectName("BufferStore", "test-server");
+
+		// spilled before the peer reads
+		final Integer n = regions.poll(Loopback.TIMEOUT, TimeUnit.MILLISECONDS);
+		assertNotNull("Write timeout", n);
+		assertTrue(n.intValue() > 0);
+		final long poolSize = BufferStreamTest.metrics(srv).getPoolSize();
+		assertEquals(poolSize, attribute(pool, "PoolSize"));
+		assertTrue(attribute(pool, "PeakUsedSize") > 0L);
+		assertTrue(attribute(pool, "Allocations") > 0L);
+		assertTrue(attribute(store, "BytesWritten") > 0L);
+
+		BufferStreamTest.enableRead(cli);
+		Loopback.await(cli, new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return received.get() >= total;
+			}
+		});
+		assertEquals(total, received.get());
+		assertEquals(0L, errors.get());
+		final long written = attribute(store, "BytesWritten");
+		assertEquals(written, attribute(store, "BytesRead"));
+		assertEquals(0L, attribute(store, "Size"));
+
+		loopback.shutdown();
+		loopback = null;
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		assertFalse(server.isRegistered(pool));
+		assertFalse(server.isRegistered(store));
+	}
+
+}
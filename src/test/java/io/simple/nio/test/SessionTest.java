@@ -0,0 +1,155 @@
+package io.simple.nio.test;
+
+import static junit.framework.TestCase.*;
+
+import java.nio.channels.SelectionKey;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Test;
+
+import io.simple.nio.Configuration;
+import io.simple.nio.EventHandlerAdapter;
+import io.simple.nio.HandlerContext;
+import io.simple.nio.Session;
+import io.simple.nio.SessionInitializer;
+
+/**
+ * Test the session interest ops and flushing.
+ *
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+public class SessionTest {
+
+	final static int READ = SelectionKey.OP_READ, WRITE = SelectionKey.OP_WRITE;
+
+	Loopback loopback;
+
+	@After
+	public void destroy() throws InterruptedException {
+		if(loopback != null) {
+			loopback.shutdown();
+		}
+	}
+
+	/**
+	 * Register the channel by the first change only, then update the select key ops
+	 *in place, and the repeated changes are no-op.
+	 */
+	@Test
+	public void testInterestOps() throws Exception {
+		loopback = new Loopback(Configuration.newBuilder(), SessionInitializer.NOOP,
+				Configuration.newBuilder().setAutoRead(false), SessionInitializer.NOOP);
+		final Session cli = loopback.connect()[1];
+
+		final String result = Loopback.call(cli, new Callable<String>() {
+			@Override
+			public String call() {
+				cli.enableRead();
+				final SelectionKey key = cli.selectKey();
+				if(key == null || key.interestOps() != READ) {
+					return "enableRead: " + key;
+				}
+				cli.enableRead();
+				if(cli.selectKey() != key || key.interestOps() != READ) {
+					return "enableRead again";
+				}
+				cli.enableWrite();
+				if(cli.selectKey() != key || key.interestOps() != (READ | WRITE)) {
+					return "enableWrite";
+				}
+				cli.disableWrite().disableWrite();
+				if(key.interestOps() != READ) {
+					return "disableWrite";
+				}
+				cli.disableRead().disableRead();
+				if(key.interestOps() != 0) {
+					return "disableRead";
+				}
+
+				// the ops cache refreshed by the new select key
+				key.interestOps(READ);
+				cli.selectKey(key);
+				cli.disableRead();
+				if(key.interestOps() != 0) {
+					return "refresh";
+				}
+				return null;
+			}
+		});
+		assertNull(result, result);
+	}
+
+	/**
+	 * Write and flush the next piece in onFlushed() repeatedly: the inline flushes
+	 *nest onFlushed() in a bounded depth, and the rest fired when writable.
+	 */
+	@Test
+	public void testInlineFlushBound() throws Exception {
+		final int piece = 100, rounds = 1000, total = piece * rounds;
+		final AtomicInteger maxDepth = new AtomicInteger(), flushes = new AtomicInteger();
+		final AtomicLong received = new AtomicLong(), errors = new AtomicLong();
+		final SessionInitializer writer = new SessionInitializer() {
+			@Override
+			public void initSession(Session session) {
+				session.addHandler(new EventHandlerAdapter() {
+					int depth;
+
+					@Override
+					public void onConnected(HandlerContext ctx) throws Exception {
+						writeNext(ctx);
+					}
+
+					@Override
+					public void onFlushed(HandlerContext ctx) throws Exception {
+						maxDepth.set(Math.max(maxDepth.get(), ++depth));
+						try {
+							if(flushes.incrementAndGet() < rounds) {
+								writeNext(ctx);
+							}
+						} finally {
+							--depth;
+						}
+					}
+
+					void writeNext(HandlerContext ctx) throws Exception {
+						final int off = flushes.get() * piece;
+						final byte message[] = new byte[piece];
+						for(int i = 0; i < piece; ++i) {
+							message[i] = Loopback.pattern(off + i);
+						}
+						ctx.write(message);
+						ctx.flush();
+					}
+				});
+			}
+		};
+		loopback = new Loopback(Configuration.newBuilder(), writer,
+				Configuration.newBuilder(), Loopback.reader(received, errors));
+		final Session sessions[] = loopback.connect();
+		final Session srv = sessions[0], cli = sessions[1];
+
+		Loopback.await(cli, new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return received.get() >= total;
+			}
+		});
+		assertEquals(total, received.get());
+		assertEquals(0L, errors.get());
+		Loopback.await(srv, new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return flushes.get() >= rounds;
+			}
+		});
+		assertEquals(rounds, flushes.get());
+		// Session.MAX_INLINE_FLUSHES
+		assertTrue("Nested onFlushed() depth " + maxDepth.get(), maxDepth.get() <= 8);
+	}
+
+}
@@ -0,0 +1,169 @@
+package io.simple.nio.test;
+
+import static junit.framework.TestCase.*;
+
+import org.junit.Test;
+
+import io.simple.nio.Buffer;
+import io.simple.nio.BufferAllocateException;
+import io.simple.nio.SizeClassBufferPool;
+
+/**
+ * Test size-classed buffer pool.
+ * 
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+public class SizeClassBufferPoolTest {
+	
+	@Test
+	public void testSizeClasses() {
+		final SizeClassBufferPool pool = new SizeClassBufferPool(1L << 20, 1 << 13, false, 1 << 16);
+		try {
+			assertEquals(64, pool.allocate(1).byteBuffer().capacity());
+			assertEquals(64, pool.allocate(64).byteBuffer().capacity());
+			assertEquals(128, pool.allocate(65).byteBuffer().capacity());
+			assertEquals(1 << 13, pool.allocate().byteBuffer().capacity());
+			assertEquals(1 << 16, pool.allocate(40000).byteBuffer().capacity());
+			// bigger than the chunk size
+			assertEquals(100000, pool.allocate(100000).byteBuffer().capacity());
+		} finally {
+			pool.close();
+		}
+	}
+	
+	@Test
+	public void testReuse() {
+		final SizeClassBufferPool pool = new SizeClassBufferPool(1L << 20, 1 << 13, true, 1 << 16);
+		try {
+			final Buffer a = pool.allocate(100);
+			a.byteBuffer().put((byte)1);
+			final long available = pool.available();
+			a.release();
+			assertEquals(available + 128, pool.available());
+			final Buffer b = pool.allocate(128);
+			assertSame(a, b);
+			assertEquals(0, b.byteBuffer().position());
+			assertEquals(available, pool.available());
+		} finally {
+			pool.close();
+		}
+	}
+	
+	@Test
+	public void testCarveRemaining() {
+		final int chunkSize = 1 << 16;
+		final SizeClassBufferPool pool = new SizeClassBufferPool(chunkSize * 2, 1 << 13, false, chunkSize);
+		try {
+			// 64 + 32K, then the remaining of the first chunk carved into smaller classes
+			pool.allocate(64);
+			pool.allocate(chunkSize >> 1);
+			pool.allocate(chunkSize >> 1);
+			assertEquals(chunkSize * 2 - 64 - chunkSize, pool.pooledSize());
+			for(int size = 64; size < (chunkSize >> 1); size <<= 1) {
+				if(size == 64) {
+					continue;
+				}
+				assertEquals(size, pool.allocate(size).byteBuffer().capacity());
+			}
+		} finally {
+			pool.close();
+		}
+	}
+	
+	@Test
+	public void testSplit() {
+		final int chunkSize = 1 << 16;
+		final SizeClassBufferPool pool = new SizeClassBufferPool(chunkSize, 1 << 13, false, chunkSize);
+		try {
+			assertEquals(chunkSize, pool.maxCapacity());
+			final Buffer a = pool.allocate(chunkSize >> 1);
+			pool.allocate(chunkSize >> 1);
+			a.release();
+			// split the free 32K buffer, not exceeding the pool size limit
+			assertEquals(64, pool.allocate(64).byteBuffer().capacity());
+			assertEquals((chunkSize >> 1) - 64, pool.pooledSize());
+			for(int size = 64; size < (chunkSize >> 1); size <<= 1) {
+				assertEquals(size, pool.allocate(size).byteBuffer().capacity());
+			}
+			assertEquals(0L, pool.pooledSize());
+			assertEquals(0L, pool.available());
+		} finally {
+			pool.close();
+		}
+	}
+	
+	@Test
+	public void testReclaimFreeChunks() {
+		final int chunkSize = 1 << 16;
+		final SizeClassBufferPool pool = new SizeClassBufferPool(chunkSize * 2, 1 << 13, false, chunkSize);
+		try {
+			final Buffer buffers[] = new Buffer[chunkSize / 64];
+			for(int i = 0; i < buffers.length; ++i) {
+				buffers[i] = pool.allocate(64);
+			}
+			final Buffer b = pool.allocate(chunkSize);
+			for(final Buffer buffer : buffers) {
+				buffer.release();
+			}
+			// the first chunk all free in the 64 class, returned into VM for a new chunk
+			assertEquals(chunkSize, pool.allocate(chunkSize).byteBuffer().capacity());
+			assertEquals(0L, pool.pooledSize());
+			b.release();
+			assertEquals(chunkSize, pool.pooledSize());
+			assertEquals(64, pool.allocate(64).byteBuffer().capacity());
+		} finally {
+			pool.close();
+		}
+	}
+	
+	/**
+	 * The free buffers of a partly used chunk not merged into a larger class, and the 
+	 *chunk reclaimed only after all its buffers free.
+	 */
+	@Test
+	public void testReclaimWholeChunkOnly() {
+		final int chunkSize = 1 << 16;
+		final SizeClassBufferPool pool = new SizeClassBufferPool(chunkSize, 1 << 13, false, chunkSize);
+		try {
+			final Buffer buffers[] = new Buffer[chunkSize / 64];
+			for(int i = 0; i < buffers.length; ++i) {
+				buffers[i] = pool.allocate(64);
+			}
+			for(int i = 1; i < buffers.length; ++i) {
+				buffers[i].release();
+			}
+			assertEquals(chunkSize - 64, pool.pooledSize());
+			try {
+				pool.allocate(128);
+				fail("Exceeds pool size limit");
+			} catch(final BufferAllocateException e) {
+				// OK
+			}
+			buffers[0].release();
+			assertEquals(128, pool.allocate(128).byteBuffer().capacity());
+			assertEquals(chunkSize - 128, pool.pooledSize());
+		} finally {
+			pool.close();
+		}
+	}
+	
+	@Test
+	public void testLimit() {
+		final SizeClassBufferPool pool = new SizeClassBufferPool(1 << 16, 1 << 13, false, 1 << 16);
+		try {
+			pool.allocate(1 << 15);
+			pool.allocate(1 << 15);
+			try {
+				pool.allocate(64);
+				fail("Exceeds pool size limit");
+			} catch(final BufferAllocateException e) {
+				// OK
+			}
+		} finally {
+			pool.close();
+		}
+	}
+
+}
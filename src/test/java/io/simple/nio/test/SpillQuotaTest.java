@@ -0,0 +1,180 @@
+package io.simple.nio.test;
+
+import static junit.framework.TestCase.*;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Test;
+
+import io.simple.nio.Configuration;
+import io.simple.nio.EventHandlerAdapter;
+import io.simple.nio.HandlerContext;
+import io.simple.nio.IdleState;
+import io.simple.nio.Session;
+import io.simple.nio.SessionInitializer;
+import io.simple.nio.SpillLimitException;
+import io.simple.nio.SpillState;
+
+/**
+ * Test the session and store spill quotas, and the spill state events.
+ *
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+public class SpillQuotaTest {
+
+	final static int bufferSize = 1 << 12, chunkSize = 1 << 16;
+
+	Loopback loopback;
+
+	@After
+	public void destroy() throws InterruptedException {
+		if(loopback != null) {
+			loopback.shutdown();
+		}
+	}
+
+	static Configuration.Builder serverConfig() {
+		return Configuration.newBuilder()
+				.setBufferSize(bufferSize)
+				.setMaxWriteBuffers(2);
+	}
+
+	/**
+	 * Write the test pattern until the total or the write rejected, and record the spill
+	 *state events with the writability.
+	 */
+	static SessionInitializer writer(final long total, final AtomicLong accepted,
+			final LinkedBlockingQueue<Object> events) {
+		return new SessionInitializer() {
+			@Override
+			public void initSession(Session session) {
+				session.addHandler(new EventHandlerAdapter() {
+					@Override
+					public void onConnected(HandlerContext ctx) throws Exception {
+						final byte chunk[] = new byte[chunkSize];
+						long off = 0L;
+						try {
+							for(; off < total; off += chunkSize) {
+								for(int i = 0; i < chunkSize; ++i) {
+									chunk[i] = Loopback.pattern(off + i);
+								}
+								ctx.write(chunk);
+							}
+						} catch(final SpillLimitException e) {
+							events.offer(ctx.isWritable()? "rejected": "rejected-not-writable");
+						}
+						accepted.set(off);
+						ctx.flush();
+					}
+
+					@Override
+					public void onUserEvent(HandlerContext ctx, Object ev) throws Exception {
+						if(!(ev instanceof IdleState)) {
+							events.offer(ev);
+							events.offer(ctx.isWritable());
+						}
+						ctx.fireUserEvent(ev);
+					}
+				});
+			}
+		};
+	}
+
+	static Object next(final LinkedBlockingQueue<Object> events) throws InterruptedException {
+		final Object ev = events.poll(Loopback.TIMEOUT, TimeUnit.MILLISECONDS);
+		assertNotNull("Event timeout", ev);
+		return ev;
+	}
+
+	void drain(final Session cli, final AtomicLong received, final AtomicLong errors,
+			final long total) throws Exception {
+		cli.execute(new Runnable() {
+			@Override
+			public void run() {
+				cli.enableRead();
+			}
+		});
+		Loopback.await(cli, new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return received.get() >= total;
+			}
+		});
+		assertEquals(total, received.get());
+		assertEquals(0L, errors.get());
+	}
+
+	@Test
+	public void testSessionWatermarks() throws Exception {
+		final long total = 1 << 22;
+		final AtomicLong accepted = new AtomicLong(), received = new AtomicLong(), errors = new AtomicLong();
+		final LinkedBlockingQueue<Object> events = new LinkedBlockingQueue<Object>();
+		loopback = new Loopback(serverConfig().setSpillHighWatermark(1 << 20).setSpillLowWatermark(1 << 18),
+				writer(total, accepted, events),
+				Configuration.newBuilder().setAutoRead(false), Loopback.reader(received, errors));
+		final Session cli = loopback.connect()[1];
+
+		assertEquals(SpillState.SESSION_HIGH, next(events));
+		assertEquals(Boolean.FALSE, next(events));
+		assertEquals(0L, received.get());
+		drain(cli, received, errors, total);
+		assertEquals(SpillState.SESSION_LOW, next(events));
+		assertEquals(Boolean.TRUE, next(events));
+		assertTrue(events.isEmpty());
+	}
+
+	@Test
+	public void testStoreHighWhileFilling() throws Exception {
+		final long total = 1 << 22;
+		final AtomicLong accepted = new AtomicLong(), received = new AtomicLong(), errors = new AtomicLong();
+		final LinkedBlockingQueue<Object> events = new LinkedBlockingQueue<Object>();
+		loopback = new Loopback(serverConfig().setStoreHighWatermark(1 << 20).setStoreLowWatermark(1 << 18),
+				writer(total, accepted, events),
+				Configuration.newBuilder().setAutoRead(false), Loopback.reader(received, errors));
+		final Session cli = loopback.connect()[1];
+
+		// fired when the regions allocated, before any region released
+		assertEquals(SpillState.STORE_HIGH, next(events));
+		assertEquals(Boolean.FALSE, next(events));
+		assertEquals(0L, received.get());
+		drain(cli, received, errors, total);
+		assertEquals(SpillState.STORE_LOW, next(events));
+		assertEquals(Boolean.TRUE, next(events));
+	}
+
+	@Test
+	public void testSpillLimit() throws Exception {
+		final long total = 1 << 22, limit = 1 << 20;
+		final AtomicLong accepted = new AtomicLong(), received = new AtomicLong(), errors = new AtomicLong();
+		final LinkedBlockingQueue<Object> events = new LinkedBlockingQueue<Object>();
+		loopback = new Loopback(serverConfig().setSpillLimit(limit),
+				writer(total, accepted, events),
+				Configuration.newBuilder().setAutoRead(false), Loopback.reader(received, errors));
+		final Session cli = loopback.connect()[1];
+
+		// the default watermarks make the session not writable before rejected
+		assertEquals("rejected-not-writable", next(events));
+		assertEquals(SpillState.SESSION_HIGH, next(events));
+		assertEquals(Boolean.FALSE, next(events));
+		assertTrue(accepted.get() < total);
+		assertTrue(accepted.get() >= limit - chunkSize);
+
+		// the rejected write not written partly
+		drain(cli, received, errors, accepted.get());
+		assertEquals(SpillState.SESSION_LOW, next(events));
+		assertEquals(Boolean.TRUE, next(events));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSpillHighWatermarkAboveLimit() {
+		serverConfig().setSpillLimit(1 << 20).setSpillHighWatermark(1 << 20)
+			.setServerInitializer(SessionInitializer.NOOP).build();
+	}
+
+}
@@ -0,0 +1,184 @@
+package io.simple.nio.test;
+
+import static junit.framework.TestCase.*;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Test;
+
+import io.simple.nio.BufferLeakDetector;
+import io.simple.nio.Configuration;
+import io.simple.nio.EventHandlerAdapter;
+import io.simple.nio.HandlerContext;
+import io.simple.nio.Session;
+import io.simple.nio.SessionInitializer;
+
+/**
+ * Test the background spill writer: write order, cancellation and shutdown.
+ *
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+public class SpillWriterTest {
+
+	final static int bufferSize = 1 << 12, chunkSize = 1 << 16, total = 1 << 23;
+
+	Loopback loopback;
+
+	@After
+	public void destroy() throws InterruptedException {
+		BufferLeakDetector.setLevel(BufferLeakDetector.Level.DISABLED);
+		if(loopback != null) {
+			loopback.shutdown();
+		}
+	}
+
+	static Configuration.Builder serverConfig() {
+		return Configuration.newBuilder()
+				.setBufferSize(bufferSize)
+				.setMaxWriteBuffers(2)
+				.setSpillAsync(true)
+				.setSpillQueueSize(1);
+	}
+
+	static Configuration.Builder clientConfig() {
+		return Configuration.newBuilder().setAutoRead(false);
+	}
+
+	static SessionInitializer writer(final boolean close, final LinkedBlockingQueue<Boolean> writable) {
+		return new SessionInitializer() {
+			@Override
+			public void initSession(Session session) {
+				session.addHandler(new EventHandlerAdapter() {
+					@Override
+					public void onConnected(HandlerContext ctx) throws Exception {
+						final byte chunk[] = new byte[chunkSize];
+						for(int off = 0; off < total; off += chunkSize) {
+							for(int i = 0; i < chunkSize; ++i) {
+								chunk[i] = Loopback.pattern(off + i);
+							}
+							ctx.write(chunk);
+						}
+						writable.offer(ctx.isWritable());
+						if(close) {
+							ctx.close();
+							return;
+						}
+						ctx.flush();
+					}
+				});
+			}
+		};
+	}
+
+	static boolean written(final LinkedBlockingQueue<Boolean> writable) throws InterruptedException {
+		final Boolean result = writable.poll(Loopback.TIMEOUT, TimeUnit.MILLISECONDS);
+		assertNotNull("Write timeout", result);
+		return result;
+	}
+
+	static long storeRegions(final Session session) throws Exception {
+		return Loopback.call(session, new Callable<Long>() {
+			@Override
+			public Long call() {
+				return (long)session.bufferStore().allocatedCount();
+			}
+		});
+	}
+
+	@Test
+	public void testOrderWithFullQueue() throws Exception {
+		final LinkedBlockingQueue<Boolean> writable = new LinkedBlockingQueue<Boolean>();
+		final AtomicLong received = new AtomicLong(), errors = new AtomicLong();
+		loopback = new Loopback(serverConfig(), writer(false, writable),
+				clientConfig(), Loopback.reader(received, errors));
+		final Session sessions[] = loopback.connect();
+		final Session srv = sessions[0], cli = sessions[1];
+
+		// spilled and the spill queue full when the peer doesn't read
+		Loopback.await(srv, new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return srv.bufferStore().allocatedCount() > 0;
+			}
+		});
+		assertFalse("Spill queue full", written(writable));
+
+		cli.execute(new Runnable() {
+			@Override
+			public void run() {
+				cli.enableRead();
+			}
+		});
+		Loopback.await(cli, new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return received.get() >= total;
+			}
+		});
+		assertEquals(total, received.get());
+		assertEquals(0L, errors.get());
+		Loopback.await(srv, new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return srv.isWritable();
+			}
+		});
+		assertEquals(0L, storeRegions(srv));
+	}
+
+	@Test
+	public void testCancelOnClose() throws Exception {
+		final LinkedBlockingQueue<Boolean> writable = new LinkedBlockingQueue<Boolean>();
+		final AtomicLong received = new AtomicLong(), errors = new AtomicLong();
+		loopback = new Loopback(serverConfig(), writer(true, writable),
+				clientConfig(), Loopback.reader(received, errors));
+		final Session srv = loopback.connect()[0];
+		assertFalse(written(writable));
+
+		// the regions and buffers of the cancelled jobs released when handed back
+		Loopback.await(srv, new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return (srv.bufferStore().allocatedCount() == 0 &&
+						srv.bufferPool().metrics().getUsedSize() == 0L);
+			}
+		});
+		assertFalse(srv.isOpen());
+	}
+
+	@Test
+	public void testShutdown() throws Exception {
+		BufferLeakDetector.setLevel(BufferLeakDetector.Level.PARANOID);
+		final int tracked = BufferLeakDetector.trackedCount();
+		final LinkedBlockingQueue<Boolean> writable = new LinkedBlockingQueue<Boolean>();
+		final AtomicLong received = new AtomicLong(), errors = new AtomicLong();
+		loopback = new Loopback(serverConfig(), writer(false, writable),
+				clientConfig(), Loopback.reader(received, errors));
+		final Session srv = loopback.connect()[0];
+		assertFalse(written(writable));
+		assertTrue(storeRegions(srv) > 0L);
+
+		// shutdown with spill jobs in flight and waiting for the queue
+		loopback.shutdown();
+		loopback = null;
+		for(final Thread t : threads()) {
+			assertFalse(t.getName(), t.getName().endsWith("-spill"));
+		}
+		assertEquals(tracked, BufferLeakDetector.trackedCount());
+	}
+
+	static Thread[] threads() {
+		final Thread threads[] = new Thread[Thread.activeCount() + 16];
+		final int n = Thread.enumerate(threads);
+		final Thread result[] = new Thread[n];
+		System.arraycopy(threads, 0, result, 0, n);
+		return result;
+	}
+
+}
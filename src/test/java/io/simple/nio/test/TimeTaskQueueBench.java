@@ -0,0 +1,144 @@
+package io.simple.nio.test;
+
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import io.simple.nio.TimeTask;
+import io.simple.nio.TimeTaskQueue;
+
+/**
+ * <p>
+ * Idle timeout overhead benchmark of the time task queue: each session has a read
+ *and a write idle task, and some sessions delay the read idle task in each loop 
+ *as the read completed.
+ * </p>
+ * 
+ * <p>
+ * Usage: java io.simple.nio.test.TimeTaskQueueBench [loops] [activeSessions]
+ * </p>
+ * 
+ * @author little-pan
+ * @since 2018-07-15
+ *
+ */
+public class TimeTaskQueueBench {
+	
+	static final long IDLE_TIME = 30000L;
+	
+	public static void main(String args[]) {
+		final int loops  = args.length > 0? Integer.parseInt(args[0]): 1000000;
+		final int active = args.length > 1? Integer.parseInt(args[1]): 16;
+		
+		final int sessions[] = {1000, 10000, 100000};
+		for(int r = 0; r < 2; ++r) {
+			// warm up in the first round
+			for(final int n : sessions) {
+				bench(n, loops, active, r == 1);
+			}
+			for(final int n : sessions) {
+				benchLinear(n, loops / 100, active, r == 1);
+			}
+		}
+	}
+	
+	static void bench(final int sessions, final int loops, final int active, final boolean show) {
+		final Random rand = new Random(sessions);
+		final TimeTaskQueue queue = new TimeTaskQueue();
+		final TimeTask reads[] = new TimeTask[sessions];
+		for(int i = 0; i < sessions; ++i) {
+			reads[i] = new IdleTask(rand.nextInt((int)IDLE_TIME));
+			queue.offer(reads[i]);
+			queue.offer(new IdleTask(rand.nextInt((int)IDLE_TIME)));
+		}
+		
+		final long start = System.nanoTime();
+		long nearest = 0L, expired = 0L;
+		for(int i = 0; i < loops; ++i) {
+			final long cur = System.currentTimeMillis();
+			// read complete
+			for(int j = 0; j < active; ++j) {
+				reads[rand.nextInt(sessions)].executeTime(cur + IDLE_TIME);
+			}
+			// nearest schedule time and execute time tasks
+			final TimeTask head = queue.peek();
+			nearest += head.executeTime() - cur;
+			for(;;) {
+				final TimeTask task = queue.peek();
+				if(task == null || task.executeTime() > cur) {
+					break;
+				}
+				queue.poll();
+				task.run();
+				++expired;
+				task.executeTime(task.executeTime() + task.period());
+				queue.offer(task);
+			}
+		}
+		final long nanos = System.nanoTime() - start;
+		if(show) {
+			// Flat means the cost per operation(delay or expired) independent of sessions
+			final long ops = (long)loops * active + expired;
+			System.out.println(String.format("sessions %6d: %5d ns/loop, %3d ns/op, expired %d (nearest %d)", 
+					sessions, nanos / loops, nanos / ops, expired, nearest / loops));
+		}
+	}
+	
+	// The linear scan of the time task queue before.
+	static void benchLinear(final int sessions, final int loops, final int active, final boolean show) {
+		final Random rand = new Random(sessions);
+		final Queue<TimeTask> queue = new ConcurrentLinkedQueue<TimeTask>();
+		final TimeTask reads[] = new TimeTask[sessions];
+		for(int i = 0; i < sessions; ++i) {
+			reads[i] = new IdleTask(rand.nextInt((int)IDLE_TIME));
+			queue.offer(reads[i]);
+			queue.offer(new IdleTask(rand.nextInt((int)IDLE_TIME)));
+		}
+		
+		final long start = System.nanoTime();
+		long nearest = 0L;
+		for(int i = 0; i < loops; ++i) {
+			final long cur = System.currentTimeMillis();
+			for(int j = 0; j < active; ++j) {
+				reads[rand.nextInt(sessions)].executeTime(cur + IDLE_TIME);
+			}
+			long near = -1L;
+			for(final TimeTask task : queue) {
+				final long tm = task.executeTime();
+				if(near == -1L || tm - cur < near) {
+					near = Math.max(0L, tm - cur);
+				}
+			}
+			nearest += near;
+			final Iterator<TimeTask> it = queue.iterator();
+			for(; it.hasNext();) {
+				final TimeTask task = it.next();
+				final long tm = task.executeTime();
+				if(tm <= cur) {
+					task.run();
+					task.executeTime(tm + task.period());
+				}
+			}
+		}
+		final long nanos = System.nanoTime() - start;
+		if(show) {
+			System.out.println(String.format("linear sessions %6d: %8d ns/loop (nearest %d)", 
+					sessions, nanos / loops, nearest / loops));
+		}
+	}
+	
+	static class IdleTask extends TimeTask {
+		
+		IdleTask(long delay) {
+			super(delay, IDLE_TIME);
+		}
+		
+		@Override
+		public void run() {
+			
+		}
+		
+	}
+
+}
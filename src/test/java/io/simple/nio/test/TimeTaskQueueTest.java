@@ -0,0 +1,135 @@
+package io.simple.nio.test;
+
+import static junit.framework.TestCase.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import io.simple.nio.Configuration;
+import io.simple.nio.EventLoop;
+import io.simple.nio.SessionInitializer;
+import io.simple.nio.TimeTask;
+import io.simple.nio.TimeTaskQueue;
+
+/**
+ * Test time task queue.
+ * 
+ * @author little-pan
+ * @since 2018-07-15
+ *
+ */
+public class TimeTaskQueueTest {
+	
+	@Test
+	public void testEmpty() {
+		final TimeTaskQueue queue = new TimeTaskQueue();
+		assertNull(queue.peek());
+		assertNull(queue.poll());
+		assertEquals(queue.size(), 0);
+	}
+	
+	@Test
+	public void testOrder() {
+		final TimeTaskQueue queue = new TimeTaskQueue(1);
+		final Random rand = new Random(1L);
+		for(int i = 0; i < 1000; ++i) {
+			queue.offer(new Task(rand.nextInt(100000)));
+		}
+		assertEquals(queue.size(), 1000);
+		long last = Long.MIN_VALUE;
+		for(TimeTask t = queue.poll(); t != null; t = queue.poll()) {
+			assertTrue(t.executeTime() >= last);
+			last = t.executeTime();
+		}
+		assertTrue(queue.isEmpty());
+	}
+	
+	@Test
+	public void testCancel() {
+		final TimeTaskQueue queue = new TimeTaskQueue();
+		final List<TimeTask> tasks = new ArrayList<TimeTask>();
+		for(int i = 0; i < 10; ++i) {
+			final TimeTask t = new Task(i);
+			tasks.add(t);
+			queue.offer(t);
+		}
+		for(int i = 0; i < 10; i += 2) {
+			tasks.get(i).cancel();
+		}
+		assertFalse(queue.offer(tasks.get(0)));
+		for(int i = 1; i < 10; i += 2) {
+			assertSame(queue.poll(), tasks.get(i));
+		}
+		assertNull(queue.poll());
+	}
+	
+	@Test
+	public void testExecuteTimeChanged() {
+		final TimeTaskQueue queue = new TimeTaskQueue();
+		final long base = System.currentTimeMillis();
+		final TimeTask a = new Task(0L).executeTime(base + 10L);
+		final TimeTask b = new Task(0L).executeTime(base + 20L);
+		final TimeTask c = new Task(0L).executeTime(base + 30L);
+		queue.offer(a);
+		queue.offer(b);
+		queue.offer(c);
+		
+		// delay lazily
+		a.executeTime(base + 40L);
+		assertSame(queue.peek(), b);
+		// bring forward
+		c.executeTime(base + 5L);
+		assertSame(queue.poll(), c);
+		assertSame(queue.poll(), b);
+		assertSame(queue.poll(), a);
+		assertNull(queue.poll());
+	}
+	
+	/**
+	 * Bring forward a task scheduled in the event loop from other thread: the queue
+	 *updated in the loop.
+	 */
+	@Test
+	public void testExecuteTimeChangedOutsideLoop() throws InterruptedException {
+		final EventLoop loop = Configuration.newBuilder()
+				.setName("test-timer")
+				.setDaemon(true)
+				.setClientInitializer(SessionInitializer.NOOP)
+				.boot();
+		try {
+			final CountDownLatch done = new CountDownLatch(1);
+			final TimeTask task = new TimeTask(3600000L, 0L) {
+				@Override
+				public void run() {
+					done.countDown();
+				}
+			};
+			loop.schedule(task);
+			Thread.sleep(100L);
+			task.executeTime(System.currentTimeMillis());
+			assertTrue(done.await(5000L, TimeUnit.MILLISECONDS));
+		} finally {
+			loop.shutdown();
+			loop.awaitTermination();
+		}
+	}
+	
+	static class Task extends TimeTask {
+		
+		Task(long delay) {
+			super(delay, 0L);
+		}
+		
+		@Override
+		public void run() {
+			
+		}
+		
+	}
+
+}
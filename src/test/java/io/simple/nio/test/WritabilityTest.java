@@ -0,0 +1,237 @@
+package io.simple.nio.test;
+
+import static junit.framework.TestCase.*;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Test;
+
+import io.simple.nio.Configuration;
+import io.simple.nio.EventHandler;
+import io.simple.nio.EventHandlerAdapter;
+import io.simple.nio.HandlerContext;
+import io.simple.nio.IdleState;
+import io.simple.nio.Session;
+import io.simple.nio.SessionInitializer;
+import io.simple.nio.SpillState;
+
+/**
+ * Test the writability changed events with the write watermarks, and the session
+ *writability combined with the spill and store states.
+ *
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+public class WritabilityTest {
+
+	final static int chunkSize = 1 << 16, total = 1 << 23;
+	final static String WRITABLE = "writable", NOT_WRITABLE = "not-writable";
+
+	Loopback loopback;
+
+	@After
+	public void destroy() throws InterruptedException {
+		if(loopback != null) {
+			loopback.shutdown();
+		}
+	}
+
+	/**
+	 * Write the test pattern, and record the writability changed events and the spill
+	 *state events in order.
+	 */
+	static SessionInitializer writer(final LinkedBlockingQueue<Object> events) {
+		return new SessionInitializer() {
+			@Override
+			public void initSession(Session session) {
+				session.addHandler(new EventHandlerAdapter() {
+					@Override
+					public void onConnected(HandlerContext ctx) throws Exception {
+						final byte chunk[] = new byte[chunkSize];
+						for(int off = 0; off < total; off += chunkSize) {
+							for(int i = 0; i < chunkSize; ++i) {
+								chunk[i] = Loopback.pattern(off + i);
+							}
+							ctx.write(chunk);
+						}
+						ctx.flush();
+					}
+
+					@Override
+					public void onWritabilityChanged(HandlerContext ctx) throws Exception {
+						events.offer(ctx.isWritable()? WRITABLE: NOT_WRITABLE);
+						ctx.fireWritabilityChanged();
+					}
+
+					@Override
+					public void onUserEvent(HandlerContext ctx, Object ev) throws Exception {
+						if(!(ev instanceof IdleState)) {
+							events.offer(ev);
+						}
+						ctx.fireUserEvent(ev);
+					}
+				});
+			}
+		};
+	}
+
+	/**
+	 * A handler that implements the event handler directly, without the writability
+	 *changed method.
+	 */
+	static class DirectHandler implements EventHandler {
+		@Override
+		public void onConnected(HandlerContext ctx) throws Exception {
+			ctx.fireConnected();
+		}
+
+		@Override
+		public void onRead(HandlerContext ctx, Object msg) throws Exception {
+			ctx.fireRead(msg);
+		}
+
+		@Override
+		public void onReadComplete(HandlerContext ctx) throws Exception {
+			ctx.fireReadComplete();
+		}
+
+		@Override
+		public void onWrite(HandlerContext ctx, Object msg) throws Exception {
+			ctx.fireWrite(msg);
+		}
+
+		@Override
+		public void onFlushed(HandlerContext ctx) throws Exception {
+			ctx.fireFlushed();
+		}
+
+		@Override
+		public void onUserEvent(HandlerContext ctx, Object ev) throws Exception {
+			ctx.fireUserEvent(ev);
+		}
+
+		@Override
+		public void onCause(HandlerContext ctx, Throwable cause) {
+			ctx.fireCause(cause);
+		}
+	}
+
+	static Object next(final LinkedBlockingQueue<Object> events) throws InterruptedException {
+		final Object ev = events.poll(Loopback.TIMEOUT, TimeUnit.MILLISECONDS);
+		assertNotNull("Event timeout", ev);
+		return ev;
+	}
+
+	Session connect(final Configuration.Builder serverConfig, final LinkedBlockingQueue<Object> events,
+			final AtomicLong received, final AtomicLong errors) throws Exception {
+		return connect(serverConfig, writer(events), received, errors);
+	}
+
+	Session connect(final Configuration.Builder serverConfig, final SessionInitializer serverInit,
+			final AtomicLong received, final AtomicLong errors) throws Exception {
+		loopback = new Loopback(serverConfig, serverInit,
+				Configuration.newBuilder().setAutoRead(false), Loopback.reader(received, errors));
+		return loopback.connect()[1];
+	}
+
+	static void drain(final Session cli, final AtomicLong received, final AtomicLong errors)
+			throws Exception {
+		cli.execute(new Runnable() {
+			@Override
+			public void run() {
+				cli.enableRead();
+			}
+		});
+		Loopback.await(cli, new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return received.get() >= total;
+			}
+		});
+		assertEquals(total, received.get());
+		assertEquals(0L, errors.get());
+	}
+
+	@Test
+	public void testWriteWatermarks() throws Exception {
+		final LinkedBlockingQueue<Object> events = new LinkedBlockingQueue<Object>();
+		final AtomicLong received = new AtomicLong(), errors = new AtomicLong();
+		final Session cli = connect(Configuration.newBuilder()
+				.setBufferSize(chunkSize).setMaxWriteBuffers(256)
+				.setWriteHighWatermark(1 << 20).setWriteLowWatermark(1 << 18),
+				events, received, errors);
+
+		assertEquals(NOT_WRITABLE, next(events));
+		drain(cli, received, errors);
+		assertEquals(WRITABLE, next(events));
+		Thread.sleep(100L);
+		assertTrue(events.isEmpty());
+	}
+
+	@Test
+	public void testDirectHandlerPassesEvent() throws Exception {
+		final LinkedBlockingQueue<Object> events = new LinkedBlockingQueue<Object>();
+		final AtomicLong received = new AtomicLong(), errors = new AtomicLong();
+		final SessionInitializer writer = writer(events);
+		final Session cli = connect(Configuration.newBuilder()
+				.setBufferSize(chunkSize).setMaxWriteBuffers(256)
+				.setWriteHighWatermark(1 << 20).setWriteLowWatermark(1 << 18),
+				new SessionInitializer() {
+					@Override
+					public void initSession(Session session) {
+						session.addHandler(new DirectHandler());
+						writer.initSession(session);
+					}
+				}, received, errors);
+
+		// passed by the default method
+		assertEquals(NOT_WRITABLE, next(events));
+		drain(cli, received, errors);
+		assertEquals(WRITABLE, next(events));
+	}
+
+	@Test
+	public void testChangeOnlyWithSpillState() throws Exception {
+		final LinkedBlockingQueue<Object> events = new LinkedBlockingQueue<Object>();
+		final AtomicLong received = new AtomicLong(), errors = new AtomicLong();
+		final Session cli = connect(Configuration.newBuilder()
+				.setBufferSize(1 << 12).setMaxWriteBuffers(4)
+				.setWriteHighWatermark(1 << 20).setWriteLowWatermark(1 << 18)
+				.setSpillHighWatermark(1 << 21).setSpillLowWatermark(1 << 19),
+				events, received, errors);
+
+		// the spill state changes while not writable by the write watermarks: no event
+		assertEquals(NOT_WRITABLE, next(events));
+		assertEquals(SpillState.SESSION_HIGH, next(events));
+		drain(cli, received, errors);
+		assertEquals(SpillState.SESSION_LOW, next(events));
+		assertEquals(WRITABLE, next(events));
+		Thread.sleep(100L);
+		assertTrue(events.isEmpty());
+	}
+
+	@Test
+	public void testStoreState() throws Exception {
+		final LinkedBlockingQueue<Object> events = new LinkedBlockingQueue<Object>();
+		final AtomicLong received = new AtomicLong(), errors = new AtomicLong();
+		final Session cli = connect(Configuration.newBuilder()
+				.setBufferSize(1 << 12).setMaxWriteBuffers(4)
+				.setStoreHighWatermark(1 << 20).setStoreLowWatermark(1 << 18),
+				events, received, errors);
+
+		// not writable by the store state only
+		assertEquals(SpillState.STORE_HIGH, next(events));
+		assertEquals(NOT_WRITABLE, next(events));
+		drain(cli, received, errors);
+		assertEquals(SpillState.STORE_LOW, next(events));
+		assertEquals(WRITABLE, next(events));
+		Thread.sleep(100L);
+		assertTrue(events.isEmpty());
+	}
+
+}
@@ -1,9 +1,63 @@
 package io.simple.util.test;
 
+import static junit.framework.TestCase.*;
+
+import org.junit.Test;
+
 import io.simple.util.ArrayQueue;
 
 public class ArrayQueueTest {
 	
+	@Test
+	public void testGet() {
+		final ArrayQueue<Integer> queue = new ArrayQueue<Integer>(4);
+		for(int i = 0; i < 4; ++i) {
+			assertTrue(queue.offer(i));
+		}
+		for(int i = 0; i < 4; ++i) {
+			assertEquals(i, queue.get(i).intValue());
+		}
+		
+		// wrap around the array end
+		assertEquals(0, queue.poll().intValue());
+		assertEquals(1, queue.poll().intValue());
+		assertTrue(queue.offer(4));
+		assertTrue(queue.offer(5));
+		for(int i = 0; i < 4; ++i) {
+			assertEquals(i + 2, queue.get(i).intValue());
+		}
+		
+		// the front wraps around by offerFirst()
+		queue.clear();
+		assertTrue(queue.offer(1));
+		assertTrue(queue.offerFirst(0));
+		assertEquals(0, queue.get(0).intValue());
+		assertEquals(1, queue.get(1).intValue());
+	}
+	
+	@Test
+	public void testGetOutOfRange() {
+		final ArrayQueue<Integer> queue = new ArrayQueue<Integer>(4);
+		assertOutOfRange(queue, 0);
+		queue.offer(0);
+		queue.offer(1);
+		assertOutOfRange(queue, -1);
+		assertOutOfRange(queue, 2);
+		// the empty slot in the array
+		assertOutOfRange(queue, 3);
+		queue.poll();
+		assertOutOfRange(queue, 1);
+	}
+	
+	static void assertOutOfRange(final ArrayQueue<Integer> queue, final int index) {
+		try {
+			queue.get(index);
+			fail("Index out of the size: " + index);
+		} catch(final IndexOutOfBoundsException e) {
+			// OK
+		}
+	}
+	
 	public static void main(String args[]) {
 		ArrayQueue<Integer> queue = new ArrayQueue<Integer>(10);
 		println("queue.new(): capacity = %d, size = %d", queue.capacity(), queue.size());
@@ -0,0 +1,93 @@
+package io.simple.util.test;
+
+import java.util.Random;
+
+import io.simple.util.IndexPool;
+
+/**
+ * <p>
+ * Session slot allocation benchmark under accept churn: keep the live sessions, 
+ *and each accept releases a random live session and allocates a slot for the new one.
+ * </p>
+ * 
+ * <p>
+ * Usage: java io.simple.util.test.IndexPoolBench [accepts]
+ * </p>
+ * 
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+public class IndexPoolBench {
+	
+	public static void main(String args[]) {
+		final int accepts = args.length > 0? Integer.parseInt(args[0]): 1000000;
+		
+		final int lives[] = {1000, 10000, 100000};
+		for(int r = 0; r < 2; ++r) {
+			// warm up in the first round
+			for(final int n : lives) {
+				bench(n, accepts, r == 1);
+			}
+			for(final int n : lives) {
+				benchLinear(n, accepts / 100, r == 1);
+			}
+		}
+	}
+	
+	static int maxConns(final int lives) {
+		return (lives + Math.max(lives / 100, 1));
+	}
+	
+	static void bench(final int lives, final int accepts, final boolean show) {
+		final Random rand = new Random(lives);
+		final IndexPool slots = new IndexPool(maxConns(lives));
+		final int live[] = new int[lives];
+		for(int i = 0; i < lives; ++i) {
+			live[i] = slots.allocate();
+		}
+		
+		final long start = System.nanoTime();
+		for(int i = 0; i < accepts; ++i) {
+			final int j = rand.nextInt(lives);
+			slots.release(live[j]);
+			live[j] = slots.allocate();
+		}
+		final long nanos = System.nanoTime() - start;
+		if(show) {
+			System.out.println(String.format("free-list lives %6d: %6d ns/accept, %8d accepts/s", 
+					lives, nanos / accepts, accepts * 1000000000L / nanos));
+		}
+	}
+	
+	// The linear slot scan of the session manager before.
+	static void benchLinear(final int lives, final int accepts, final boolean show) {
+		final Random rand = new Random(lives);
+		final Object sessions[] = new Object[maxConns(lives)];
+		final int live[] = new int[lives];
+		final Object sess = new Object();
+		for(int i = 0; i < lives; ++i) {
+			sessions[i] = sess;
+			live[i] = i;
+		}
+		
+		final long start = System.nanoTime();
+		for(int i = 0; i < accepts; ++i) {
+			final int j = rand.nextInt(lives);
+			sessions[live[j]] = null;
+			for(int k = 0; k < sessions.length; ++k) {
+				if(sessions[k] == null) {
+					sessions[k] = sess;
+					live[j] = k;
+					break;
+				}
+			}
+		}
+		final long nanos = System.nanoTime() - start;
+		if(show) {
+			System.out.println(String.format("linear    lives %6d: %6d ns/accept, %8d accepts/s", 
+					lives, nanos / accepts, accepts * 1000000000L / nanos));
+		}
+	}
+
+}
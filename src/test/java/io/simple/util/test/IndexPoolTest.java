@@ -0,0 +1,95 @@
+package io.simple.util.test;
+
+import static junit.framework.TestCase.*;
+
+import org.junit.Test;
+
+import io.simple.util.IndexPool;
+
+/**
+ * Test the free-list invariants of the index pool.
+ * 
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+public class IndexPoolTest {
+	
+	@Test
+	public void testAllocateRelease() {
+		final IndexPool pool = new IndexPool(4);
+		assertTrue(pool.isEmpty());
+		assertFalse(pool.isFull());
+		for(int i = 0; i < 4; ++i) {
+			assertEquals(i, pool.allocate());
+		}
+		assertEquals(4, pool.size());
+		assertTrue(pool.isFull());
+		
+		// LIFO: the last released index allocated first
+		pool.release(1);
+		pool.release(3);
+		assertEquals(2, pool.size());
+		assertFalse(pool.isFull());
+		assertEquals(3, pool.allocate());
+		assertEquals(1, pool.allocate());
+		assertTrue(pool.isFull());
+		
+		for(int i = 0; i < 4; ++i) {
+			pool.release(i);
+		}
+		assertTrue(pool.isEmpty());
+		assertEquals(4, pool.capacity());
+	}
+	
+	@Test
+	public void testExhaustion() {
+		final IndexPool pool = new IndexPool(2);
+		pool.allocate();
+		pool.allocate();
+		assertEquals(-1, pool.allocate());
+		assertEquals(-1, pool.allocate());
+		assertEquals(2, pool.size());
+		pool.release(0);
+		assertEquals(0, pool.allocate());
+		assertEquals(-1, pool.allocate());
+		
+		final IndexPool empty = new IndexPool(0);
+		assertTrue(empty.isFull());
+		assertEquals(-1, empty.allocate());
+	}
+	
+	@Test
+	public void testDoubleRelease() {
+		final IndexPool pool = new IndexPool(4);
+		final int i = pool.allocate();
+		pool.allocate();
+		pool.release(i);
+		try {
+			pool.release(i);
+			fail("Index released twice");
+		} catch(final IllegalStateException e) {
+			// OK
+		}
+		try {
+			pool.release(3);
+			fail("Index not allocated");
+		} catch(final IllegalStateException e) {
+			// OK
+		}
+		try {
+			pool.release(4);
+			fail("Index out of capacity");
+		} catch(final IndexOutOfBoundsException e) {
+			// OK
+		}
+		
+		// the free-list not corrupted
+		assertEquals(1, pool.size());
+		assertEquals(i, pool.allocate());
+		assertEquals(2, pool.allocate());
+		assertEquals(3, pool.allocate());
+		assertEquals(-1, pool.allocate());
+	}
+	
+}
@@ -0,0 +1,94 @@
+package io.simple.util.test;
+
+import static junit.framework.TestCase.*;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import io.simple.util.MpscQueue;
+
+/**
+ * Test MPSC queue.
+ * 
+ * @author little-pan
+ * @since 2018-07-16
+ *
+ */
+public class MpscQueueTest {
+	
+	@Test
+	public void testOfferPoll() {
+		final MpscQueue<Integer> queue = new MpscQueue<Integer>(4, 0L);
+		assertNull(queue.poll());
+		assertTrue(queue.isEmpty());
+		for(int i = 0; i < 100; ++i) {
+			assertTrue(queue.offer(i));
+		}
+		assertEquals(100, queue.size());
+		for(int i = 0; i < 100; ++i) {
+			assertEquals(i, queue.poll().intValue());
+		}
+		assertNull(queue.poll());
+		assertTrue(queue.isEmpty());
+	}
+	
+	@Test
+	public void testBounded() {
+		final MpscQueue<Integer> queue = new MpscQueue<Integer>(2, 3L);
+		assertTrue(queue.offer(1));
+		assertTrue(queue.offer(2));
+		assertTrue(queue.offer(3));
+		assertFalse(queue.offer(4));
+		assertEquals(1, queue.poll().intValue());
+		assertTrue(queue.offer(4));
+		assertEquals(2, queue.poll().intValue());
+		assertEquals(3, queue.poll().intValue());
+		assertEquals(4, queue.poll().intValue());
+		assertNull(queue.poll());
+	}
+	
+	@Test
+	public void testProducers() throws Exception {
+		final int producers = 4, items = 100000;
+		final MpscQueue<Long> queue = new MpscQueue<Long>(16, 0L);
+		final CountDownLatch start = new CountDownLatch(1);
+		final Thread threads[] = new Thread[producers];
+		for(int i = 0; i < producers; ++i) {
+			final long id = i;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for(long j = 0; j < items; ++j) {
+						queue.offer((id << 32) | j);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		start.countDown();
+		
+		// FIFO per producer
+		final long nexts[] = new long[producers];
+		for(int n = 0; n < producers * items;) {
+			final Long e = queue.poll();
+			if(e == null) {
+				continue;
+			}
+			final int id = (int)(e >>> 32);
+			assertEquals(nexts[id]++, e & 0xFFFFFFFFL);
+			++n;
+		}
+		for(final Thread t: threads) {
+			t.join();
+		}
+		assertNull(queue.poll());
+		assertTrue(queue.isEmpty());
+	}
+
+}